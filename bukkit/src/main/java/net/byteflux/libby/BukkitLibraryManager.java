@@ -2,7 +2,11 @@ package net.byteflux.libby;
 
 import net.byteflux.libby.classloader.URLClassLoaderHelper;
 import net.byteflux.libby.logging.adapters.JDKLogAdapter;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
 import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredListener;
 
 import java.io.InputStream;
 import java.net.URLClassLoader;
@@ -21,7 +25,8 @@ public class BukkitLibraryManager extends LibraryManager {
     private final Plugin plugin;
 
     /**
-     * Creates a new Bukkit library manager.
+     * Creates a new Bukkit library manager, which is closed when the plugin
+     * is disabled.
      *
      * @param plugin the plugin to manage
      */
@@ -30,7 +35,8 @@ public class BukkitLibraryManager extends LibraryManager {
     }
 
     /**
-     * Creates a new Bukkit library manager.
+     * Creates a new Bukkit library manager, which is closed when the plugin
+     * is disabled.
      *
      * @param plugin the plugin to manage
      * @param directoryName download directory name
@@ -39,6 +45,13 @@ public class BukkitLibraryManager extends LibraryManager {
         super(new JDKLogAdapter(requireNonNull(plugin, "plugin").getLogger()), plugin.getDataFolder().toPath(), directoryName);
         classLoader = new URLClassLoaderHelper((URLClassLoader) plugin.getClass().getClassLoader(), this);
         this.plugin = plugin;
+
+        // Registered in the handler list directly, since the plugin may not be enabled yet
+        PluginDisableEvent.getHandlerList().register(new RegisteredListener(new Listener() {}, (listener, event) -> {
+            if (((PluginDisableEvent) event).getPlugin() == plugin) {
+                close();
+            }
+        }, EventPriority.MONITOR, plugin, false));
     }
 
     /**
@@ -22,7 +22,8 @@ public class BungeeLibraryManager extends LibraryManager {
     private final Plugin plugin;
 
     /**
-     * Creates a new Bungee library manager.
+     * Creates a new Bungee library manager, which is closed when the proxy
+     * shuts down.
      *
      * @param plugin the plugin to manage
      */
@@ -31,7 +32,8 @@ public class BungeeLibraryManager extends LibraryManager {
     }
 
     /**
-     * Creates a new Bungee library manager.
+     * Creates a new Bungee library manager, which is closed when the proxy
+     * shuts down.
      *
      * @param plugin the plugin to manage
      * @param directoryName download directory name
@@ -40,6 +42,9 @@ public class BungeeLibraryManager extends LibraryManager {
         super(new JDKLogAdapter(requireNonNull(plugin, "plugin").getLogger()), plugin.getDataFolder().toPath(), directoryName);
         classLoader = new URLClassLoaderHelper((URLClassLoader) plugin.getClass().getClassLoader(), this);
         this.plugin = plugin;
+
+        // Bungee plugins are only disabled when the proxy shuts down, which exits the JVM, and there's no event for it
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "Libby shutdown"));
     }
 
     @Override
@@ -0,0 +1,245 @@
+package net.byteflux.libby;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An exclusive lock on a file saved by a {@link LibraryManager}, held while
+ * the file is downloaded or relocated so that library managers of other
+ * threads and of other processes sharing the same directory wait for the
+ * file instead of writing it at the same time.
+ * <p>
+ * Threads of the same JVM are coordinated with an in-memory lock, since a
+ * {@link FileLock} is held on behalf of the whole JVM. Processes are
+ * coordinated with a {@link FileLock} on a {@code .lock} file next to the
+ * locked file. The lock file is deleted once the locked file is written, so
+ * a process which acquires the lock of a deleted lock file locks the file
+ * again with a new lock file.
+ */
+final class ArtifactLock {
+    /**
+     * In-memory locks by lock file path, only kept while a thread holds or waits for them
+     */
+    private static final ConcurrentHashMap<Path, InMemoryLock> LOCKS = new ConcurrentHashMap<>();
+
+    /**
+     * Delay between two attempts to lock a file locked by another class
+     * loader of this JVM, in milliseconds
+     */
+    private static final long RETRY_DELAY = 50;
+
+    /**
+     * Maximum number of attempts to open a lock file being deleted, which
+     * can't be opened until every process closes it on Windows
+     */
+    private static final int MAX_OPEN_ATTEMPTS = 200;
+
+    /**
+     * Locked file
+     */
+    private final Path file;
+
+    /**
+     * Lock file
+     */
+    private final Path lockFile;
+
+    /**
+     * In-memory lock held by this lock
+     */
+    private final InMemoryLock lock;
+
+    /**
+     * Channel of the lock file
+     */
+    private final FileChannel channel;
+
+    /**
+     * File lock held by this lock
+     */
+    private final FileLock fileLock;
+
+    /**
+     * Creates a new artifact lock.
+     *
+     * @param file     the locked file
+     * @param lockFile the lock file
+     * @param lock     the in-memory lock held by this lock
+     * @param channel  the channel of the lock file
+     * @param fileLock the file lock held by this lock
+     */
+    private ArtifactLock(Path file, Path lockFile, InMemoryLock lock, FileChannel channel, FileLock fileLock) {
+        this.file = file;
+        this.lockFile = lockFile;
+        this.lock = lock;
+        this.channel = channel;
+        this.fileLock = fileLock;
+    }
+
+    /**
+     * Acquires the lock of a file, waiting until no other thread or process holds it.
+     *
+     * @param file the file to lock
+     * @return acquired lock, to be released once the file is written
+     * @throws IOException if the lock file couldn't be locked
+     */
+    static ArtifactLock acquire(Path file) throws IOException {
+        Path lockedFile = requireNonNull(file, "file").toAbsolutePath().normalize();
+        Path lockFile = lockedFile.resolveSibling(lockedFile.getFileName() + ".lock");
+
+        InMemoryLock lock = LOCKS.compute(lockFile, (path, existing) -> {
+            InMemoryLock inMemoryLock = existing != null ? existing : new InMemoryLock();
+            inMemoryLock.users++;
+            return inMemoryLock;
+        });
+        lock.lock.lock();
+        try {
+            Files.createDirectories(lockFile.getParent());
+            for (int attempt = 1; ; attempt++) {
+                FileChannel channel;
+                try {
+                    channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                } catch (AccessDeniedException e) {
+                    // Deleted while other processes still have it open
+                    if (attempt >= MAX_OPEN_ATTEMPTS) {
+                        throw e;
+                    }
+                    sleep();
+                    continue;
+                }
+
+                try {
+                    BasicFileAttributes opened = readAttributes(lockFile);
+                    if (opened != null) {
+                        FileLock fileLock = lock(channel);
+
+                        // The previous holder may have deleted the lock file while waiting for it, it wouldn't exclude anyone anymore
+                        BasicFileAttributes locked = readAttributes(lockFile);
+                        if (locked != null && Objects.equals(opened.fileKey(), locked.fileKey())) {
+                            return new ArtifactLock(lockedFile, lockFile, lock, channel, fileLock);
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    channel.close();
+                    throw e;
+                }
+                channel.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            unlock(lockFile, lock);
+            throw e;
+        }
+    }
+
+    /**
+     * Locks a lock file, waiting until no other process holds its lock.
+     *
+     * @param channel the channel of the lock file
+     * @return acquired file lock
+     * @throws IOException if the lock file couldn't be locked
+     */
+    private static FileLock lock(FileChannel channel) throws IOException {
+        while (true) {
+            try {
+                return channel.lock();
+            } catch (OverlappingFileLockException e) {
+                // Held by a copy of Libby loaded by another class loader of this JVM, which doesn't share the in-memory locks
+                sleep();
+            }
+        }
+    }
+
+    /**
+     * Waits before another attempt to lock a file.
+     *
+     * @throws InterruptedIOException if the thread was interrupted
+     */
+    private static void sleep() throws InterruptedIOException {
+        try {
+            Thread.sleep(RETRY_DELAY);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a file lock");
+        }
+    }
+
+    /**
+     * Reads the attributes of a lock file.
+     *
+     * @param lockFile the lock file
+     * @return the attributes or null if the lock file was deleted
+     * @throws IOException if the attributes couldn't be read
+     */
+    private static BasicFileAttributes readAttributes(Path lockFile) throws IOException {
+        try {
+            return Files.readAttributes(lockFile, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Unlocks an in-memory lock, and forgets it if no other thread holds or waits for it.
+     *
+     * @param lockFile the lock file
+     * @param lock     the in-memory lock
+     */
+    private static void unlock(Path lockFile, InMemoryLock lock) {
+        lock.lock.unlock();
+        LOCKS.computeIfPresent(lockFile, (path, existing) -> --existing.users == 0 ? null : existing);
+    }
+
+    /**
+     * Releases this lock. The lock file is deleted first if the locked file
+     * was written, while still holding the lock.
+     *
+     * @throws IOException if the file lock couldn't be released
+     */
+    void release() throws IOException {
+        try {
+            if (Files.exists(file)) {
+                try {
+                    Files.deleteIfExists(lockFile);
+                } catch (IOException ignored) {
+                    // Kept and reused by the next writer
+                }
+            }
+            fileLock.release();
+        } finally {
+            try {
+                channel.close();
+            } finally {
+                unlock(lockFile, lock);
+            }
+        }
+    }
+
+    /**
+     * An in-memory lock shared by the threads of this JVM locking the same file.
+     */
+    private static final class InMemoryLock {
+        /**
+         * Lock held by the thread writing the file
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * Number of threads holding or waiting for the lock, only updated while computing the entry of {@link #LOCKS}
+         */
+        private int users;
+    }
+}
@@ -0,0 +1,87 @@
+package net.byteflux.libby;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 helpers shared by the checksums of jars and the fingerprints of
+ * library declarations.
+ */
+final class Checksums {
+    private Checksums() {
+        throw new UnsupportedOperationException("Private constructor");
+    }
+
+    /**
+     * Creates a new SHA-256 message digest.
+     *
+     * @return new message digest
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Computes the SHA-256 checksum of a file.
+     *
+     * @param file the file
+     * @return binary SHA-256 checksum
+     * @throws IOException if the file couldn't be read
+     */
+    static byte[] sha256(Path file) throws IOException {
+        MessageDigest md = newDigest();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                md.update(buffer, 0, read);
+            }
+        }
+        return md.digest();
+    }
+
+    /**
+     * Computes the SHA-256 checksum of a string.
+     *
+     * @param text the string, encoded in UTF-8
+     * @return binary SHA-256 checksum
+     */
+    static byte[] sha256(String text) {
+        return newDigest().digest(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Hex encodes a checksum.
+     *
+     * @param checksum the binary checksum
+     * @return hex encoded checksum
+     */
+    static String toHex(byte[] checksum) {
+        return toHex(checksum, checksum.length);
+    }
+
+    /**
+     * Hex encodes the first bytes of a checksum.
+     *
+     * @param checksum the binary checksum
+     * @param length   the number of bytes to encode
+     * @return hex encoded checksum prefix
+     */
+    static String toHex(byte[] checksum, int length) {
+        StringBuilder hex = new StringBuilder(length * 2);
+        for (int i = 0; i < length; i++) {
+            hex.append(Character.forDigit((checksum[i] >> 4) & 0xF, 16)).append(Character.forDigit(checksum[i] & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -74,7 +74,8 @@ public class Library {
     private final String partialPath;
 
     /**
-     * Relative path to this library's relocated jar
+     * Relative path to this library's relocated jar, which depends on its
+     * relocation rules
      */
     private final String relocatedPath;
 
@@ -170,7 +171,7 @@ public class Library {
         this.path = path + ".jar";
 
         this.repositories = repositories != null ? Collections.unmodifiableList(new LinkedList<>(repositories)) : Collections.emptyList();
-        relocatedPath = hasRelocations() ? path + "-relocated.jar" : null;
+        relocatedPath = hasRelocations() ? path + "-relocated-" + fingerprint(this.relocations) + ".jar" : null;
         this.isolatedLoad = isolatedLoad;
         this.resolveTransitiveDependencies = resolveTransitiveDependencies;
         this.excludedTransitiveDependencies = excludedTransitiveDependencies != null ? Collections.unmodifiableList(new LinkedList<>(excludedTransitiveDependencies)) : Collections.emptyList();
@@ -303,7 +304,9 @@ public class Library {
     }
 
     /**
-     * Gets the relative path to this library's relocated jar.
+     * Gets the relative path to this library's relocated jar. The path
+     * contains a fingerprint of the relocation rules, so libraries with
+     * different relocations never share a relocated jar.
      *
      * @return path to relocated artifact or null if has no relocations
      */
@@ -342,6 +345,23 @@ public class Library {
         return excludedTransitiveDependencies;
     }
 
+    /**
+     * Computes a fingerprint of relocation rules, which changes whenever the
+     * patterns, includes, excludes or order of the rules change.
+     *
+     * @param relocations the relocation rules
+     * @return hex encoded fingerprint
+     */
+    static String fingerprint(Collection<Relocation> relocations) {
+        StringBuilder rules = new StringBuilder();
+        for (Relocation relocation : relocations) {
+            rules.append(relocation.getPattern()).append(' ').append(relocation.getRelocatedPattern())
+                 .append(' ').append(relocation.getIncludes()).append(' ').append(relocation.getExcludes()).append('\n');
+        }
+
+        return Checksums.toHex(Checksums.sha256(rules.toString()), 8);
+    }
+
     /**
      * Gets a concise, human-readable string representation of this library.
      *
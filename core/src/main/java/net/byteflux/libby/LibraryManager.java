@@ -11,31 +11,42 @@ import net.byteflux.libby.logging.Logger;
 import net.byteflux.libby.logging.adapters.LogAdapter;
 import net.byteflux.libby.relocation.Relocation;
 import net.byteflux.libby.relocation.RelocationHelper;
+import net.byteflux.libby.transitive.PomDependencyResolver;
+import net.byteflux.libby.transitive.TransitiveDependencyCache;
 import net.byteflux.libby.transitive.TransitiveDependencyHelper;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import java.io.ByteArrayOutputStream;
-import java.io.FileNotFoundException;
+import net.byteflux.libby.transitive.TransitiveDependencyResolver;
+import net.byteflux.libby.transport.Transport;
+import net.byteflux.libby.transport.TransportResponse;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.net.ConnectException;
 import java.net.MalformedURLException;
+import java.net.NoRouteToHostException;
 import java.net.SocketTimeoutException;
-import java.net.URL;
-import java.net.URLConnection;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
@@ -43,11 +54,29 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static java.util.Objects.requireNonNull;
 
@@ -67,7 +96,32 @@ import static java.util.Objects.requireNonNull;
  *
  * @see Library
  */
-public abstract class LibraryManager {
+public abstract class LibraryManager implements AutoCloseable {
+    /**
+     * Name of the file in the save directory where repository statistics are saved
+     */
+    private static final String REPOSITORY_STATISTICS_FILE = "repository-statistics.properties";
+
+    /**
+     * Name of the lockfile in the save directory
+     */
+    private static final String LOCKFILE = "libby.lock";
+
+    /**
+     * Name of the file in the save directory where resolved transitive dependencies are cached
+     */
+    private static final String TRANSITIVE_DEPENDENCY_CACHE_FILE = "transitive-dependencies.properties";
+
+    /**
+     * Shared StAX factory used to read maven-metadata.xml files, which doesn't resolve DTDs or external entities
+     */
+    private static final XMLInputFactory XML_INPUT_FACTORY = newXmlInputFactory();
+
+    /**
+     * Downloads and relocations in progress in this JVM, by target file
+     */
+    private static final ConcurrentHashMap<Path, CompletableFuture<Path>> IN_FLIGHT = new ConcurrentHashMap<>();
+
     /**
      * Wrapped plugin logger
      */
@@ -84,18 +138,114 @@ public abstract class LibraryManager {
     private final Set<String> repositories = new LinkedHashSet<>();
 
     /**
-     * Lazily-initialized relocation helper that uses reflection to call into
-     * Luck's Jar Relocator
+     * Lazily-acquired relocation helper using the shared relocation engine,
+     * released when this library manager is closed
      */
     private RelocationHelper relocator;
 
-    private TransitiveDependencyHelper transitiveDependencyHelper;
+    /**
+     * Lazily-initialized resolver of transitive dependencies, guarded by
+     * {@link #transitiveDependencyResolverLock}
+     */
+    private TransitiveDependencyResolver transitiveDependencyResolver;
+
+    /**
+     * Lock held while the resolver of transitive dependencies is started,
+     * instead of this library manager, since starting Maven Resolver downloads
+     * its jars while other threads are downloading libraries
+     */
+    private final Object transitiveDependencyResolverLock = new Object();
+
+    /**
+     * Should transitive dependencies be resolved by reading POMs directly
+     * instead of with Maven Resolver?
+     */
+    private boolean nativeTransitiveResolution;
+
+    /**
+     * Number of threads used to resolve the descriptors of transitive dependencies in parallel
+     */
+    private volatile int transitiveResolutionThreads = 5;
+
+    /**
+     * Persistent cache of resolved transitive dependencies
+     */
+    private final TransitiveDependencyCache transitiveDependencyCache;
 
     /**
      * Map of isolated class loaders and theirs id
      */
     private final Map<String, IsolatedClassLoader> isolatedLibraries = new HashMap<>();
 
+    /**
+     * Maximum number of library jars downloaded at the same time by
+     * {@link #loadLibraries(Library...)}
+     */
+    private volatile int downloadThreads = 1;
+
+    /**
+     * Maximum number of relocated jars kept for each library
+     */
+    private volatile int maxRelocatedVariants = 3;
+
+    /**
+     * Number of candidate URLs requested at the same time when downloading a
+     * library, 1 to disable mirror racing
+     */
+    private volatile int raceCandidates = 1;
+
+    /**
+     * Lazily-initialized executor used to probe candidate URLs and to resolve
+     * snapshot metadata
+     */
+    private ExecutorService probeExecutor;
+
+    /**
+     * Statistics of the requests made to each repository
+     */
+    private final RepositoryStatistics repositoryStatistics = new RepositoryStatistics();
+
+    /**
+     * Cache of the files that weren't found and of the hosts that couldn't be reached
+     */
+    private final NegativeCache negativeCache = new NegativeCache();
+
+    /**
+     * Transport used to make every request to repositories, lazily created
+     * and closed when this library manager is closed
+     */
+    private Transport transport;
+
+    /**
+     * Should repositories be ordered by their statistics?
+     */
+    private volatile boolean adaptiveRepositoryOrder;
+
+    /**
+     * Should repository statistics be saved in the save directory?
+     */
+    private volatile boolean persistRepositoryStatistics;
+
+    /**
+     * Store of library jars shared with other library managers, or null if disabled
+     */
+    private volatile SharedLibraryStore sharedLibraryStore;
+
+    /**
+     * How often downloaded snapshot libraries are checked for new builds
+     */
+    private volatile SnapshotUpdatePolicy snapshotUpdatePolicy = SnapshotUpdatePolicy.ALWAYS;
+
+    /**
+     * Lockfile recording how libraries were resolved, or null if disabled
+     */
+    private volatile Lockfile lockfile;
+
+    /**
+     * URLs the library jars were downloaded from during this session, by relative path
+     */
+    private final Map<String, String> downloadedUrls = new ConcurrentHashMap<>();
+
     /**
      * Creates a new library manager.
      *
@@ -107,6 +257,7 @@ public abstract class LibraryManager {
     protected LibraryManager(LogAdapter logAdapter, Path dataDirectory) {
         logger = new Logger(requireNonNull(logAdapter, "logAdapter"));
         saveDirectory = requireNonNull(dataDirectory, "dataDirectory").toAbsolutePath().resolve("lib");
+        transitiveDependencyCache = new TransitiveDependencyCache(saveDirectory.resolve(TRANSITIVE_DEPENDENCY_CACHE_FILE));
     }
 
     /**
@@ -119,6 +270,7 @@ public abstract class LibraryManager {
     protected LibraryManager(LogAdapter logAdapter, Path dataDirectory, String directoryName) {
         logger = new Logger(requireNonNull(logAdapter, "logAdapter"));
         saveDirectory = requireNonNull(dataDirectory, "dataDirectory").toAbsolutePath().resolve(requireNonNull(directoryName, "directoryName"));
+        transitiveDependencyCache = new TransitiveDependencyCache(saveDirectory.resolve(TRANSITIVE_DEPENDENCY_CACHE_FILE));
     }
 
     /**
@@ -179,6 +331,375 @@ public abstract class LibraryManager {
         logger.setLevel(level);
     }
 
+    /**
+     * Gets the maximum number of library jars downloaded at the same time by
+     * {@link #loadLibraries(Library...)}.
+     *
+     * @return maximum number of parallel downloads
+     */
+    public int getDownloadThreads() {
+        return downloadThreads;
+    }
+
+    /**
+     * Sets the maximum number of library jars downloaded at the same time by
+     * {@link #loadLibraries(Library...)}.
+     * <p>
+     * The default value of 1 downloads libraries one after another. Higher
+     * values download every library in parallel before loading them, which
+     * reduces the startup time to the time of the slowest download.
+     *
+     * @param downloadThreads maximum number of parallel downloads, must be at least 1
+     * @see #loadLibraries(Executor, Library...)
+     */
+    public void setDownloadThreads(int downloadThreads) {
+        if (downloadThreads < 1) {
+            throw new IllegalArgumentException("downloadThreads must be at least 1");
+        }
+        this.downloadThreads = downloadThreads;
+    }
+
+    /**
+     * Gets the maximum number of relocated jars kept for each library.
+     *
+     * @return maximum number of relocated variants of a library
+     */
+    public int getMaxRelocatedVariants() {
+        return maxRelocatedVariants;
+    }
+
+    /**
+     * Sets the maximum number of relocated jars kept for each library.
+     * <p>
+     * A library is relocated again whenever its jar or its relocation rules
+     * change, and the previous relocated jars are kept in case they're used
+     * again, for example by another plugin sharing the save directory. Once
+     * a library has more relocated jars, the least recently used ones are
+     * deleted. The default value is 3.
+     *
+     * @param maxRelocatedVariants maximum number of relocated variants of a library, must be at least 1
+     */
+    public void setMaxRelocatedVariants(int maxRelocatedVariants) {
+        if (maxRelocatedVariants < 1) {
+            throw new IllegalArgumentException("maxRelocatedVariants must be at least 1");
+        }
+        this.maxRelocatedVariants = maxRelocatedVariants;
+    }
+
+    /**
+     * Gets the number of candidate URLs requested at the same time when
+     * downloading a library.
+     *
+     * @return number of raced candidate URLs, 1 if mirror racing is disabled
+     */
+    public int getRaceCandidates() {
+        return raceCandidates;
+    }
+
+    /**
+     * Sets the number of candidate URLs requested at the same time when
+     * downloading a library.
+     * <p>
+     * By default, the candidate URLs of a library are attempted in order, so
+     * a slow or unreachable repository delays every download by its timeouts.
+     * With a value greater than 1, the first candidates are requested in
+     * parallel and the library is downloaded from the first one to answer,
+     * the responses of the other candidates being closed without reading
+     * them. The other candidates are still attempted in order if that
+     * download fails.
+     *
+     * @param raceCandidates number of raced candidate URLs, 1 to disable mirror racing
+     * @see #resolveLibrary(Library)
+     */
+    public void setRaceCandidates(int raceCandidates) {
+        if (raceCandidates < 1) {
+            throw new IllegalArgumentException("raceCandidates must be at least 1");
+        }
+        this.raceCandidates = raceCandidates;
+    }
+
+    /**
+     * Gets the statistics of the requests made to each repository by this
+     * library manager.
+     *
+     * @return repository statistics
+     */
+    public RepositoryStatistics getRepositoryStatistics() {
+        return repositoryStatistics;
+    }
+
+    /**
+     * Gets the transport used to make every request to repositories,
+     * creating the default one if needed.
+     *
+     * @return current transport
+     */
+    public synchronized Transport getTransport() {
+        if (transport == null) {
+            transport = Transport.createDefault();
+        }
+        return transport;
+    }
+
+    /**
+     * Sets the transport used to make every request to repositories.
+     * <p>
+     * By default, the Java 11+ HTTP client is used when available, which
+     * reuses connections and supports HTTP/2, otherwise connections are made
+     * with {@link java.net.HttpURLConnection}. The transport is closed when
+     * this library manager is closed, which then creates a default transport
+     * if it's used again. A replaced transport isn't closed.
+     *
+     * @param transport the transport to use
+     * @see Transport#createDefault()
+     */
+    public synchronized void setTransport(Transport transport) {
+        this.transport = requireNonNull(transport, "transport");
+    }
+
+    /**
+     * Gets the cache of failed lookups of this library manager.
+     * <p>
+     * Files that weren't found and hosts that couldn't be reached are
+     * remembered for a while, so that they aren't requested again for every
+     * library. The cache can be cleared if a repository comes back online.
+     *
+     * @return negative lookup cache
+     */
+    public NegativeCache getNegativeCache() {
+        return negativeCache;
+    }
+
+    /**
+     * Gets whether repositories are ordered by their statistics when
+     * resolving libraries.
+     *
+     * @return true if repositories are ordered by their statistics, false otherwise
+     */
+    public boolean isAdaptiveRepositoryOrder() {
+        return adaptiveRepositoryOrder;
+    }
+
+    /**
+     * Sets whether repositories are ordered by their statistics when
+     * resolving libraries.
+     * <p>
+     * By default, repositories are attempted in the order they were added.
+     * When enabled, repositories that answer faster and have the requested
+     * artifacts more often are attempted first. The repositories declared by
+     * a library are still attempted before the ones of the library manager.
+     *
+     * @param adaptiveRepositoryOrder whether to order repositories by their statistics
+     * @see RepositoryStatistics#sort(Collection)
+     */
+    public void setAdaptiveRepositoryOrder(boolean adaptiveRepositoryOrder) {
+        this.adaptiveRepositoryOrder = adaptiveRepositoryOrder;
+    }
+
+    /**
+     * Gets whether repository statistics are saved in the save directory.
+     *
+     * @return true if repository statistics are saved, false otherwise
+     */
+    public boolean isPersistRepositoryStatistics() {
+        return persistRepositoryStatistics;
+    }
+
+    /**
+     * Sets whether repository statistics are saved in the save directory, so
+     * that they survive restarts. When enabled, previously saved statistics
+     * are loaded immediately. Statistics are saved once libraries are loaded
+     * and when this library manager is closed.
+     *
+     * @param persistRepositoryStatistics whether to save repository statistics
+     * @see #setAdaptiveRepositoryOrder(boolean)
+     */
+    public void setPersistRepositoryStatistics(boolean persistRepositoryStatistics) {
+        this.persistRepositoryStatistics = persistRepositoryStatistics;
+
+        Path file = saveDirectory.resolve(REPOSITORY_STATISTICS_FILE);
+        if (persistRepositoryStatistics && Files.exists(file)) {
+            try {
+                repositoryStatistics.load(file);
+            } catch (IOException e) {
+                logger.warn("Cannot load repository statistics", e);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of threads used to resolve the descriptors of
+     * transitive dependencies in parallel.
+     *
+     * @return number of transitive resolution threads
+     */
+    public int getTransitiveResolutionThreads() {
+        return transitiveResolutionThreads;
+    }
+
+    /**
+     * Sets the number of threads used to resolve the descriptors of
+     * transitive dependencies in parallel.
+     * <p>
+     * Transitive dependencies are collected breadth-first, and the POMs of
+     * the dependencies at the same depth are downloaded at the same time by
+     * up to this number of threads. This must be set before transitive
+     * dependencies are resolved for the first time.
+     *
+     * @param transitiveResolutionThreads number of transitive resolution threads, 1 to resolve descriptors one after another
+     */
+    public void setTransitiveResolutionThreads(int transitiveResolutionThreads) {
+        if (transitiveResolutionThreads < 1) {
+            throw new IllegalArgumentException("transitiveResolutionThreads must be at least 1");
+        }
+        this.transitiveResolutionThreads = transitiveResolutionThreads;
+    }
+
+    /**
+     * Gets whether transitive dependencies are resolved by reading POMs
+     * directly instead of with Maven Resolver.
+     *
+     * @return true if the native resolver is used, false otherwise
+     */
+    public synchronized boolean isNativeTransitiveResolution() {
+        return nativeTransitiveResolution;
+    }
+
+    /**
+     * Sets whether transitive dependencies are resolved by reading POMs
+     * directly instead of with Maven Resolver.
+     * <p>
+     * By default, Maven Resolver and its dependencies are downloaded and
+     * loaded into an isolated class loader the first time transitive
+     * dependencies are resolved. The native resolver only downloads the POMs
+     * it needs and supports the common POM features, which is much faster
+     * and lighter, but doesn't evaluate profiles or version ranges.
+     *
+     * @param nativeTransitiveResolution whether to use the native resolver
+     * @see PomDependencyResolver
+     */
+    public synchronized void setNativeTransitiveResolution(boolean nativeTransitiveResolution) {
+        this.nativeTransitiveResolution = nativeTransitiveResolution;
+    }
+
+    /**
+     * Gets the persistent cache of resolved transitive dependencies.
+     * <p>
+     * The transitive dependencies of a library are only resolved with Maven
+     * Resolver the first time the library is loaded with a given set of
+     * repositories and exclusions, later loads use the cached result without
+     * downloading or starting Maven Resolver. The cache can be cleared to
+     * force a new resolution.
+     *
+     * @return transitive dependency cache
+     */
+    public TransitiveDependencyCache getTransitiveDependencyCache() {
+        return transitiveDependencyCache;
+    }
+
+    /**
+     * Gets the store of library jars shared with other library managers.
+     *
+     * @return shared library store, or null if disabled
+     */
+    public SharedLibraryStore getSharedLibraryStore() {
+        return sharedLibraryStore;
+    }
+
+    /**
+     * Sets the store of library jars shared with other library managers.
+     * <p>
+     * When set, library jars are looked up in the store before being
+     * downloaded and downloaded jars are added to it. The save directory of
+     * this library manager then only contains links to the stored jars, so
+     * plugins using the same libraries download and store them only once.
+     * Disabled by default.
+     *
+     * @param sharedLibraryStore the shared library store, or null to disable it
+     * @see SharedLibraryStore#createDefault()
+     */
+    public void setSharedLibraryStore(SharedLibraryStore sharedLibraryStore) {
+        this.sharedLibraryStore = sharedLibraryStore;
+    }
+
+    /**
+     * Gets how often downloaded snapshot libraries are checked for new builds.
+     *
+     * @return snapshot update policy
+     */
+    public SnapshotUpdatePolicy getSnapshotUpdatePolicy() {
+        return snapshotUpdatePolicy;
+    }
+
+    /**
+     * Sets how often downloaded snapshot libraries are checked for new builds.
+     * <p>
+     * By default, snapshot libraries are checked every time they're loaded.
+     * A check resolves the current snapshot version and only downloads the
+     * jar again if the remote build changed, so checks are much cheaper than
+     * downloads. If a check fails, the saved jar is used.
+     *
+     * @param snapshotUpdatePolicy the snapshot update policy
+     */
+    public void setSnapshotUpdatePolicy(SnapshotUpdatePolicy snapshotUpdatePolicy) {
+        this.snapshotUpdatePolicy = requireNonNull(snapshotUpdatePolicy, "snapshotUpdatePolicy");
+    }
+
+    /**
+     * Gets whether libraries are loaded from and recorded in a lockfile.
+     *
+     * @return true if the lockfile is enabled, false otherwise
+     */
+    public boolean isLockfileEnabled() {
+        return lockfile != null;
+    }
+
+    /**
+     * Sets whether libraries are loaded from and recorded in a lockfile.
+     * <p>
+     * When enabled, the resolved URL, checksum, relocated path and transitive
+     * dependencies of every loaded library are recorded in a {@code libby.lock}
+     * file in the save directory. At later starts, libraries found in the
+     * lockfile are loaded directly from the saved jars, without any repository
+     * lookup and without resolving transitive dependencies again. A library
+     * whose declaration or repositories changed is resolved again. Snapshot
+     * libraries are never locked.
+     *
+     * @param lockfileEnabled whether to use a lockfile
+     * @see Lockfile
+     */
+    public void setLockfileEnabled(boolean lockfileEnabled) {
+        if (!lockfileEnabled) {
+            lockfile = null;
+            return;
+        }
+
+        Lockfile lockfile = new Lockfile(saveDirectory.resolve(LOCKFILE));
+        try {
+            lockfile.load();
+        } catch (IOException e) {
+            logger.warn("Cannot load lockfile, libraries will be resolved again", e);
+        }
+        this.lockfile = lockfile;
+    }
+
+    /**
+     * Saves the repository statistics if they are persisted.
+     */
+    private void saveRepositoryStatistics() {
+        if (!persistRepositoryStatistics) {
+            return;
+        }
+
+        synchronized (repositoryStatistics) {
+            try {
+                repositoryStatistics.save(saveDirectory.resolve(REPOSITORY_STATISTICS_FILE));
+            } catch (IOException e) {
+                logger.debug("Cannot save repository statistics", e);
+            }
+        }
+    }
+
     /**
      * Gets the currently added repositories used to resolve artifacts.
      * <p>
@@ -249,33 +770,38 @@ public abstract class LibraryManager {
     /**
      * Gets all of the possible download URLs for this library. Entries are
      * ordered by direct download URLs first and then repository download URLs.
-     * <br>This method also resolves SNAPSHOT artifacts URLs.
+     * <br>This method also resolves SNAPSHOT artifacts URLs. The snapshot
+     * metadata of every repository is requested at the same time.
      *
      * @param library the library to resolve
      * @return download URLs
      */
     public Collection<String> resolveLibrary(Library library) {
         Set<String> urls = new LinkedHashSet<>(requireNonNull(library, "library").getUrls());
-        boolean snapshot = library.isSnapshot();
 
         // Try from library-declared repos first
-        for (String repository : library.getRepositories()) {
-            if (snapshot) {
-                String url = resolveSnapshot(repository, library);
-                if (url != null)
-                    urls.add(repository + url);
-            } else {
+        List<String> repositories = new ArrayList<>(orderRepositories(library.getRepositories()));
+        repositories.addAll(orderRepositories(getRepositories()));
+
+        if (!library.isSnapshot()) {
+            for (String repository : repositories) {
                 urls.add(repository + library.getPath());
             }
-        }
+        } else if (repositories.size() == 1) {
+            String url = resolveSnapshot(repositories.get(0), library);
+            if (url != null)
+                urls.add(repositories.get(0) + url);
+        } else {
+            List<CompletableFuture<String>> snapshots = new ArrayList<>(repositories.size());
+            for (String repository : repositories) {
+                snapshots.add(CompletableFuture.supplyAsync(() -> resolveSnapshot(repository, library), getProbeExecutor()));
+            }
 
-        for (String repository : getRepositories()) {
-            if (snapshot) {
-                String url = resolveSnapshot(repository, library);
+            // Join in declaration order so that the URLs keep the repository priority
+            for (int i = 0; i < repositories.size(); i++) {
+                String url = snapshots.get(i).join();
                 if (url != null)
-                    urls.add(repository + url);
-            } else {
-                urls.add(repository + library.getPath());
+                    urls.add(repositories.get(i) + url);
             }
         }
 
@@ -283,38 +809,101 @@ public abstract class LibraryManager {
     }
 
     /**
-     * Resolves the URL of the artifact of a snapshot library.
+     * Orders the provided repositories by their statistics, if enabled, and
+     * removes the ones whose host is known to be unreachable.
      *
-     * @param repository The repository to query for snapshot information
-     * @param library    The library
-     * @return The URl of the artifact of a snapshot library or null if no information could be gathered from the
-     * provided repository
+     * @param repositories the repositories to order
+     * @return the repositories to attempt, in order
+     * @see #setAdaptiveRepositoryOrder(boolean)
      */
-    private String resolveSnapshot(String repository, Library library) {
-        String url = requireNonNull(repository, "repository") + requireNonNull(library, "library").getPartialPath() + "maven-metadata.xml";
-        try {
-            URLConnection connection = new URL(requireNonNull(url, "url")).openConnection();
+    private Collection<String> orderRepositories(Collection<String> repositories) {
+        List<String> ordered = new ArrayList<>(repositories.size());
+        for (String repository : repositories) {
+            repositoryStatistics.register(repository);
+            if (negativeCache.isHostDown(repository)) {
+                logger.debug("Skipping unreachable repository " + repository);
+            } else {
+                ordered.add(repository);
+            }
+        }
 
-            connection.setConnectTimeout(5000);
-            connection.setReadTimeout(5000);
-            connection.setRequestProperty("User-Agent", LibbyProperties.HTTP_USER_AGENT);
+        return adaptiveRepositoryOrder ? repositoryStatistics.sort(ordered) : ordered;
+    }
 
-            try (InputStream in = connection.getInputStream()) {
-                return getURLFromMetadata(in, library);
-            }
-        } catch (MalformedURLException e) {
-            throw new IllegalArgumentException(e);
-        } catch (IOException e) {
-            if (e instanceof FileNotFoundException) {
-                logger.debug("File not found: " + url);
-            } else if (e instanceof SocketTimeoutException) {
-                logger.debug("Connect timed out: " + url);
-            } else if (e instanceof UnknownHostException) {
-                logger.debug("Unknown host: " + url);
-            } else {
-                logger.debug("Unexpected IOException", e);
+    /**
+     * Records a request that couldn't reach its host in the repository
+     * statistics and in the negative lookup cache. Other failures, like a
+     * read timeout, only fail the requested URL.
+     *
+     * @param url the requested URL
+     * @param e   the exception thrown by the request
+     */
+    private void recordFailure(String url, IOException e) {
+        if (isConnectFailure(e)) {
+            repositoryStatistics.recordUnreachable(url);
+            negativeCache.markHostDown(url);
+        }
+    }
+
+    /**
+     * Checks whether a request failed while connecting to its host.
+     *
+     * @param e the exception thrown by the request
+     * @return true if the host couldn't be reached, false otherwise
+     */
+    private static boolean isConnectFailure(IOException e) {
+        if (e instanceof UnknownHostException || e instanceof ConnectException || e instanceof NoRouteToHostException) {
+            return true;
+        }
+
+        // Connect and read timeouts are both socket timeouts, told apart by their message
+        return e instanceof SocketTimeoutException && e.getMessage() != null && e.getMessage().toLowerCase(Locale.ROOT).startsWith("connect");
+    }
+
+    /**
+     * Records a request for a file that wasn't found in the repository
+     * statistics and in the negative lookup cache.
+     *
+     * @param url   the requested URL
+     * @param start the {@link System#nanoTime()} at which the request started
+     */
+    private void recordNotFound(String url, long start) {
+        repositoryStatistics.recordNotFound(url, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        negativeCache.markNotFound(url);
+    }
+
+    /**
+     * Resolves the URL of the artifact of a snapshot library.
+     *
+     * @param repository The repository to query for snapshot information
+     * @param library    The library
+     * @return The URl of the artifact of a snapshot library or null if no information could be gathered from the
+     * provided repository
+     */
+    private String resolveSnapshot(String repository, Library library) {
+        String url = requireNonNull(repository, "repository") + requireNonNull(library, "library").getPartialPath() + "maven-metadata.xml";
+        if (negativeCache.isFailing(url)) {
+            logger.debug("Skipping cached failure: " + url);
+            return null;
+        }
+
+        long start = System.nanoTime();
+        try (TransportResponse response = request("GET", url, Collections.emptyMap(), start)) {
+            if (response == null) {
+                return null;
+            }
+
+            if (response.getStatusCode() < 200 || response.getStatusCode() >= 300) {
+                logger.debug("Unexpected response code " + response.getStatusCode() + ": " + url);
+                return null;
             }
 
+            long connected = System.nanoTime();
+            String snapshotUrl = getURLFromMetadata(response.getBody(), library);
+            repositoryStatistics.recordSuccess(url, TimeUnit.NANOSECONDS.toMillis(connected - start), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connected), 0);
+            return snapshotUrl;
+        } catch (IOException e) {
+            logger.debug("Unexpected IOException", e);
             return null;
         }
     }
@@ -333,59 +922,111 @@ public abstract class LibraryManager {
         requireNonNull(inputStream, "inputStream");
         requireNonNull(library, "library");
 
-        String timestamp, buildNumber;
+        String version = library.getVersion();
+        // Call .substring(...) only on versions ending in "-SNAPSHOT".
+        // It should never happen that a snapshot version doesn't end in "-SNAPSHOT", but better be sure
+        if (version.endsWith("-SNAPSHOT")) {
+            version = version.substring(0, version.length() - "-SNAPSHOT".length());
+        }
+
+        String classifier = library.hasClassifier() ? library.getClassifier() : "";
+        String snapshotVersion = null;
+        String timestamp = null, buildNumber = null;
         try {
-            // This reads the maven-metadata.xml file and gets the snapshot info from the <snapshot> tag.
-            // Example tag:
+            // This streams the maven-metadata.xml file and gets the snapshot info from the <snapshot> tag, then the exact
+            // version of classified artifacts from the <snapshotVersions> tag. Reading stops as soon as the version is known.
+            // Example tags:
             // <snapshot>
             //     <timestamp>20220617.013635</timestamp>
             //     <buildNumber>12</buildNumber>
             // </snapshot>
-
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(inputStream);
-            doc.getDocumentElement().normalize();
-
-            NodeList nodes = doc.getElementsByTagName("snapshot");
-            if (nodes.getLength() == 0) {
-                return null;
-            }
-            Node snapshot = nodes.item(0);
-            if (snapshot.getNodeType() != Node.ELEMENT_NODE) {
-                return null;
-            }
-            Node timestampNode = ((Element) snapshot).getElementsByTagName("timestamp").item(0);
-            if (timestampNode == null || timestampNode.getNodeType() != Node.ELEMENT_NODE) {
-                return null;
-            }
-            Node buildNumberNode = ((Element) snapshot).getElementsByTagName("buildNumber").item(0);
-            if (buildNumberNode == null || buildNumberNode.getNodeType() != Node.ELEMENT_NODE) {
-                return null;
-            }
-            Node timestampChild = timestampNode.getFirstChild();
-            if (timestampChild == null || timestampChild.getNodeType() != Node.TEXT_NODE) {
-                return null;
-            }
-            Node buildNumberChild = buildNumberNode.getFirstChild();
-            if (buildNumberChild == null || buildNumberChild.getNodeType() != Node.TEXT_NODE) {
-                return null;
+            // <snapshotVersions>
+            //     <snapshotVersion>
+            //         <classifier>sources</classifier>
+            //         <extension>jar</extension>
+            //         <value>1.0-20220617.013635-12</value>
+            //     </snapshotVersion>
+            // </snapshotVersions>
+
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+            try {
+                boolean inSnapshot = false, inSnapshotVersion = false;
+                String versionClassifier = "", versionExtension = null, versionValue = null;
+
+                read:
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        switch (reader.getLocalName()) {
+                            case "snapshot":
+                                inSnapshot = true;
+                                break;
+                            case "snapshotVersion":
+                                inSnapshotVersion = true;
+                                versionClassifier = "";
+                                versionExtension = versionValue = null;
+                                break;
+                            case "timestamp":
+                                if (inSnapshot) {
+                                    timestamp = reader.getElementText().trim();
+                                }
+                                break;
+                            case "buildNumber":
+                                if (inSnapshot) {
+                                    buildNumber = reader.getElementText().trim();
+                                }
+                                break;
+                            case "classifier":
+                                if (inSnapshotVersion) {
+                                    versionClassifier = reader.getElementText().trim();
+                                }
+                                break;
+                            case "extension":
+                                if (inSnapshotVersion) {
+                                    versionExtension = reader.getElementText().trim();
+                                }
+                                break;
+                            case "value":
+                                if (inSnapshotVersion) {
+                                    versionValue = reader.getElementText().trim();
+                                }
+                                break;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        switch (reader.getLocalName()) {
+                            case "snapshot":
+                                inSnapshot = false;
+                                // The <snapshot> tag is enough for unclassified artifacts
+                                if (!library.hasClassifier() && timestamp != null && buildNumber != null) {
+                                    break read;
+                                }
+                                break;
+                            case "snapshotVersion":
+                                inSnapshotVersion = false;
+                                if ("jar".equals(versionExtension) && classifier.equals(versionClassifier) && versionValue != null) {
+                                    snapshotVersion = versionValue;
+                                    break read;
+                                }
+                                break;
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
             }
-            timestamp = timestampChild.getNodeValue();
-            buildNumber = buildNumberChild.getNodeValue();
-        } catch (ParserConfigurationException | SAXException e) {
+        } catch (XMLStreamException e) {
             logger.debug("Invalid maven-metadata.xml", e);
             return null;
         }
 
-        String version = library.getVersion();
-        // Call .substring(...) only on versions ending in "-SNAPSHOT".
-        // It should never happen that a snapshot version doesn't end in "-SNAPSHOT", but better be sure
-        if (version.endsWith("-SNAPSHOT")) {
-            version = version.substring(0, version.length() - "-SNAPSHOT".length());
+        if (snapshotVersion == null) {
+            if (timestamp == null || timestamp.isEmpty() || buildNumber == null || buildNumber.isEmpty()) {
+                return null;
+            }
+            snapshotVersion = version + '-' + timestamp + '-' + buildNumber;
         }
 
-        String url = library.getPartialPath() + library.getArtifactId() + '-' + version + '-' + timestamp + '-' + buildNumber;
+        String url = library.getPartialPath() + library.getArtifactId() + '-' + snapshotVersion;
         if (library.hasClassifier()) {
             url += '-' + library.getClassifier();
         }
@@ -393,57 +1034,330 @@ public abstract class LibraryManager {
     }
 
     /**
-     * Downloads a library jar and returns the contents as a byte array.
+     * Creates a StAX factory which doesn't resolve DTDs or external entities.
+     *
+     * @return new StAX factory
+     */
+    private static XMLInputFactory newXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Makes a request with the transport, handling the failures common to
+     * every request. Unreachable hosts and files that weren't found are
+     * logged, recorded in the repository statistics and in the negative
+     * lookup cache, and then null is returned.
+     *
+     * @param method  the request method
+     * @param url     the URL to request
+     * @param headers additional request headers
+     * @param start   the {@link System#nanoTime()} at which the request started
+     * @return the response, or null if the host couldn't be reached or the file wasn't found
+     */
+    private TransportResponse request(String method, String url, Map<String, String> headers, long start) {
+        TransportResponse response;
+        try {
+            response = getTransport().request(method, url, headers);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        } catch (IOException e) {
+            recordFailure(url, e);
+            if (e instanceof SocketTimeoutException) {
+                logger.debug((isConnectFailure(e) ? "Connect timed out: " : "Read timed out: ") + url);
+            } else if (e instanceof UnknownHostException) {
+                logger.debug("Unknown host: " + url);
+            } else {
+                logger.debug("Unexpected IOException", e);
+            }
+
+            return null;
+        }
+
+        int statusCode = response.getStatusCode();
+        if (statusCode == 404 || statusCode == 410) {
+            closeQuietly(response);
+            recordNotFound(url, start);
+            logger.debug("File not found: " + url);
+            return null;
+        }
+
+        return response;
+    }
+
+    /**
+     * Closes a response, ignoring any exception.
+     *
+     * @param response the response to close
+     */
+    private static void closeQuietly(TransportResponse response) {
+        try {
+            response.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Downloads a library jar to the provided file, streaming it straight to
+     * disk and updating the provided message digest while it is written.
+     * <p>
+     * If the file holds a partial download of the same URL, recorded in its
+     * {@link #getPartialDownloadInfo(Path) info file}, the download is resumed
+     * with an HTTP range request. The download restarts from the beginning if
+     * the server doesn't support ranges or the remote file has changed. When
+     * the transfer fails midway, the partial download is kept to be resumed by
+     * the next attempt.
      *
      * @param url the URL to the library jar
-     * @return downloaded jar as byte array or null if nothing was downloaded
+     * @param out the file to write the jar to
+     * @param md  the message digest to update with the jar content or null
+     * @return true if the jar has been downloaded, false otherwise
+     * @throws IOException if the jar couldn't be written to disk
+     */
+    private boolean downloadLibrary(String url, Path out, MessageDigest md) throws IOException {
+        if (negativeCache.isFailing(url)) {
+            logger.debug("Skipping cached failure: " + url);
+            return false;
+        }
+
+        Path infoFile = getPartialDownloadInfo(out);
+        long resumeFrom = 0;
+        String validator = null;
+
+        Properties info = readDownloadInfo(infoFile);
+        if (info != null && url.equals(info.getProperty("url")) && Files.exists(out)) {
+            validator = info.getProperty("etag", info.getProperty("last-modified"));
+            if (validator != null) {
+                resumeFrom = Files.size(out);
+            }
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        if (resumeFrom > 0) {
+            headers.put("Range", "bytes=" + resumeFrom + '-');
+            headers.put("If-Range", validator);
+        }
+
+        long start = System.nanoTime();
+        TransportResponse response = request("GET", url, headers, start);
+        if (response == null) {
+            return false;
+        }
+
+        return downloadLibrary(url, response, out, md, resumeFrom, start);
+    }
+
+    /**
+     * Writes the body of a download response to the provided file, updating
+     * the provided message digest while it is written. The response is
+     * always closed.
+     *
+     * @param url        the requested URL
+     * @param response   the response to the download request
+     * @param out        the file to write the jar to
+     * @param md         the message digest to update with the jar content or null
+     * @param resumeFrom the size of the partial download the request tried to resume, or 0
+     * @param start      the {@link System#nanoTime()} at which the request started
+     * @return true if the jar has been downloaded, false otherwise
+     * @throws IOException if the jar couldn't be written to disk
      */
-    private byte[] downloadLibrary(String url) {
+    private boolean downloadLibrary(String url, TransportResponse response, Path out, MessageDigest md, long resumeFrom, long start) throws IOException {
+        Path infoFile = getPartialDownloadInfo(out);
         try {
-            URLConnection connection = new URL(requireNonNull(url, "url")).openConnection();
+            int statusCode = response.getStatusCode();
+            if (statusCode == 416 && resumeFrom > 0) {
+                // Range not satisfiable, the partial download is unusable
+                logger.debug("Cannot resume download: " + url);
+                deletePartialDownload(out);
+                return downloadLibrary(url, out, md);
+            }
+
+            if (statusCode < 200 || statusCode >= 300) {
+                logger.debug("Unexpected response code " + statusCode + ": " + url);
+                return false;
+            }
 
-            connection.setConnectTimeout(5000);
-            connection.setReadTimeout(5000);
-            connection.setRequestProperty("User-Agent", LibbyProperties.HTTP_USER_AGENT);
+            boolean resumed = false;
+            if (resumeFrom > 0) {
+                String contentRange = response.getHeader("Content-Range");
+                resumed = statusCode == 206 && contentRange != null && contentRange.startsWith("bytes " + resumeFrom + '-');
+            }
+
+            writePartialDownloadInfo(infoFile, url, response.getHeader("ETag"), response.getHeader("Last-Modified"));
+
+            if (md != null) {
+                md.reset();
+                if (resumed) {
+                    updateDigest(md, out);
+                }
+            }
+
+            // The body is opened after reading the partial download, since its read timeout starts when it's opened
+            InputStream in = response.getBody();
+            if (md != null) {
+                in = new DigestInputStream(in, md);
+            }
+
+            try (FileChannel channel = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                if (resumed) {
+                    channel.position(resumeFrom);
+                    logger.info("Resuming download of " + response.getUrl() + " from byte " + resumeFrom);
+                } else {
+                    channel.truncate(0);
+                }
 
-            try (InputStream in = connection.getInputStream()) {
+                long connected = System.nanoTime();
+                ByteBuffer buf = ByteBuffer.allocate(8192);
+                long expected = response.getContentLength();
+                long transferred = 0;
                 int len;
-                byte[] buf = new byte[8192];
-                ByteArrayOutputStream out = new ByteArrayOutputStream();
 
-                try {
-                    while ((len = in.read(buf)) != -1) {
-                        out.write(buf, 0, len);
+                while (true) {
+                    // Only network failures make this URL fail, local write failures are thrown
+                    try {
+                        len = in.read(buf.array());
+                    } catch (SocketTimeoutException e) {
+                        logger.warn("Download timed out: " + response.getUrl());
+                        return false;
+                    } catch (IOException e) {
+                        logger.debug("Unexpected IOException", e);
+                        return false;
+                    }
+
+                    if (len == -1) {
+                        break;
                     }
-                } catch (SocketTimeoutException e) {
-                    logger.warn("Download timed out: " + connection.getURL());
-                    return null;
+
+                    buf.limit(len);
+                    while (buf.hasRemaining()) {
+                        channel.write(buf);
+                    }
+                    buf.clear();
+                    transferred += len;
                 }
 
-                logger.info("Downloaded library " + connection.getURL());
-                return out.toByteArray();
-            }
-        } catch (MalformedURLException e) {
-            throw new IllegalArgumentException(e);
-        } catch (IOException e) {
-            if (e instanceof FileNotFoundException) {
-                logger.debug("File not found: " + url);
-            } else if (e instanceof SocketTimeoutException) {
-                logger.debug("Connect timed out: " + url);
-            } else if (e instanceof UnknownHostException) {
-                logger.debug("Unknown host: " + url);
-            } else {
-                logger.debug("Unexpected IOException", e);
+                if (expected != -1 && transferred < expected) {
+                    logger.warn("Download interrupted: " + response.getUrl());
+                    return false;
+                }
+
+                repositoryStatistics.recordSuccess(url, TimeUnit.NANOSECONDS.toMillis(connected - start), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connected), transferred);
             }
 
+            logger.info("Downloaded library " + response.getUrl());
+            return true;
+        } finally {
+            closeQuietly(response);
+        }
+    }
+
+    /**
+     * Gets the info file of a partial download, which records the source URL
+     * and the HTTP validators needed to resume it.
+     *
+     * @param out the partially downloaded file
+     * @return the info file of the partial download
+     */
+    private static Path getPartialDownloadInfo(Path out) {
+        return out.resolveSibling(out.getFileName() + ".properties");
+    }
+
+    /**
+     * Reads the info file of a partial download or of a downloaded snapshot.
+     *
+     * @param infoFile the info file to read
+     * @return the download info or null if there isn't any
+     */
+    private Properties readDownloadInfo(Path infoFile) {
+        if (!Files.exists(infoFile)) {
             return null;
         }
+
+        Properties info = new Properties();
+        try (InputStream in = Files.newInputStream(infoFile)) {
+            info.load(in);
+        } catch (IOException e) {
+            logger.debug("Cannot read download info " + infoFile, e);
+            return null;
+        }
+        return info;
+    }
+
+    /**
+     * Writes the info file of a partial download. Nothing is written if the
+     * server didn't send any validator, since the download couldn't be safely
+     * resumed anyway.
+     *
+     * @param infoFile     the info file to write
+     * @param url          the URL being downloaded
+     * @param etag         the ETag header sent by the server or null
+     * @param lastModified the Last-Modified header sent by the server or null
+     * @throws IOException if the file couldn't be written
+     */
+    private static void writePartialDownloadInfo(Path infoFile, String url, String etag, String lastModified) throws IOException {
+        // Weak ETags cannot be used with If-Range
+        if (etag != null && etag.startsWith("W/")) {
+            etag = null;
+        }
+
+        if (etag == null && lastModified == null) {
+            Files.deleteIfExists(infoFile);
+            return;
+        }
+
+        Properties info = new Properties();
+        info.setProperty("url", url);
+        if (etag != null) {
+            info.setProperty("etag", etag);
+        }
+        if (lastModified != null) {
+            info.setProperty("last-modified", lastModified);
+        }
+
+        try (OutputStream out = Files.newOutputStream(infoFile)) {
+            info.store(out, null);
+        }
+    }
+
+    /**
+     * Deletes a partial download and its info file.
+     *
+     * @param out the partially downloaded file
+     */
+    private static void deletePartialDownload(Path out) {
+        try {
+            Files.deleteIfExists(out);
+            Files.deleteIfExists(getPartialDownloadInfo(out));
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Updates the provided message digest with the content of a file.
+     *
+     * @param md   the message digest to update
+     * @param file the file to read
+     * @throws IOException if the file couldn't be read
+     */
+    private static void updateDigest(MessageDigest md, Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            int len;
+            byte[] buf = new byte[8192];
+            while ((len = in.read(buf)) != -1) {
+                md.update(buf, 0, len);
+            }
+        }
     }
 
     /**
      * Downloads a library jar to the save directory if it doesn't already
-     * exist (snapshot libraries are always re-downloaded) and returns
-     * the local file path.
+     * exist and returns the local file path. Snapshot libraries are downloaded
+     * again when the remote build changed, according to the
+     * {@link #setSnapshotUpdatePolicy(SnapshotUpdatePolicy) snapshot update policy}.
+     * If a {@link #setSharedLibraryStore(SharedLibraryStore) shared library store}
+     * is set, jars are linked from the store instead of being downloaded again.
      * <p>
      * If the library has a checksum, it will be compared against the
      * downloaded jar's checksum to verify the integrity of the download. If
@@ -453,6 +1367,15 @@ public abstract class LibraryManager {
      * Checksum comparison is ignored if the library doesn't have a checksum
      * or if the library jar already exists in the save directory.
      * <p>
+     * Interrupted downloads are kept in the save directory and resumed by the
+     * next call, if the server supports HTTP range requests.
+     * <p>
+     * Concurrent downloads of the same jar in this JVM are deduplicated, the
+     * later calls wait for the first one and return its result. The jar is
+     * also locked while it's downloaded, so that library managers of other
+     * processes sharing the same save directory wait for the download and
+     * reuse the jar instead of downloading it again.
+     * <p>
      * Most of the time it is advised to use {@link #loadLibrary(Library)}
      * instead of this method because this one is only concerned with
      * downloading the jar and returning the local path. It's usually more
@@ -465,141 +1388,920 @@ public abstract class LibraryManager {
      */
     public Path downloadLibrary(Library library) {
         Path file = saveDirectory.resolve(requireNonNull(library, "library").getPath());
-        if (Files.exists(file)) {
-            // Early return only if library isn't a snapshot, since snapshot libraries are always re-downloaded
+        if (!library.isSnapshot() && Files.exists(file)) {
+            return file;
+        }
+
+        return singleFlight(file, () -> {
+            ArtifactLock lock = acquireLock(file);
+            try {
+                // The jar may have been downloaded by another process while waiting for the lock
+                return downloadLibrary(library, file);
+            } finally {
+                releaseLock(lock);
+            }
+        });
+    }
+
+    /**
+     * Acquires the lock of a file written by this library manager.
+     *
+     * @param file the file to lock
+     * @return acquired lock, to be released with {@link #releaseLock(ArtifactLock)}
+     * @throws UncheckedIOException if the file couldn't be locked
+     */
+    private static ArtifactLock acquireLock(Path file) {
+        try {
+            return ArtifactLock.acquire(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Releases the lock of a file, without hiding the failure of the write.
+     *
+     * @param lock the lock to release
+     */
+    private void releaseLock(ArtifactLock lock) {
+        try {
+            lock.release();
+        } catch (IOException e) {
+            logger.debug("Cannot release lock", e);
+        }
+    }
+
+    /**
+     * Writes a file, unless another thread of this JVM is already writing it,
+     * in which case the result of that thread is awaited and returned instead.
+     *
+     * @param file  the file to write
+     * @param write the task writing the file and returning its path
+     * @return path of the written file
+     */
+    private static Path singleFlight(Path file, Supplier<Path> write) {
+        Path key = file.toAbsolutePath().normalize();
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        CompletableFuture<Path> inFlight = IN_FLIGHT.putIfAbsent(key, future);
+        if (inFlight != null) {
+            return join(inFlight);
+        }
+
+        try {
+            Path path = write.get();
+            future.complete(path);
+            return path;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            IN_FLIGHT.remove(key, future);
+        }
+    }
+
+    /**
+     * Downloads a library jar to the provided file, which must be locked.
+     *
+     * @param library the library to download
+     * @param file    the locked file to download the jar to
+     * @return local file path to library
+     * @see #downloadLibrary(Library)
+     */
+    private Path downloadLibrary(Library library, Path file) {
+        boolean exists = Files.exists(file);
+        Properties snapshotInfo = null;
+        if (exists) {
+            // Early return only if library isn't a snapshot, since snapshot libraries may have to be updated
             if (!library.isSnapshot()) {
                 return file;
             }
 
-            // Delete the file since the Files.move call down below will fail if it exists
-            try {
-                Files.delete(file);
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
+            snapshotInfo = readDownloadInfo(getSnapshotInfo(file));
+            if (!snapshotUpdatePolicy.isUpdateDue(getLastChecked(snapshotInfo))) {
+                return file;
+            }
+        }
+
+        SharedLibraryStore store = sharedLibraryStore;
+        if (store != null && !library.isSnapshot()) {
+            Path object = store.find(library.getPath(), library.getChecksum());
+            if (object != null) {
+                try {
+                    store.link(object, file);
+                    logger.debug("Linked library '" + library + "' from the shared library store");
+                    return file;
+                } catch (IOException e) {
+                    logger.debug("Cannot link library '" + library + "' from the shared library store", e);
+                }
             }
         }
 
         Collection<String> urls = resolveLibrary(library);
         if (urls.isEmpty()) {
+            if (exists) {
+                logger.warn("Cannot check for updates of snapshot library '" + library + "', using the saved jar");
+                return file;
+            }
             throw new RuntimeException("Library '" + library + "' couldn't be resolved, add a repository");
         }
 
-        MessageDigest md = null;
-        if (library.hasChecksum()) {
-            try {
-                md = MessageDigest.getInstance("SHA-256");
-            } catch (NoSuchAlgorithmException e) {
-                throw new RuntimeException(e);
-            }
+        if (snapshotInfo != null && !isSnapshotModified(library, urls.iterator().next(), snapshotInfo)) {
+            logger.debug("Snapshot library '" + library + "' is up to date");
+            writeSnapshotInfo(file, snapshotInfo);
+            return file;
         }
 
+        // The digest is recorded next to the jar, so that it never has to be read again to be checksummed
+        MessageDigest md = Checksums.newDigest();
+
         Path out = file.resolveSibling(file.getFileName() + ".tmp");
-        out.toFile().deleteOnExit();
+
+        // Try the URL of a partial download first, so that it can be resumed
+        RacedResponse raced = null;
+        Properties partial = readDownloadInfo(getPartialDownloadInfo(out));
+        if (partial != null && urls.contains(partial.getProperty("url"))) {
+            urls = moveFirst(urls, partial.getProperty("url"));
+        } else if (raceCandidates > 1 && urls.size() > 1) {
+            raced = raceUrls(urls);
+            if (raced != null) {
+                urls = moveFirst(urls, raced.url);
+            }
+        }
 
         try {
             Files.createDirectories(file.getParent());
 
             for (String url : urls) {
-                byte[] bytes = downloadLibrary(url);
-                if (bytes == null) {
+                boolean downloaded;
+                if (raced != null && url.equals(raced.url)) {
+                    // The response of the winning request is downloaded directly
+                    RacedResponse winner = raced;
+                    raced = null;
+                    downloaded = downloadLibrary(url, winner.response, out, md, 0, winner.start);
+                } else {
+                    downloaded = downloadLibrary(url, out, md);
+                }
+
+                if (!downloaded) {
                     continue;
                 }
 
-                if (md != null) {
-                    byte[] checksum = md.digest(bytes);
+                byte[] checksum = md.digest();
+                if (library.hasChecksum()) {
                     if (!Arrays.equals(checksum, library.getChecksum())) {
                         logger.warn("*** INVALID CHECKSUM ***");
                         logger.warn(" Library :  " + library);
                         logger.warn(" URL :  " + url);
                         logger.warn(" Expected :  " + Base64.getEncoder().encodeToString(library.getChecksum()));
                         logger.warn(" Actual :  " + Base64.getEncoder().encodeToString(checksum));
+                        deletePartialDownload(out);
                         continue;
                     }
                 }
 
-                Files.write(out, bytes);
-                Files.move(out, file);
+                if (library.isSnapshot()) {
+                    Properties info = readDownloadInfo(getPartialDownloadInfo(out));
+                    if (info == null) {
+                        info = new Properties();
+                    }
+                    info.setProperty("url", url);
+                    writeSnapshotInfo(file, info);
+                }
+
+                Files.move(out, file, StandardCopyOption.REPLACE_EXISTING);
+                deletePartialDownload(out);
+                writeChecksum(file, checksum);
+                downloadedUrls.put(library.getPath(), url);
+
+                if (store != null && !library.isSnapshot()) {
+                    try {
+                        store.link(store.add(library.getPath(), file, checksum), file);
+                    } catch (IOException e) {
+                        logger.warn("Cannot add library '" + library + "' to the shared library store", e);
+                    }
+                }
 
                 return file;
             }
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         } finally {
+            if (raced != null) {
+                closeQuietly(raced.response);
+            }
+
+            // Keep partial downloads which can be resumed
+            if (!Files.exists(getPartialDownloadInfo(out))) {
+                try {
+                    Files.deleteIfExists(out);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        if (exists) {
+            logger.warn("Cannot update snapshot library '" + library + "', using the saved jar");
+            return file;
+        }
+        throw new RuntimeException("Failed to download library '" + library + "'");
+    }
+
+    /**
+     * Gets the info file of a downloaded snapshot library, which records the
+     * URL it was downloaded from, the HTTP validators of the download and
+     * when it was last checked for updates.
+     *
+     * @param file the downloaded snapshot jar
+     * @return the info file of the snapshot
+     */
+    private static Path getSnapshotInfo(Path file) {
+        return file.resolveSibling(file.getFileName() + ".snapshot.properties");
+    }
+
+    /**
+     * Gets when a downloaded snapshot library was last checked for updates.
+     *
+     * @param snapshotInfo the snapshot info or null
+     * @return time of the last check, in milliseconds since the epoch, or 0 if unknown
+     */
+    private static long getLastChecked(Properties snapshotInfo) {
+        if (snapshotInfo == null) {
+            return 0;
+        }
+
+        try {
+            return Long.parseLong(snapshotInfo.getProperty("checked", "0"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Writes the info file of a downloaded snapshot library, recording that
+     * it was checked for updates now.
+     *
+     * @param file         the downloaded snapshot jar
+     * @param snapshotInfo the snapshot info to write
+     */
+    private void writeSnapshotInfo(Path file, Properties snapshotInfo) {
+        snapshotInfo.setProperty("checked", Long.toString(System.currentTimeMillis()));
+
+        Path infoFile = getSnapshotInfo(file);
+        try {
+            Files.createDirectories(infoFile.getParent());
+            try (OutputStream out = Files.newOutputStream(infoFile)) {
+                snapshotInfo.store(out, null);
+            }
+        } catch (IOException e) {
+            logger.debug("Cannot write snapshot info " + infoFile, e);
+        }
+    }
+
+    /**
+     * Checks whether the remote build of a downloaded snapshot library changed.
+     * <p>
+     * A resolved snapshot URL, which contains the timestamp and build number
+     * of the build, identifies an immutable build. Other URLs are checked with
+     * a conditional HEAD request using the validators of the previous download.
+     *
+     * @param library      the snapshot library
+     * @param url          the preferred download URL of the library
+     * @param snapshotInfo the info of the previous download
+     * @return true if the library should be downloaded again, false otherwise
+     */
+    private boolean isSnapshotModified(Library library, String url, Properties snapshotInfo) {
+        boolean sameUrl = url.equals(snapshotInfo.getProperty("url"));
+        String fileName = library.getPath().substring(library.getPath().lastIndexOf('/') + 1);
+        if (!url.endsWith('/' + fileName)) {
+            // The URL of a timestamped build changes with every build
+            return !sameUrl;
+        }
+
+        String etag = snapshotInfo.getProperty("etag");
+        String lastModified = snapshotInfo.getProperty("last-modified");
+        if (!sameUrl || (etag == null && lastModified == null)) {
+            return true;
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        if (etag != null) {
+            headers.put("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            headers.put("If-Modified-Since", lastModified);
+        }
+
+        try (TransportResponse response = request("HEAD", url, headers, System.nanoTime())) {
+            if (response == null) {
+                // The saved jar is still usable if the repository can't be reached
+                return false;
+            }
+
+            int statusCode = response.getStatusCode();
+            if (statusCode == 304) {
+                return false;
+            }
+            if (statusCode < 200 || statusCode >= 300) {
+                return true;
+            }
+
+            // Some servers ignore conditional headers on HEAD requests
+            if (etag != null) {
+                return !etag.equals(response.getHeader("ETag"));
+            }
+            return !lastModified.equals(response.getHeader("Last-Modified"));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Requests the first {@link #getRaceCandidates() candidates} of the
+     * provided URLs at the same time and returns the first successful
+     * response. The responses of the other candidates are closed as soon as
+     * they're received, and the requests still waiting for a response are
+     * interrupted.
+     *
+     * @param urls the candidate URLs, in order of preference
+     * @return the response of the fastest candidate, or null if no candidate answered successfully
+     */
+    private RacedResponse raceUrls(Collection<String> urls) {
+        List<String> candidates = new ArrayList<>(urls).subList(0, Math.min(raceCandidates, urls.size()));
+
+        CompletableFuture<RacedResponse> winner = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(candidates.size());
+        List<Future<?>> requests = new ArrayList<>(candidates.size());
+        for (String url : candidates) {
+            requests.add(getProbeExecutor().submit(() -> {
+                RacedResponse raced = null;
+                if (!winner.isDone() && !negativeCache.isFailing(url)) {
+                    long start = System.nanoTime();
+                    TransportResponse response = request("GET", url, Collections.emptyMap(), start);
+                    if (response != null && response.getStatusCode() >= 200 && response.getStatusCode() < 300) {
+                        raced = new RacedResponse(url, response, start);
+                    } else if (response != null) {
+                        closeQuietly(response);
+                    }
+                }
+
+                if (raced != null && winner.complete(raced)) {
+                    return;
+                }
+                if (raced != null) {
+                    // Lost the race, release the connection without reading the body
+                    closeQuietly(raced.response);
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    winner.complete(null);
+                }
+            }));
+        }
+
+        RacedResponse fastest = winner.join();
+
+        // Interrupt the requests still waiting for a response, which close it if they get one anyway
+        requests.forEach(request -> request.cancel(true));
+
+        if (fastest != null) {
+            logger.debug("Mirror race for " + candidates + " won by " + fastest.url);
+        }
+        return fastest;
+    }
+
+    /**
+     * Moves a URL to the head of a collection of URLs.
+     *
+     * @param urls the URLs, in order of preference
+     * @param url  the URL to attempt first
+     * @return the URLs with the provided one first
+     */
+    private static List<String> moveFirst(Collection<String> urls, String url) {
+        List<String> ordered = new ArrayList<>(urls.size());
+        ordered.add(url);
+        for (String other : urls) {
+            if (!other.equals(url)) {
+                ordered.add(other);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Gets the executor used to probe candidate URLs and to resolve snapshot
+     * metadata, creating it if needed.
+     *
+     * @return the probe executor
+     */
+    private synchronized ExecutorService getProbeExecutor() {
+        if (probeExecutor == null) {
+            probeExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30, TimeUnit.SECONDS, new SynchronousQueue<>(), new DownloadThreadFactory());
+        }
+        return probeExecutor;
+    }
+
+    /**
+     * Processes the input jar and generates an output jar with the relocation
+     * rules of the provided library applied, then returns the path to the
+     * relocated jar.
+     * <p>
+     * Relocated jars are keyed by the checksum of the input jar and by the
+     * relocation rules, so a changed jar or changed rules never reuse a stale
+     * relocated jar. The {@link #getMaxRelocatedVariants() most recently used}
+     * variants of a library are kept side by side and older ones are deleted.
+     *
+     * @param in      input jar
+     * @param library the library of the input jar
+     * @return the relocated file
+     * @see RelocationHelper#relocate(Path, Path, Collection)
+     */
+    private Path relocate(Path in, Library library) {
+        requireNonNull(in, "in");
+        requireNonNull(library, "library");
+
+        return relocate(in, library, getRelocatedFile(in, library));
+    }
+
+    /**
+     * Gets the relocated jar of a library, which is keyed by the checksum of
+     * the input jar and by the relocation rules of the library.
+     *
+     * @param in      input jar
+     * @param library the library of the input jar
+     * @return the relocated file
+     */
+    private Path getRelocatedFile(Path in, Library library) {
+        byte[] checksum;
+        try {
+            checksum = library.hasChecksum() ? library.getChecksum() : getChecksum(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        String relocatedPath = library.getRelocatedPath();
+        return saveDirectory.resolve(relocatedPath.substring(0, relocatedPath.length() - 4) + '-' + Checksums.toHex(checksum, 8) + ".jar");
+    }
+
+    /**
+     * Gets the file recording the checksum of a downloaded jar, with the size
+     * and modification time the jar had when it was checksummed.
+     *
+     * @param file the downloaded jar
+     * @return the checksum file of the jar
+     */
+    private static Path getChecksumFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".sha256");
+    }
+
+    /**
+     * Gets the SHA-256 checksum of a jar saved by this library manager. The
+     * checksum recorded when the jar was written is used as long as the jar
+     * isn't modified, the jar is only read otherwise.
+     *
+     * @param file the saved jar
+     * @return binary SHA-256 checksum
+     * @throws IOException if the jar couldn't be read
+     */
+    protected byte[] getChecksum(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        try {
+            String[] recorded = new String(Files.readAllBytes(getChecksumFile(file)), StandardCharsets.US_ASCII).trim().split(" ");
+            if (recorded.length == 3
+                && recorded[0].equals(Long.toString(attributes.size()))
+                && recorded[1].equals(Long.toString(attributes.lastModifiedTime().toMillis()))) {
+                return Base64.getDecoder().decode(recorded[2]);
+            }
+        } catch (IOException | IllegalArgumentException ignored) {
+            // Missing or corrupted, the jar is checksummed again
+        }
+
+        byte[] checksum = Checksums.sha256(file);
+        writeChecksum(file, checksum);
+        return checksum;
+    }
+
+    /**
+     * Records the checksum of a downloaded jar.
+     *
+     * @param file     the downloaded jar
+     * @param checksum the binary SHA-256 checksum of the jar
+     * @see #getChecksum(Path)
+     */
+    private void writeChecksum(Path file, byte[] checksum) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            String recorded = attributes.size() + " " + attributes.lastModifiedTime().toMillis() + ' ' + Base64.getEncoder().encodeToString(checksum);
+            Files.write(getChecksumFile(file), recorded.getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException e) {
+            logger.debug("Cannot record checksum of " + file, e);
+        }
+    }
+
+    /**
+     * Relocates a jar to the provided relocated jar, unless it already exists.
+     *
+     * @param in      input jar
+     * @param library the library of the input jar
+     * @param file    the relocated jar
+     * @return the relocated file
+     * @see #relocate(Path, Library)
+     */
+    private Path relocate(Path in, Library library, Path file) {
+        if (Files.exists(file)) {
+            touch(file);
+            return file;
+        }
+
+        RelocationHelper relocator = getRelocator();
+        return singleFlight(file, () -> {
+            Path tmpOut = null;
+            ArtifactLock lock = acquireLock(file);
             try {
-                Files.deleteIfExists(out);
-            } catch (IOException ignored) {
+                // The jar may have been relocated by another process while waiting for the lock
+                if (Files.exists(file)) {
+                    return file;
+                }
+
+                tmpOut = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+                relocator.relocate(in, tmpOut, library.getRelocations());
+                Files.move(tmpOut, file, StandardCopyOption.ATOMIC_MOVE);
+
+                logger.info("Relocations applied to " + saveDirectory.getParent().relativize(in));
+                evictRelocatedVariants(library, file);
+
+                return file;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                if (tmpOut != null) {
+                    try {
+                        Files.deleteIfExists(tmpOut);
+                    } catch (IOException ignored) {
+                    }
+                }
+                releaseLock(lock);
+            }
+        });
+    }
+
+    /**
+     * Relocates several jars, relocating the jars sharing the same relocation
+     * rules in a single pass.
+     *
+     * @param libraries the libraries of the jars
+     * @param files     the jars, in the same order as the libraries
+     * @return the relocated jars, or the jars themselves for libraries
+     * without relocations, in the same order as the libraries
+     * @see RelocationHelper#relocate(List, List, Collection)
+     */
+    private List<Path> relocateAll(List<Library> libraries, List<Path> files) {
+        List<Path> relocated = new ArrayList<>(files);
+
+        // Jars still to relocate, by relocated jar and grouped by relocation rules
+        Map<String, Map<Path, Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < libraries.size(); i++) {
+            Library library = libraries.get(i);
+            if (!library.hasRelocations()) {
+                continue;
+            }
+
+            Path file = getRelocatedFile(files.get(i), library);
+            relocated.set(i, file);
+            if (Files.exists(file)) {
+                touch(file);
+            } else {
+                groups.computeIfAbsent(Library.fingerprint(library.getRelocations()), key -> new TreeMap<>()).putIfAbsent(file, i);
+            }
+        }
+
+        for (Map<Path, Integer> group : groups.values()) {
+            if (group.size() == 1) {
+                Map.Entry<Path, Integer> entry = group.entrySet().iterator().next();
+                relocate(files.get(entry.getValue()), libraries.get(entry.getValue()), entry.getKey());
+            } else {
+                relocateGroup(libraries, files, group);
+            }
+        }
+        return relocated;
+    }
+
+    /**
+     * Relocates several jars sharing the same relocation rules in a single
+     * pass. Like {@link #singleFlight(Path, Supplier)}, the relocated jars
+     * which other threads of this JVM are already writing are left out of the
+     * pass, and awaited once the other jars are relocated.
+     *
+     * @param libraries the libraries of the jars
+     * @param files     the jars, in the same order as the libraries
+     * @param group     the indexes of the jars to relocate, by relocated jar
+     */
+    private void relocateGroup(List<Library> libraries, List<Path> files, Map<Path, Integer> group) {
+        Map<Path, Integer> claimed = new TreeMap<>();
+        Map<Path, CompletableFuture<Path>> futures = new HashMap<>();
+        List<CompletableFuture<Path>> inFlight = new ArrayList<>();
+        for (Map.Entry<Path, Integer> entry : group.entrySet()) {
+            CompletableFuture<Path> future = new CompletableFuture<>();
+            CompletableFuture<Path> existing = IN_FLIGHT.putIfAbsent(entry.getKey().toAbsolutePath().normalize(), future);
+            if (existing != null) {
+                inFlight.add(existing);
+            } else {
+                claimed.put(entry.getKey(), entry.getValue());
+                futures.put(entry.getKey(), future);
             }
         }
 
-        throw new RuntimeException("Failed to download library '" + library + "'");
+        try {
+            if (!claimed.isEmpty()) {
+                relocateClaimed(libraries, files, claimed);
+            }
+            futures.forEach((file, future) -> future.complete(file));
+        } catch (RuntimeException | Error e) {
+            futures.values().forEach(future -> future.completeExceptionally(e));
+            throw e;
+        } finally {
+            futures.forEach((file, future) -> IN_FLIGHT.remove(file.toAbsolutePath().normalize(), future));
+        }
+
+        // Only awaited after completing the claimed jars, so that threads relocating overlapping groups can't wait for each other
+        inFlight.forEach(LibraryManager::join);
+    }
+
+    /**
+     * Relocates several jars sharing the same relocation rules in a single
+     * pass, once their relocated jars are claimed in {@link #IN_FLIGHT}.
+     *
+     * @param libraries the libraries of the jars
+     * @param files     the jars, in the same order as the libraries
+     * @param group     the indexes of the jars to relocate, by relocated jar
+     * @see #relocateGroup(List, List, Map)
+     */
+    private void relocateClaimed(List<Library> libraries, List<Path> files, Map<Path, Integer> group) {
+        RelocationHelper relocator = getRelocator();
+
+        // Locks are always acquired in the order of the relocated jars, so that concurrent batches can't deadlock
+        List<ArtifactLock> locks = new ArrayList<>(group.size());
+        List<Path> in = new ArrayList<>(group.size());
+        List<Path> tmpOut = new ArrayList<>(group.size());
+        List<Path> out = new ArrayList<>(group.size());
+        try {
+            for (Map.Entry<Path, Integer> entry : group.entrySet()) {
+                Path file = entry.getKey();
+                locks.add(ArtifactLock.acquire(file));
+
+                // The jar may have been relocated by another thread or process while waiting for the lock
+                if (!Files.exists(file)) {
+                    in.add(files.get(entry.getValue()));
+                    tmpOut.add(Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp"));
+                    out.add(file);
+                }
+            }
+
+            if (in.isEmpty()) {
+                return;
+            }
+
+            relocator.relocate(in, tmpOut, libraries.get(group.values().iterator().next()).getRelocations());
+            for (int i = 0; i < out.size(); i++) {
+                Files.move(tmpOut.get(i), out.get(i), StandardCopyOption.ATOMIC_MOVE);
+                logger.info("Relocations applied to " + saveDirectory.getParent().relativize(in.get(i)));
+            }
+            for (Map.Entry<Path, Integer> entry : group.entrySet()) {
+                if (out.contains(entry.getKey())) {
+                    evictRelocatedVariants(libraries.get(entry.getValue()), entry.getKey());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (Path tmp : tmpOut) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                }
+            }
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                releaseLock(locks.get(i));
+            }
+        }
+    }
+
+    /**
+     * Gets the relocation helper of this library manager, acquiring it if needed.
+     *
+     * @return the relocation helper
+     * @see RelocationHelper#acquire(LibraryManager)
+     */
+    private synchronized RelocationHelper getRelocator() {
+        if (relocator == null) {
+            relocator = RelocationHelper.acquire(this);
+        }
+        return relocator;
+    }
+
+    /**
+     * Saves the repository statistics, if persisted, and releases the
+     * resources held by this library manager: its reference to the shared
+     * relocation engine, which is closed once no library manager of any
+     * plugin uses it anymore, the threads probing repositories and the
+     * transport. Loaded libraries stay loaded.
+     * <p>
+     * The library managers of the supported platforms are closed when their
+     * plugin is disabled. This method must not be called while libraries are
+     * being loaded. The library manager can still be used afterwards, the
+     * resources being acquired again when needed.
+     */
+    @Override
+    public synchronized void close() {
+        saveRepositoryStatistics();
+        if (relocator != null) {
+            RelocationHelper.release(relocator);
+            relocator = null;
+        }
+        if (probeExecutor != null) {
+            probeExecutor.shutdown();
+            probeExecutor = null;
+        }
+        if (transport != null) {
+            try {
+                transport.close();
+            } catch (IOException e) {
+                logger.debug("Cannot close transport", e);
+            }
+            transport = null;
+        }
+    }
+
+    /**
+     * Gets the file whose modification time records the last use of a
+     * relocated jar. The jar itself isn't touched, since its size and
+     * modification time key its recorded checksum and its package index.
+     *
+     * @param file the relocated jar
+     * @return the last use file of the jar
+     */
+    private static Path getLastUseFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".used");
+    }
+
+    /**
+     * Marks a relocated jar as recently used.
+     *
+     * @param file the relocated jar
+     */
+    private void touch(Path file) {
+        Path lastUseFile = getLastUseFile(file);
+        try {
+            try {
+                Files.setLastModifiedTime(lastUseFile, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (NoSuchFileException e) {
+                Files.createFile(lastUseFile);
+            }
+        } catch (FileAlreadyExistsException ignored) {
+            // Created by another thread or process in the meantime
+        } catch (IOException e) {
+            logger.debug("Cannot update last use of " + file, e);
+        }
+    }
+
+    /**
+     * Gets when a relocated jar was last used, which is when it was written
+     * if it hasn't been used since.
+     *
+     * @param file the relocated jar
+     * @return last use time, in milliseconds since the epoch, or 0 if unknown
+     * @see #touch(Path)
+     */
+    private static long getLastUse(Path file) {
+        try {
+            Path lastUseFile = getLastUseFile(file);
+            return Files.getLastModifiedTime(Files.exists(lastUseFile) ? lastUseFile : file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
     }
 
     /**
-     * Processes the input jar and generates an output jar with the provided
-     * relocation rules applied, then returns the path to the relocated jar.
+     * Deletes the least recently used relocated jars of a library, keeping at
+     * most {@link #getMaxRelocatedVariants()} of them.
      *
-     * @param in          input jar
-     * @param out         output jar
-     * @param relocations relocations to apply
-     * @return the relocated file
-     * @see RelocationHelper#relocate(Path, Path, Collection)
+     * @param library the relocated library
+     * @param file    the relocated jar which was just written
      */
-    private Path relocate(Path in, String out, Collection<Relocation> relocations) {
-        requireNonNull(in, "in");
-        requireNonNull(out, "out");
-        requireNonNull(relocations, "relocations");
+    private void evictRelocatedVariants(Library library, Path file) {
+        String jarName = library.getPath().substring(library.getPath().lastIndexOf('/') + 1);
+        String prefix = jarName.substring(0, jarName.length() - 4) + "-relocated";
 
-        Path file = saveDirectory.resolve(out);
-        if (Files.exists(file)) {
-            return file;
+        List<Path> variants = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(file.getParent(), prefix + "*.jar")) {
+            stream.forEach(variants::add);
+        } catch (IOException e) {
+            logger.debug("Cannot list relocated jars of " + library, e);
+            return;
         }
 
-        Path tmpOut = file.resolveSibling(file.getFileName() + ".tmp");
-        tmpOut.toFile().deleteOnExit();
-
-        synchronized (this) {
-            if (relocator == null) {
-                relocator = new RelocationHelper(this);
-            }
+        if (variants.size() <= maxRelocatedVariants) {
+            return;
         }
 
-        try {
-            relocator.relocate(in, tmpOut, relocations);
-            Files.move(tmpOut, file);
+        Map<Path, Long> lastUse = new HashMap<>();
+        for (Path variant : variants) {
+            lastUse.put(variant, getLastUse(variant));
+        }
+        variants.sort((a, b) -> Long.compare(lastUse.get(b), lastUse.get(a)));
 
-            logger.info("Relocations applied to " + saveDirectory.getParent().relativize(in));
+        for (Path variant : variants.subList(maxRelocatedVariants, variants.size())) {
+            if (variant.equals(file)) {
+                continue;
+            }
 
-            return file;
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        } finally {
             try {
-                Files.deleteIfExists(tmpOut);
-            } catch (IOException ignored) {
+                Files.deleteIfExists(variant);
+                Files.deleteIfExists(IsolatedClassLoader.getIndexFile(variant));
+                Files.deleteIfExists(getLastUseFile(variant));
+                logger.debug("Deleted unused relocated jar " + variant);
+            } catch (IOException e) {
+                // The jar may still be in use by another process
+                logger.debug("Cannot delete unused relocated jar " + variant, e);
             }
         }
     }
 
     /**
-     * Resolves and loads transitive libraries for a given library. This method ensures that
-     * all libraries on which the provided library depends are properly loaded.
+     * Resolves the transitive libraries of several libraries. Libraries sharing
+     * the same relocations and repositories are resolved together as a single
+     * dependency graph, so shared dependencies are only resolved once and their
+     * versions are mediated across the libraries. Each library still gets its
+     * own transitive libraries only.
      *
-     * @param library the primary library for which transitive libraries need to be resolved and loaded.
-     * @throws NullPointerException if the provided library is null.
-     * @see #loadLibrary(Library)
+     * @param libraries the primary libraries for which transitive libraries need to be resolved
+     * @return the transitive libraries of every library which resolves its transitive dependencies, by library
+     * @see TransitiveDependencyResolver#findTransitiveLibraries(Collection)
      */
-    private void resolveTransitiveLibraries(Library library) {
-        requireNonNull(library, "library");
+    private Map<Library, Collection<Library>> resolveTransitiveLibraries(Collection<Library> libraries) {
+        Map<String, List<Library>> groups = new LinkedHashMap<>();
+        for (Library library : libraries) {
+            if (library.resolveTransitiveDependencies()) {
+                groups.computeIfAbsent(getTransitiveGroupKey(library), key -> new ArrayList<>()).add(library);
+            }
+        }
+
+        Class<? extends TransitiveDependencyResolver> resolverType = isNativeTransitiveResolution() ? PomDependencyResolver.class : TransitiveDependencyHelper.class;
+        Map<Library, Collection<Library>> transitiveLibraries = new HashMap<>();
+        for (List<Library> group : groups.values()) {
+            Map<Library, Collection<Library>> resolved = transitiveDependencyCache.get(resolverType, group, getRepositories());
+            if (resolved == null) {
+                // The resolver is only started when the transitive dependencies aren't cached
+                TransitiveDependencyResolver resolver = getTransitiveDependencyResolver();
+                resolved = resolver.findTransitiveLibraries(group);
+                try {
+                    transitiveDependencyCache.put(resolver.getClass(), group, getRepositories(), resolved);
+                } catch (IOException e) {
+                    logger.debug("Cannot save transitive dependency cache", e);
+                }
+            }
+
+            transitiveLibraries.putAll(resolved);
+        }
+        return transitiveLibraries;
+    }
 
-        synchronized (this) {
-            if (transitiveDependencyHelper == null) {
-                transitiveDependencyHelper = new TransitiveDependencyHelper(this, saveDirectory);
+    /**
+     * Gets the resolver of transitive dependencies, starting it if needed.
+     * <p>
+     * The resolver is started without holding this library manager's monitor,
+     * so threads already downloading libraries aren't blocked while Maven
+     * Resolver is downloaded and loaded.
+     *
+     * @return the resolver of transitive dependencies
+     * @see #isNativeTransitiveResolution()
+     */
+    private TransitiveDependencyResolver getTransitiveDependencyResolver() {
+        synchronized (transitiveDependencyResolverLock) {
+            boolean nativeResolution = isNativeTransitiveResolution();
+            if (transitiveDependencyResolver == null || transitiveDependencyResolver instanceof PomDependencyResolver != nativeResolution) {
+                transitiveDependencyResolver = nativeResolution ? new PomDependencyResolver(this, saveDirectory) : new TransitiveDependencyHelper(this, saveDirectory);
             }
+            return transitiveDependencyResolver;
         }
+    }
 
-        for (Library transitiveLibrary : transitiveDependencyHelper.findTransitiveLibraries(library)) {
-            loadLibrary(transitiveLibrary);
+    /**
+     * Gets the key of the group of libraries whose transitive dependencies can
+     * be resolved together with the ones of the provided library, since they
+     * get the same relocations and repositories.
+     *
+     * @param library the library
+     * @return group key
+     */
+    private static String getTransitiveGroupKey(Library library) {
+        StringBuilder key = new StringBuilder();
+        for (Relocation relocation : library.getRelocations()) {
+            key.append(relocation.getPattern()).append('>').append(relocation.getRelocatedPattern())
+               .append(relocation.getIncludes()).append(relocation.getExcludes()).append(' ');
         }
+        for (String repository : library.getRepositories()) {
+            key.append(repository).append(' ');
+        }
+        return key.toString();
     }
 
     /**
@@ -613,14 +2315,18 @@ public abstract class LibraryManager {
      * @see #downloadLibrary(Library)
      */
     public void loadLibrary(Library library) {
-        Path file = downloadLibrary(requireNonNull(library, "library"));
-        if (library.hasRelocations()) {
-            file = relocate(file, library.getRelocatedPath(), library.getRelocations());
-        }
-        if (library.resolveTransitiveDependencies()) {
-            resolveTransitiveLibraries(library);
-        }
+        loadLibraries(Runnable::run, requireNonNull(library, "library"));
+    }
 
+    /**
+     * Adds an already relocated library jar to the plugin's classpath, or to
+     * its isolated class loader. Every loaded jar goes through this method,
+     * in load order.
+     *
+     * @param library the library to add
+     * @param file    local file path of the relocated library
+     */
+    protected void addLibrary(Library library, Path file) {
         if (library.isIsolatedLoad()) {
             addToIsolatedClasspath(library, file);
         } else {
@@ -628,15 +2334,297 @@ public abstract class LibraryManager {
         }
     }
 
+    /**
+     * Waits for the download of a library jar.
+     *
+     * @param download the download
+     * @return local file path of the downloaded library
+     */
+    private static Path join(CompletableFuture<Path> download) {
+        try {
+            return download.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the lockfile fingerprint of a library.
+     *
+     * @param library the library
+     * @return the fingerprint or null if the library can't be locked
+     */
+    private String getLockFingerprint(Library library) {
+        if (lockfile == null || library.isSnapshot()) {
+            return null;
+        }
+        return Lockfile.fingerprint(library, getRepositories());
+    }
+
+    /**
+     * Loads a library and its transitive dependencies from their locked
+     * artifacts. Nothing is resolved, and jars are only downloaded again from
+     * their locked URL if they were deleted.
+     *
+     * @param library   the declared library
+     * @param artifacts the locked artifacts of the transitive dependencies followed by the library itself
+     * @param loaded    the already loaded jars of transitive dependencies
+     */
+    private void loadLockedLibrary(Library library, List<Lockfile.Artifact> artifacts, Set<Path> loaded) {
+        for (int i = 0; i < artifacts.size(); i++) {
+            Lockfile.Artifact artifact = artifacts.get(i);
+            boolean root = i == artifacts.size() - 1;
+
+            Library.Builder builder = Library.builder()
+                                             .groupId(artifact.getGroupId())
+                                             .artifactId(artifact.getArtifactId())
+                                             .version(artifact.getVersion())
+                                             .checksum(artifact.getChecksum());
+            if (artifact.getClassifier() != null) {
+                builder.classifier(artifact.getClassifier());
+            }
+            if (artifact.getUrl() != null) {
+                builder.url(artifact.getUrl());
+            }
+            library.getRepositories().forEach(builder::repository);
+            library.getRelocations().forEach(builder::relocate);
+            if (root) {
+                builder.id(library.getId()).isolatedLoad(library.isIsolatedLoad());
+            }
+
+            Library locked = builder.build();
+            Path file = downloadLibrary(locked);
+            if (locked.hasRelocations()) {
+                file = relocate(file, locked);
+            }
+            if (root || loaded.add(file)) {
+                addLibrary(locked, file);
+            }
+        }
+        logger.debug("Loaded " + library + " from lockfile");
+    }
+
+    /**
+     * Records the resolved artifacts of a library and of its transitive
+     * dependencies in the lockfile, which is saved once every library is loaded.
+     *
+     * @param fingerprint         the fingerprint of the library
+     * @param library             the loaded library
+     * @param transitiveLibraries the loaded transitive dependencies of the library
+     * @param files               the loaded jars of the transitive dependencies followed by the one of the library
+     */
+    private void lockLibrary(String fingerprint, Library library, Collection<Library> transitiveLibraries, List<Path> files) {
+        Lockfile lockfile = this.lockfile;
+        if (lockfile == null) {
+            return;
+        }
+
+        List<Library> libraries = new ArrayList<>(transitiveLibraries);
+        libraries.add(library);
+
+        List<Lockfile.Artifact> artifacts = new ArrayList<>(libraries.size());
+        try {
+            for (int i = 0; i < libraries.size(); i++) {
+                Library resolved = libraries.get(i);
+                if (resolved.isSnapshot()) {
+                    return;
+                }
+
+                artifacts.add(new Lockfile.Artifact(
+                    resolved.getGroupId(),
+                    resolved.getArtifactId(),
+                    resolved.getVersion(),
+                    resolved.getClassifier(),
+                    getLockUrl(resolved),
+                    getChecksum(saveDirectory.resolve(resolved.getPath())),
+                    resolved.getPath(),
+                    // The relocated jar is keyed by the checksum of the jar, unlike the relocated path of the library
+                    resolved.hasRelocations() ? saveDirectory.relativize(files.get(i)).toString().replace(File.separatorChar, '/') : null
+                ));
+            }
+
+            lockfile.put(fingerprint, artifacts);
+        } catch (IOException e) {
+            logger.warn("Cannot update lockfile", e);
+        }
+    }
+
+    /**
+     * Gets the URL a library jar is locked with. Jars which were already
+     * saved before being loaded are locked with the URL they would be
+     * downloaded from first.
+     *
+     * @param library the loaded library
+     * @return the download URL or null if the library can't be downloaded
+     */
+    private String getLockUrl(Library library) {
+        String url = downloadedUrls.get(library.getPath());
+        if (url != null) {
+            return url;
+        }
+        if (!library.getUrls().isEmpty()) {
+            return library.getUrls().iterator().next();
+        }
+
+        Collection<String> repositories = library.getRepositories().isEmpty() ? getRepositories() : library.getRepositories();
+        return repositories.isEmpty() ? null : repositories.iterator().next() + library.getPath();
+    }
+
+    /**
+     * Saves the lockfile, if enabled.
+     */
+    private void saveLockfile() {
+        Lockfile lockfile = this.lockfile;
+        if (lockfile == null) {
+            return;
+        }
+
+        try {
+            lockfile.save();
+        } catch (IOException e) {
+            logger.warn("Cannot update lockfile", e);
+        }
+    }
+
     /**
      * Loads multiple libraries into the plugin's classpath.
+     * <p>
+     * If more than one download thread is configured, the jars of all the
+     * libraries are downloaded in parallel first. The libraries are always
+     * added to the classpath in the provided order.
      *
      * @param libraries the libraries to load
      * @see #loadLibrary(Library)
+     * @see #setDownloadThreads(int)
      */
     public void loadLibraries(Library... libraries) {
-        for (Library library : libraries) {
-            loadLibrary(library);
+        int threads = Math.min(downloadThreads, requireNonNull(libraries, "libraries").length);
+        if (threads <= 1) {
+            loadLibraries(Runnable::run, libraries);
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new DownloadThreadFactory());
+        try {
+            loadLibraries(executor, libraries);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Loads multiple libraries into the plugin's classpath, downloading their
+     * jars in parallel on the provided executor.
+     * <p>
+     * Only the downloads are run on the executor, the libraries are then
+     * relocated and added to the classpath in the provided order on the
+     * calling thread.
+     * <p>
+     * The transitive dependencies of all the libraries are resolved together,
+     * so a dependency shared by several libraries is resolved, downloaded and
+     * loaded only once, with a single version. Each library is loaded right
+     * after its transitive dependencies which aren't loaded yet.
+     *
+     * @param executor  the executor used to download the libraries
+     * @param libraries the libraries to load
+     * @see #loadLibraries(Library...)
+     */
+    public void loadLibraries(Executor executor, Library... libraries) {
+        requireNonNull(executor, "executor");
+        requireNonNull(libraries, "libraries");
+
+        try {
+            String[] fingerprints = new String[libraries.length];
+            List<List<Lockfile.Artifact>> locked = new ArrayList<>(libraries.length);
+            List<Library> unlocked = new ArrayList<>(libraries.length);
+            List<CompletableFuture<Path>> downloads = new ArrayList<>(libraries.length);
+            for (int i = 0; i < libraries.length; i++) {
+                Library library = requireNonNull(libraries[i], "library");
+                fingerprints[i] = getLockFingerprint(library);
+                locked.add(fingerprints[i] != null ? lockfile.get(fingerprints[i]) : null);
+
+                // Locked libraries are loaded from their saved jars, without downloading anything
+                if (locked.get(i) != null) {
+                    downloads.add(CompletableFuture.completedFuture(null));
+                } else {
+                    unlocked.add(library);
+                    downloads.add(CompletableFuture.supplyAsync(() -> downloadLibrary(library), executor));
+                }
+            }
+
+            Map<Library, Collection<Library>> transitiveLibraries = resolveTransitiveLibraries(unlocked);
+
+            // Transitive libraries shared by several libraries are only downloaded and loaded once
+            Map<String, Library> dependencies = new LinkedHashMap<>();
+            for (Library library : unlocked) {
+                for (Library transitiveLibrary : transitiveLibraries.getOrDefault(library, Collections.emptyList())) {
+                    dependencies.putIfAbsent(transitiveLibrary.hasRelocations() ? transitiveLibrary.getRelocatedPath() : transitiveLibrary.getPath(), transitiveLibrary);
+                }
+            }
+
+            List<CompletableFuture<Path>> dependencyDownloads = new ArrayList<>(dependencies.size());
+            for (Library dependency : dependencies.values()) {
+                dependencyDownloads.add(CompletableFuture.supplyAsync(() -> downloadLibrary(dependency), executor));
+            }
+
+            // Relocate the jars of the dependencies and of the unlocked libraries together
+            List<Library> downloadedLibraries = new ArrayList<>(dependencies.values());
+            List<Path> downloadedFiles = new ArrayList<>(downloadedLibraries.size() + unlocked.size());
+            for (CompletableFuture<Path> download : dependencyDownloads) {
+                downloadedFiles.add(join(download));
+            }
+            for (int i = 0; i < libraries.length; i++) {
+                if (locked.get(i) == null) {
+                    downloadedLibraries.add(libraries[i]);
+                    downloadedFiles.add(join(downloads.get(i)));
+                }
+            }
+            List<Path> files = relocateAll(downloadedLibraries, downloadedFiles);
+
+            Map<String, Path> dependencyFiles = new HashMap<>();
+            int index = 0;
+            for (String key : dependencies.keySet()) {
+                dependencyFiles.put(key, files.get(index++));
+            }
+
+            // Each library is loaded right after its own transitive libraries, in the provided order
+            Set<Path> loaded = new HashSet<>();
+            boolean lockfileChanged = false;
+            for (int i = 0; i < libraries.length; i++) {
+                if (locked.get(i) != null) {
+                    loadLockedLibrary(libraries[i], locked.get(i), loaded);
+                    continue;
+                }
+
+                Collection<Library> libraryTransitiveLibraries = transitiveLibraries.getOrDefault(libraries[i], Collections.emptyList());
+                List<Path> libraryFiles = new ArrayList<>(libraryTransitiveLibraries.size() + 1);
+                for (Library transitiveLibrary : libraryTransitiveLibraries) {
+                    String key = transitiveLibrary.hasRelocations() ? transitiveLibrary.getRelocatedPath() : transitiveLibrary.getPath();
+                    Path file = dependencyFiles.get(key);
+                    libraryFiles.add(file);
+                    if (loaded.add(file)) {
+                        addLibrary(dependencies.get(key), file);
+                    }
+                }
+
+                Path file = files.get(index++);
+                libraryFiles.add(file);
+                addLibrary(libraries[i], file);
+                if (fingerprints[i] != null) {
+                    lockLibrary(fingerprints[i], libraries[i], libraryTransitiveLibraries, libraryFiles);
+                    lockfileChanged = true;
+                }
+            }
+
+            // Saved only once every library is loaded, since the entries of the libraries not loaded yet would be dropped
+            if (lockfileChanged) {
+                saveLockfile();
+            }
+        } finally {
+            saveRepositoryStatistics();
         }
     }
 
@@ -671,7 +2659,7 @@ public abstract class LibraryManager {
             }
         }
 
-        Set<Relocation> parsedRelocations = new HashSet<>();
+        List<Relocation> parsedRelocations = new ArrayList<>();
 
         // The relocations don't have to be included in the JSON file
         // If they are, they must be an object with keys representing the original class name and values representing the relocated class name
@@ -691,6 +2679,8 @@ public abstract class LibraryManager {
         JsonArray libraries = root.getArray("libraries");
 
         if (libraries != null) {
+            List<Library> parsedLibraries = new ArrayList<>(libraries.size());
+
             for (int i = 0; i < libraries.size(); i++) {
                 JsonObject library = libraries.getObject(i);
                 Library.Builder libraryBuilder = Library.builder();
@@ -724,13 +2714,15 @@ public abstract class LibraryManager {
                     libraryBuilder.checksum(checksum);
                 }
 
-                // We will just apply the relocations to all libraries. While it's not the most efficient, it's the easiest to implement
+                // The relocations are applied to all libraries, which are then relocated together in a single pass
                 for (Relocation relocation : parsedRelocations) {
                     libraryBuilder.relocate(relocation);
                 }
 
-                loadLibrary(libraryBuilder.build());
+                parsedLibraries.add(libraryBuilder.build());
             }
+
+            loadLibraries(parsedLibraries.toArray(new Library[0]));
         }
     }
 
@@ -749,6 +2741,230 @@ public abstract class LibraryManager {
         }
     }
 
+    /**
+     * Loads the libraries of a manifest prepared when the plugin was built.
+     * <p>
+     * The prepared jars are already relocated, so nothing is resolved nor
+     * relocated. Jars missing from the save directory are extracted from the
+     * plugin file if they're bundled in it, or downloaded from the
+     * repositories of the manifest otherwise, and verified against the
+     * checksums of the manifest. If more than one download thread is
+     * configured, missing jars are written in parallel. The jars are always
+     * added to the classpath in the order of the manifest.
+     *
+     * @param manifest the manifest to load
+     * @see LibraryManifest
+     */
+    public void loadFromManifest(LibraryManifest manifest) {
+        List<LibraryManifest.Artifact> artifacts = requireNonNull(manifest, "manifest").getArtifacts();
+        int threads = Math.min(downloadThreads, artifacts.size());
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads, new DownloadThreadFactory()) : null;
+        try {
+            List<CompletableFuture<Path>> files = new ArrayList<>(artifacts.size());
+            for (LibraryManifest.Artifact artifact : artifacts) {
+                Supplier<Path> write = () -> writePreparedArtifact(manifest, artifact);
+                files.add(executor != null ? CompletableFuture.supplyAsync(write, executor) : CompletableFuture.completedFuture(write.get()));
+            }
+
+            for (int i = 0; i < artifacts.size(); i++) {
+                LibraryManifest.Artifact artifact = artifacts.get(i);
+                Library.Builder builder = Library.builder()
+                                                 .groupId(artifact.getGroupId())
+                                                 .artifactId(artifact.getArtifactId())
+                                                 .version(artifact.getVersion())
+                                                 .checksum(artifact.getChecksum())
+                                                 .isolatedLoad(artifact.isIsolatedLoad());
+                if (artifact.getClassifier() != null) {
+                    builder.classifier(artifact.getClassifier());
+                }
+                if (artifact.getId() != null) {
+                    builder.id(artifact.getId());
+                }
+                addLibrary(builder.build(), join(files.get(i)));
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+            saveRepositoryStatistics();
+        }
+    }
+
+    /**
+     * Loads the libraries of the libby-manifest.json file in the plugin
+     * classpath, written by the libby-maven-plugin.
+     *
+     * @see #loadFromManifest(LibraryManifest)
+     */
+    public void loadFromManifest() {
+        try (InputStream in = getPluginResourceAsInputStream(LibraryManifest.RESOURCE)) {
+            if (in == null) {
+                throw new RuntimeException("Missing " + LibraryManifest.RESOURCE + " in the plugin file");
+            }
+            loadFromManifest(LibraryManifest.read(in));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the jar of a prepared artifact to the save directory, unless it
+     * already exists with the checksum of the manifest.
+     *
+     * @param manifest the manifest of the artifact
+     * @param artifact the prepared artifact
+     * @return local file path of the prepared jar
+     */
+    private Path writePreparedArtifact(LibraryManifest manifest, LibraryManifest.Artifact artifact) {
+        Path file = saveDirectory.resolve(artifact.getPath()).normalize();
+        if (!file.startsWith(saveDirectory)) {
+            throw new IllegalArgumentException("Invalid prepared artifact path: " + artifact.getPath());
+        }
+        if (isPreparedArtifactWritten(artifact, file)) {
+            return file;
+        }
+
+        return singleFlight(file, () -> {
+            ArtifactLock lock = acquireLock(file);
+            try {
+                // The jar may have been written by another process while waiting for the lock
+                if (!isPreparedArtifactWritten(artifact, file)) {
+                    if (Files.exists(file)) {
+                        // A modified jar isn't kept, even if it can't be replaced by a link to the shared library store
+                        logger.warn("Prepared library '" + artifact.getPath() + "' doesn't match the manifest checksum, writing it again");
+                        Files.delete(file);
+                    }
+                    writePreparedArtifact(manifest, artifact, file);
+                }
+                return file;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                releaseLock(lock);
+            }
+        });
+    }
+
+    /**
+     * Writes the jar of a prepared artifact to the provided file, which must
+     * be locked. The jar is linked from the shared library store, extracted
+     * from the plugin file or downloaded, in order of preference.
+     *
+     * @param manifest the manifest of the artifact
+     * @param artifact the prepared artifact
+     * @param file     the locked file to write the jar to
+     * @throws IOException if the jar couldn't be written
+     */
+    private void writePreparedArtifact(LibraryManifest manifest, LibraryManifest.Artifact artifact, Path file) throws IOException {
+        SharedLibraryStore store = sharedLibraryStore;
+        if (store != null) {
+            Path object = store.find(artifact.getPath(), artifact.getChecksum());
+            if (object != null) {
+                store.link(object, file);
+                writeChecksum(file, artifact.getChecksum());
+                logger.debug("Linked prepared library '" + artifact.getPath() + "' from the shared library store");
+                return;
+            }
+        }
+
+        MessageDigest md = Checksums.newDigest();
+
+        Files.createDirectories(file.getParent());
+        Path out = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            boolean written = false;
+
+            InputStream bundled;
+            try {
+                bundled = getPluginResourceAsInputStream(LibraryManifest.BUNDLE_DIRECTORY + artifact.getPath());
+            } catch (UnsupportedOperationException e) {
+                bundled = null;
+            }
+            if (bundled != null) {
+                try (InputStream in = new DigestInputStream(bundled, md)) {
+                    Files.copy(in, out, StandardCopyOption.REPLACE_EXISTING);
+                }
+                written = isPreparedChecksumValid(artifact, md.digest(), "the plugin file");
+            }
+
+            for (Iterator<String> repositories = manifest.getRepositories().iterator(); !written && repositories.hasNext(); ) {
+                String url = repositories.next() + artifact.getPath();
+                md.reset();
+                if (downloadLibrary(url, out, md)) {
+                    written = isPreparedChecksumValid(artifact, md.digest(), url);
+                    if (written) {
+                        downloadedUrls.put(artifact.getPath(), url);
+                    } else {
+                        deletePartialDownload(out);
+                    }
+                }
+            }
+
+            if (!written) {
+                throw new RuntimeException("Failed to write prepared library '" + artifact.getPath() + "', it isn't bundled in the plugin file nor available in the manifest repositories");
+            }
+
+            Files.move(out, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            deletePartialDownload(out);
+            logger.debug("Wrote prepared library '" + artifact.getPath() + "'");
+
+            if (store != null) {
+                try {
+                    store.link(store.add(artifact.getPath(), file, artifact.getChecksum()), file);
+                } catch (IOException e) {
+                    logger.warn("Cannot add prepared library '" + artifact.getPath() + "' to the shared library store", e);
+                }
+            }
+            writeChecksum(file, artifact.getChecksum());
+        } finally {
+            // Keep partial downloads which can be resumed
+            if (!Files.exists(getPartialDownloadInfo(out))) {
+                Files.deleteIfExists(out);
+            }
+        }
+    }
+
+    /**
+     * Gets whether the jar of a prepared artifact exists and has the checksum of the manifest.
+     *
+     * @param artifact the prepared artifact
+     * @param file     the prepared jar
+     * @return true if the jar is written, false if it must be written again
+     */
+    private boolean isPreparedArtifactWritten(LibraryManifest.Artifact artifact, Path file) {
+        if (!Files.exists(file)) {
+            return false;
+        }
+
+        try {
+            return Arrays.equals(getChecksum(file), artifact.getChecksum());
+        } catch (IOException e) {
+            logger.debug("Cannot read prepared library '" + artifact.getPath() + "'", e);
+            return false;
+        }
+    }
+
+    /**
+     * Checks the checksum of a written prepared jar.
+     *
+     * @param artifact the prepared artifact
+     * @param checksum the actual checksum of the written jar
+     * @param source   where the jar was written from
+     * @return true if the checksum is valid, false otherwise
+     */
+    private boolean isPreparedChecksumValid(LibraryManifest.Artifact artifact, byte[] checksum, String source) {
+        if (Arrays.equals(checksum, artifact.getChecksum())) {
+            return true;
+        }
+
+        logger.warn("*** INVALID CHECKSUM ***");
+        logger.warn(" Library :  " + artifact.getPath());
+        logger.warn(" Source :  " + source);
+        logger.warn(" Expected :  " + Base64.getEncoder().encodeToString(artifact.getChecksum()));
+        logger.warn(" Actual :  " + Base64.getEncoder().encodeToString(checksum));
+        return false;
+    }
+
     /**
      * Gets an input stream for a resource in the plugin file.
      *
@@ -759,4 +2975,55 @@ public abstract class LibraryManager {
     protected InputStream getPluginResourceAsInputStream(String path) throws UnsupportedOperationException {
         throw new UnsupportedOperationException("Loading resources from the plugin file is not supported on this platform.");
     }
+
+    /**
+     * The response of the candidate URL which won a mirror race.
+     */
+    private static class RacedResponse {
+        /**
+         * The requested URL
+         */
+        private final String url;
+
+        /**
+         * The successful response, not read yet
+         */
+        private final TransportResponse response;
+
+        /**
+         * The {@link System#nanoTime()} at which the request started
+         */
+        private final long start;
+
+        /**
+         * Creates a new raced response.
+         *
+         * @param url      the requested URL
+         * @param response the successful response
+         * @param start    the {@link System#nanoTime()} at which the request started
+         */
+        private RacedResponse(String url, TransportResponse response, long start) {
+            this.url = url;
+            this.response = response;
+            this.start = start;
+        }
+    }
+
+    /**
+     * Thread factory for the daemon threads used to download libraries in
+     * parallel.
+     */
+    private static class DownloadThreadFactory implements ThreadFactory {
+        /**
+         * Number of threads created by all the factories
+         */
+        private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "libby-download-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
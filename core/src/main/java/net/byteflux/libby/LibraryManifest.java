@@ -0,0 +1,322 @@
+package net.byteflux.libby;
+
+import com.grack.nanojson.JsonArray;
+import com.grack.nanojson.JsonObject;
+import com.grack.nanojson.JsonParser;
+import com.grack.nanojson.JsonParserException;
+import com.grack.nanojson.JsonWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A manifest of libraries prepared when a plugin is built, listing the jars
+ * to load in order, already resolved, relocated and checksummed.
+ * <p>
+ * A {@link LibraryManager} loading a manifest doesn't resolve nor relocate
+ * anything: it extracts the jars bundled in the plugin file under
+ * {@value #BUNDLE_DIRECTORY}, or downloads them from the repositories of the
+ * manifest, which host the prepared jars at the same relative paths.
+ * <p>
+ * Manifests are written by the {@code libby-maven-plugin}.
+ *
+ * @see LibraryManager#loadFromManifest(LibraryManifest)
+ */
+public class LibraryManifest {
+    /**
+     * Name of the manifest resource in the plugin file
+     */
+    public static final String RESOURCE = "libby-manifest.json";
+
+    /**
+     * Directory of the prepared jars bundled in the plugin file
+     */
+    public static final String BUNDLE_DIRECTORY = "libby/";
+
+    /**
+     * Version of the manifest format
+     */
+    private static final int VERSION = 0;
+
+    /**
+     * URLs of the repositories hosting the prepared jars
+     */
+    private final List<String> repositories;
+
+    /**
+     * Prepared artifacts, in load order
+     */
+    private final List<Artifact> artifacts;
+
+    /**
+     * Creates a new library manifest.
+     *
+     * @param repositories URLs of the repositories hosting the prepared jars
+     * @param artifacts    prepared artifacts, in load order
+     */
+    public LibraryManifest(Collection<String> repositories, Collection<Artifact> artifacts) {
+        List<String> urls = new ArrayList<>();
+        for (String repository : requireNonNull(repositories, "repositories")) {
+            urls.add(requireNonNull(repository, "repository").endsWith("/") ? repository : repository + '/');
+        }
+        this.repositories = Collections.unmodifiableList(urls);
+        this.artifacts = Collections.unmodifiableList(new ArrayList<>(requireNonNull(artifacts, "artifacts")));
+    }
+
+    /**
+     * Gets the URLs of the repositories hosting the prepared jars.
+     *
+     * @return repository URLs, ending with a slash
+     */
+    public List<String> getRepositories() {
+        return repositories;
+    }
+
+    /**
+     * Gets the prepared artifacts.
+     *
+     * @return prepared artifacts, in load order
+     */
+    public List<Artifact> getArtifacts() {
+        return artifacts;
+    }
+
+    /**
+     * Reads a manifest.
+     *
+     * @param in the manifest stream
+     * @return read manifest
+     * @throws IOException if the manifest couldn't be read, is corrupted or
+     *                     has an unsupported version
+     */
+    public static LibraryManifest read(InputStream in) throws IOException {
+        JsonObject root;
+        try {
+            root = JsonParser.object().from(requireNonNull(in, "in"));
+        } catch (JsonParserException e) {
+            throw new IOException("Corrupted library manifest", e);
+        }
+
+        int version = root.getInt("version", -1);
+        if (version != VERSION) {
+            throw new IOException("The library manifest is version " + version + " but this version of libby only supports version " + VERSION);
+        }
+
+        List<String> repositories = new ArrayList<>();
+        JsonArray repositoryArray = root.getArray("repositories");
+        if (repositoryArray != null) {
+            for (int i = 0; i < repositoryArray.size(); i++) {
+                repositories.add(repositoryArray.getString(i));
+            }
+        }
+
+        List<Artifact> artifacts = new ArrayList<>();
+        JsonArray artifactArray = root.getArray("artifacts");
+        if (artifactArray != null) {
+            for (int i = 0; i < artifactArray.size(); i++) {
+                JsonObject artifact = artifactArray.getObject(i);
+                String checksum = artifact.getString("sha256");
+                if (checksum == null) {
+                    throw new IOException("Missing checksum of prepared artifact " + artifact.getString("path"));
+                }
+                artifacts.add(new Artifact(
+                    artifact.getString("id"),
+                    artifact.getString("groupId"),
+                    artifact.getString("artifactId"),
+                    artifact.getString("version"),
+                    artifact.getString("classifier"),
+                    artifact.getBoolean("isolatedLoad", false),
+                    Base64.getDecoder().decode(checksum),
+                    artifact.getString("path")
+                ));
+            }
+        }
+        return new LibraryManifest(repositories, artifacts);
+    }
+
+    /**
+     * Writes this manifest.
+     *
+     * @param out the manifest stream
+     * @throws IOException if the manifest couldn't be written
+     */
+    public void write(OutputStream out) throws IOException {
+        JsonArray repositoryArray = new JsonArray();
+        repositoryArray.addAll(repositories);
+
+        JsonArray artifactArray = new JsonArray();
+        for (Artifact artifact : artifacts) {
+            JsonObject object = new JsonObject();
+            if (artifact.isIsolatedLoad()) {
+                object.put("id", artifact.getId());
+                object.put("isolatedLoad", true);
+            }
+            object.put("groupId", artifact.getGroupId());
+            object.put("artifactId", artifact.getArtifactId());
+            object.put("version", artifact.getVersion());
+            if (artifact.getClassifier() != null) {
+                object.put("classifier", artifact.getClassifier());
+            }
+            object.put("sha256", Base64.getEncoder().encodeToString(artifact.getChecksum()));
+            object.put("path", artifact.getPath());
+            artifactArray.add(object);
+        }
+
+        JsonObject root = new JsonObject();
+        root.put("version", VERSION);
+        root.put("repositories", repositoryArray);
+        root.put("artifacts", artifactArray);
+
+        JsonWriter.indent("    ").on(requireNonNull(out, "out")).value(root).done();
+    }
+
+    /**
+     * A prepared artifact, relocated when the plugin was built.
+     */
+    public static class Artifact {
+        /**
+         * ID of the isolated class loader of the artifact
+         */
+        private final String id;
+
+        /**
+         * Maven group ID
+         */
+        private final String groupId;
+
+        /**
+         * Maven artifact ID
+         */
+        private final String artifactId;
+
+        /**
+         * Artifact version
+         */
+        private final String version;
+
+        /**
+         * Artifact classifier
+         */
+        private final String classifier;
+
+        /**
+         * Isolated load for this artifact
+         */
+        private final boolean isolatedLoad;
+
+        /**
+         * Binary SHA-256 checksum of the prepared jar
+         */
+        private final byte[] checksum;
+
+        /**
+         * Path of the prepared jar, relative to the save directory, the bundle
+         * directory and the repositories of the manifest
+         */
+        private final String path;
+
+        /**
+         * Creates a new prepared artifact.
+         *
+         * @param id           isolated class loader ID or null
+         * @param groupId      Maven group ID
+         * @param artifactId   Maven artifact ID
+         * @param version      artifact version
+         * @param classifier   artifact classifier or null
+         * @param isolatedLoad isolated load for this artifact
+         * @param checksum     binary SHA-256 checksum of the prepared jar
+         * @param path         relative path of the prepared jar
+         */
+        public Artifact(String id, String groupId, String artifactId, String version, String classifier, boolean isolatedLoad, byte[] checksum, String path) {
+            this.id = id;
+            this.groupId = requireNonNull(groupId, "groupId");
+            this.artifactId = requireNonNull(artifactId, "artifactId");
+            this.version = requireNonNull(version, "version");
+            this.classifier = classifier;
+            this.isolatedLoad = isolatedLoad;
+            this.checksum = requireNonNull(checksum, "checksum");
+            this.path = requireNonNull(path, "path");
+        }
+
+        /**
+         * Gets the ID of the isolated class loader of the artifact.
+         *
+         * @return isolated class loader ID or null
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Gets the Maven group ID.
+         *
+         * @return Maven group ID
+         */
+        public String getGroupId() {
+            return groupId;
+        }
+
+        /**
+         * Gets the Maven artifact ID.
+         *
+         * @return Maven artifact ID
+         */
+        public String getArtifactId() {
+            return artifactId;
+        }
+
+        /**
+         * Gets the artifact version.
+         *
+         * @return artifact version
+         */
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * Gets the artifact classifier.
+         *
+         * @return artifact classifier or null
+         */
+        public String getClassifier() {
+            return classifier;
+        }
+
+        /**
+         * Gets whether the artifact is loaded in an isolated class loader.
+         *
+         * @return true if the artifact is loaded in an isolated class loader, false otherwise
+         */
+        public boolean isIsolatedLoad() {
+            return isolatedLoad;
+        }
+
+        /**
+         * Gets the binary SHA-256 checksum of the prepared jar.
+         *
+         * @return binary SHA-256 checksum
+         */
+        public byte[] getChecksum() {
+            return checksum;
+        }
+
+        /**
+         * Gets the path of the prepared jar, relative to the save directory,
+         * the bundle directory and the repositories of the manifest.
+         *
+         * @return relative path of the prepared jar
+         */
+        public String getPath() {
+            return path;
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package net.byteflux.libby;
+
+import com.grack.nanojson.JsonArray;
+import com.grack.nanojson.JsonObject;
+import com.grack.nanojson.JsonParser;
+import com.grack.nanojson.JsonParserException;
+import com.grack.nanojson.JsonWriter;
+import net.byteflux.libby.relocation.Relocation;
+import net.byteflux.libby.transitive.ExcludedDependency;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A file recording how the libraries loaded by a {@link LibraryManager} were
+ * resolved, so that later starts can load them without any network access
+ * and without resolving transitive dependencies again.
+ * <p>
+ * Every entry is keyed by a fingerprint of the declared library and of the
+ * repositories it's resolved from, and lists the resolved artifacts of the
+ * library and of its transitive dependencies with their download URL,
+ * SHA-256 checksum and local paths. Changing the declaration of a library
+ * changes its fingerprint, which invalidates its entry. Entries which weren't
+ * used since the lockfile was loaded are dropped when it's saved.
+ *
+ * @see LibraryManager#setLockfileEnabled(boolean)
+ */
+public class Lockfile {
+    /**
+     * Version of the lockfile format
+     */
+    private static final int VERSION = 0;
+
+    /**
+     * Path of the lockfile
+     */
+    private final Path file;
+
+    /**
+     * Entries read from the lockfile, by fingerprint
+     */
+    private final Map<String, List<Artifact>> loaded = new HashMap<>();
+
+    /**
+     * Entries used or added since the lockfile was loaded, by fingerprint
+     */
+    private final Map<String, List<Artifact>> used = new LinkedHashMap<>();
+
+    /**
+     * Creates a new lockfile.
+     *
+     * @param file path of the lockfile
+     */
+    public Lockfile(Path file) {
+        this.file = requireNonNull(file, "file");
+    }
+
+    /**
+     * Gets the path of the lockfile.
+     *
+     * @return lockfile path
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Reads the entries of the lockfile, if it exists.
+     *
+     * @throws IOException if the lockfile couldn't be read or is corrupted
+     */
+    public synchronized void load() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        JsonObject root;
+        try (InputStream in = Files.newInputStream(file)) {
+            root = JsonParser.object().from(in);
+        } catch (JsonParserException e) {
+            throw new IOException("Corrupted lockfile " + file, e);
+        }
+
+        // A lockfile of another version or without libraries is ignored, its libraries are resolved again
+        JsonObject libraries = root.getObject("libraries");
+        if (root.getInt("version", -1) != VERSION || libraries == null) {
+            return;
+        }
+
+        read:
+        for (String fingerprint : libraries.keySet()) {
+            JsonArray artifacts = libraries.getArray(fingerprint);
+            if (artifacts == null) {
+                continue;
+            }
+
+            List<Artifact> parsed = new ArrayList<>(artifacts.size());
+            for (int i = 0; i < artifacts.size(); i++) {
+                JsonObject artifact = artifacts.getObject(i);
+                if (artifact == null || artifact.getString("groupId") == null || artifact.getString("artifactId") == null
+                    || artifact.getString("version") == null || artifact.getString("sha256") == null || artifact.getString("path") == null) {
+                    // A malformed entry is dropped, its library is resolved again
+                    continue read;
+                }
+
+                byte[] checksum;
+                try {
+                    checksum = Base64.getDecoder().decode(artifact.getString("sha256"));
+                } catch (IllegalArgumentException e) {
+                    // So is an entry with a malformed checksum
+                    continue read;
+                }
+
+                parsed.add(new Artifact(
+                    artifact.getString("groupId"),
+                    artifact.getString("artifactId"),
+                    artifact.getString("version"),
+                    artifact.getString("classifier"),
+                    artifact.getString("url"),
+                    checksum,
+                    artifact.getString("path"),
+                    artifact.getString("relocatedPath")
+                ));
+            }
+            loaded.put(fingerprint, Collections.unmodifiableList(parsed));
+        }
+    }
+
+    /**
+     * Gets the resolved artifacts of a library and marks its entry as used.
+     *
+     * @param fingerprint the fingerprint of the library
+     * @return the artifacts of the library's transitive dependencies followed
+     * by the artifact of the library itself, or null if the library isn't locked
+     * @see #fingerprint(Library, Collection)
+     */
+    public synchronized List<Artifact> get(String fingerprint) {
+        requireNonNull(fingerprint, "fingerprint");
+
+        List<Artifact> artifacts = used.get(fingerprint);
+        if (artifacts == null) {
+            artifacts = loaded.get(fingerprint);
+            if (artifacts != null) {
+                used.put(fingerprint, artifacts);
+            }
+        }
+        return artifacts;
+    }
+
+    /**
+     * Locks the resolved artifacts of a library.
+     *
+     * @param fingerprint the fingerprint of the library
+     * @param artifacts   the artifacts of the library's transitive dependencies
+     *                    followed by the artifact of the library itself
+     * @see #fingerprint(Library, Collection)
+     */
+    public synchronized void put(String fingerprint, List<Artifact> artifacts) {
+        used.put(requireNonNull(fingerprint, "fingerprint"), Collections.unmodifiableList(new ArrayList<>(requireNonNull(artifacts, "artifacts"))));
+    }
+
+    /**
+     * Writes the used entries to the lockfile.
+     *
+     * @throws IOException if the lockfile couldn't be written
+     */
+    public synchronized void save() throws IOException {
+        JsonObject libraries = new JsonObject();
+        for (Map.Entry<String, List<Artifact>> entry : used.entrySet()) {
+            JsonArray artifacts = new JsonArray();
+            for (Artifact artifact : entry.getValue()) {
+                JsonObject object = new JsonObject();
+                object.put("groupId", artifact.getGroupId());
+                object.put("artifactId", artifact.getArtifactId());
+                object.put("version", artifact.getVersion());
+                if (artifact.getClassifier() != null) {
+                    object.put("classifier", artifact.getClassifier());
+                }
+                if (artifact.getUrl() != null) {
+                    object.put("url", artifact.getUrl());
+                }
+                object.put("sha256", Base64.getEncoder().encodeToString(artifact.getChecksum()));
+                object.put("path", artifact.getPath());
+                if (artifact.getRelocatedPath() != null) {
+                    object.put("relocatedPath", artifact.getRelocatedPath());
+                }
+                artifacts.add(object);
+            }
+            libraries.put(entry.getKey(), artifacts);
+        }
+
+        JsonObject root = new JsonObject();
+        root.put("version", VERSION);
+        root.put("libraries", libraries);
+
+        // Write to a temporary file first, so that an interrupted write doesn't corrupt the lockfile
+        // The temporary file name is unique, since the file may be shared with other processes
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                JsonWriter.indent("    ").on(out).value(root).done();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Computes the fingerprint of a library declaration. The fingerprint
+     * changes whenever anything affecting the resolution or the relocation
+     * of the library changes.
+     *
+     * @param library      the declared library
+     * @param repositories the repositories of the library manager
+     * @return hex encoded fingerprint
+     */
+    public static String fingerprint(Library library, Collection<String> repositories) {
+        requireNonNull(library, "library");
+        requireNonNull(repositories, "repositories");
+
+        StringBuilder declaration = new StringBuilder();
+        declaration.append(library.getGroupId()).append(':')
+                   .append(library.getArtifactId()).append(':')
+                   .append(library.getVersion()).append(':')
+                   .append(library.getClassifier()).append('\n');
+        if (library.hasChecksum()) {
+            declaration.append("checksum ").append(Base64.getEncoder().encodeToString(library.getChecksum())).append('\n');
+        }
+        for (String url : library.getUrls()) {
+            declaration.append("url ").append(url).append('\n');
+        }
+        for (String repository : library.getRepositories()) {
+            declaration.append("library-repository ").append(repository).append('\n');
+        }
+        for (String repository : repositories) {
+            declaration.append("repository ").append(repository).append('\n');
+        }
+        for (Relocation relocation : library.getRelocations()) {
+            declaration.append("relocation ").append(relocation.getPattern()).append(' ').append(relocation.getRelocatedPattern())
+                       .append(' ').append(relocation.getIncludes()).append(' ').append(relocation.getExcludes()).append('\n');
+        }
+        declaration.append("transitive ").append(library.resolveTransitiveDependencies()).append('\n');
+        for (ExcludedDependency excludedDependency : library.getExcludedTransitiveDependencies()) {
+            declaration.append("exclude ").append(excludedDependency.getGroupId()).append(':').append(excludedDependency.getArtifactId()).append('\n');
+        }
+
+        return Checksums.toHex(Checksums.sha256(declaration.toString()));
+    }
+
+    /**
+     * A resolved artifact recorded in a lockfile.
+     */
+    public static class Artifact {
+        /**
+         * Maven group ID
+         */
+        private final String groupId;
+
+        /**
+         * Maven artifact ID
+         */
+        private final String artifactId;
+
+        /**
+         * Artifact version
+         */
+        private final String version;
+
+        /**
+         * Artifact classifier
+         */
+        private final String classifier;
+
+        /**
+         * URL the artifact was downloaded from
+         */
+        private final String url;
+
+        /**
+         * Binary SHA-256 checksum of the artifact
+         */
+        private final byte[] checksum;
+
+        /**
+         * Path of the artifact, relative to the save directory
+         */
+        private final String path;
+
+        /**
+         * Path of the relocated artifact, relative to the save directory
+         */
+        private final String relocatedPath;
+
+        /**
+         * Creates a new locked artifact.
+         *
+         * @param groupId       Maven group ID
+         * @param artifactId    Maven artifact ID
+         * @param version       artifact version
+         * @param classifier    artifact classifier or null
+         * @param url           download URL or null if unknown
+         * @param checksum      binary SHA-256 checksum
+         * @param path          relative path of the artifact
+         * @param relocatedPath relative path of the relocated artifact or null
+         */
+        public Artifact(String groupId, String artifactId, String version, String classifier, String url, byte[] checksum, String path, String relocatedPath) {
+            this.groupId = requireNonNull(groupId, "groupId");
+            this.artifactId = requireNonNull(artifactId, "artifactId");
+            this.version = requireNonNull(version, "version");
+            this.classifier = classifier;
+            this.url = url;
+            this.checksum = requireNonNull(checksum, "checksum").clone();
+            this.path = requireNonNull(path, "path");
+            this.relocatedPath = relocatedPath;
+        }
+
+        /**
+         * Gets the Maven group ID.
+         *
+         * @return Maven group ID
+         */
+        public String getGroupId() {
+            return groupId;
+        }
+
+        /**
+         * Gets the Maven artifact ID.
+         *
+         * @return Maven artifact ID
+         */
+        public String getArtifactId() {
+            return artifactId;
+        }
+
+        /**
+         * Gets the artifact version.
+         *
+         * @return artifact version
+         */
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * Gets the artifact classifier.
+         *
+         * @return artifact classifier or null
+         */
+        public String getClassifier() {
+            return classifier;
+        }
+
+        /**
+         * Gets the URL the artifact was downloaded from.
+         *
+         * @return download URL or null if unknown
+         */
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * Gets the binary SHA-256 checksum of the artifact.
+         *
+         * @return binary SHA-256 checksum
+         */
+        public byte[] getChecksum() {
+            return checksum.clone();
+        }
+
+        /**
+         * Gets the path of the artifact, relative to the save directory.
+         *
+         * @return relative path of the artifact
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Gets the path of the relocated artifact, relative to the save directory.
+         *
+         * @return relative path of the relocated artifact or null if it isn't relocated
+         */
+        public String getRelocatedPath() {
+            return relocatedPath;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package net.byteflux.libby;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A bounded cache of failed lookups, used by a {@link LibraryManager} to
+ * avoid requesting again files that weren't found and hosts that couldn't be
+ * reached.
+ * <p>
+ * Entries are keyed by full URL for files that weren't found and by host for
+ * hosts that couldn't be reached, and expire after a configurable time to
+ * live. When the cache is full, the least recently used entries are evicted.
+ *
+ * @see LibraryManager#getNegativeCache()
+ */
+public class NegativeCache {
+    /**
+     * Default maximum number of entries
+     */
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    /**
+     * Default time to live of entries, in milliseconds
+     */
+    public static final long DEFAULT_TTL = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Expiration times of the files that weren't found, by URL
+     */
+    private final Map<String, Long> notFound;
+
+    /**
+     * Expiration times of the hosts that couldn't be reached, by host
+     */
+    private final Map<String, Long> hostsDown;
+
+    /**
+     * Time to live of new entries, in milliseconds
+     */
+    private volatile long ttl = DEFAULT_TTL;
+
+    /**
+     * Creates a new negative cache with the default maximum size.
+     */
+    public NegativeCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates a new negative cache.
+     *
+     * @param maxSize maximum number of entries for each kind of failure
+     */
+    public NegativeCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        notFound = newLruMap(maxSize);
+        hostsDown = newLruMap(maxSize);
+    }
+
+    /**
+     * Gets the time to live of new entries.
+     *
+     * @return time to live in milliseconds
+     */
+    public long getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Sets the time to live of new entries.
+     *
+     * @param ttl time to live in milliseconds, 0 to disable the cache
+     */
+    public void setTtl(long ttl) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("ttl cannot be negative");
+        }
+        this.ttl = ttl;
+    }
+
+    /**
+     * Remembers that the file at the provided URL wasn't found.
+     *
+     * @param url the URL of the file
+     */
+    public void markNotFound(String url) {
+        put(notFound, requireNonNull(url, "url"));
+    }
+
+    /**
+     * Remembers that the host of the provided URL couldn't be reached.
+     *
+     * @param url a URL of the host
+     */
+    public void markHostDown(String url) {
+        String host = getHost(requireNonNull(url, "url"));
+        if (host != null) {
+            put(hostsDown, host);
+        }
+    }
+
+    /**
+     * Gets whether the file at the provided URL is known not to exist.
+     *
+     * @param url the URL of the file
+     * @return true if the file wasn't found recently, false otherwise
+     */
+    public boolean isNotFound(String url) {
+        return contains(notFound, requireNonNull(url, "url"));
+    }
+
+    /**
+     * Gets whether the host of the provided URL is known to be unreachable.
+     *
+     * @param url a URL of the host
+     * @return true if the host couldn't be reached recently, false otherwise
+     */
+    public boolean isHostDown(String url) {
+        String host = getHost(requireNonNull(url, "url"));
+        return host != null && contains(hostsDown, host);
+    }
+
+    /**
+     * Gets whether a request to the provided URL is known to fail, because
+     * either the file or its host couldn't be found.
+     *
+     * @param url the URL to check
+     * @return true if a request to the URL would fail, false otherwise
+     */
+    public boolean isFailing(String url) {
+        return isHostDown(url) || isNotFound(url);
+    }
+
+    /**
+     * Forgets the failures of the provided URL and of its host.
+     *
+     * @param url the URL to forget
+     */
+    public void invalidate(String url) {
+        requireNonNull(url, "url");
+        synchronized (notFound) {
+            notFound.remove(url);
+        }
+
+        String host = getHost(url);
+        if (host != null) {
+            synchronized (hostsDown) {
+                hostsDown.remove(host);
+            }
+        }
+    }
+
+    /**
+     * Forgets every failure.
+     */
+    public void clear() {
+        synchronized (notFound) {
+            notFound.clear();
+        }
+        synchronized (hostsDown) {
+            hostsDown.clear();
+        }
+    }
+
+    /**
+     * Adds an entry expiring after the time to live.
+     *
+     * @param map the map to add the entry to
+     * @param key the entry key
+     */
+    private void put(Map<String, Long> map, String key) {
+        long ttl = this.ttl;
+        if (ttl == 0) {
+            return;
+        }
+
+        synchronized (map) {
+            map.put(key, System.currentTimeMillis() + ttl);
+        }
+    }
+
+    /**
+     * Checks whether an entry is present and not expired, removing it if expired.
+     *
+     * @param map the map to check
+     * @param key the entry key
+     * @return true if the entry is present and not expired, false otherwise
+     */
+    private static boolean contains(Map<String, Long> map, String key) {
+        synchronized (map) {
+            Long expiration = map.get(key);
+            if (expiration == null) {
+                return false;
+            }
+
+            if (expiration <= System.currentTimeMillis()) {
+                map.remove(key);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Gets the host of a URL, including protocol and port.
+     *
+     * @param url the URL
+     * @return the host of the URL or null if it doesn't have one
+     */
+    private static String getHost(String url) {
+        try {
+            URL parsed = new URL(url);
+            if (parsed.getHost() == null || parsed.getHost().isEmpty()) {
+                return null;
+            }
+            return parsed.getProtocol() + "://" + parsed.getHost() + ':' + (parsed.getPort() != -1 ? parsed.getPort() : parsed.getDefaultPort());
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates a new map evicting its least recently accessed entries.
+     *
+     * @param maxSize maximum number of entries
+     * @return new map
+     */
+    private static Map<String, Long> newLruMap(int maxSize) {
+        return new LinkedHashMap<String, Long>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+}
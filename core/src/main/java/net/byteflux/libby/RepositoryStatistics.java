@@ -0,0 +1,403 @@
+package net.byteflux.libby;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps track of how well each repository answered the requests made by a
+ * {@link LibraryManager}, so that repositories can be ordered by their
+ * expected cost and unreachable repositories can be skipped.
+ * <p>
+ * The statistics of every repository are the number of requests made to it,
+ * how many of them were successful or answered with "not found", and the
+ * total connect and transfer time. They decay exponentially with every new
+ * request, so recent requests weigh more than old ones and a repository that
+ * was slow or failing a long time ago isn't penalized forever.
+ *
+ * @see LibraryManager#getRepositoryStatistics()
+ */
+public class RepositoryStatistics {
+    /**
+     * Factor applied to the statistics of a repository before recording a
+     * request, so that the weight of a request halves after about 14 newer
+     * requests to the same repository
+     */
+    private static final double DECAY = 0.95;
+
+    /**
+     * Maximum weight of the requests of a repository, reached when many
+     * requests have been recorded since the weight of older ones decays
+     */
+    private static final double MAX_REQUESTS = 1 / (1 - DECAY);
+
+    /**
+     * Statistics of every known repository, by repository URL
+     */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a repository, so that the URLs starting with it are
+     * attributed to it.
+     *
+     * @param repository the repository URL
+     */
+    public void register(String repository) {
+        entries.computeIfAbsent(requireNonNull(repository, "repository"), r -> new Entry());
+    }
+
+    /**
+     * Finds the registered repository the provided URL belongs to.
+     *
+     * @param url the URL of a file in a repository
+     * @return the repository URL or null if the URL doesn't belong to any registered repository
+     */
+    public String findRepository(String url) {
+        requireNonNull(url, "url");
+
+        String found = null;
+        for (String repository : entries.keySet()) {
+            if (url.startsWith(repository) && (found == null || repository.length() > found.length())) {
+                found = repository;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Records a successful request.
+     *
+     * @param url            the requested URL
+     * @param connectMillis  time spent until the response started, in milliseconds
+     * @param transferMillis time spent reading the response, in milliseconds
+     * @param bytes          number of bytes read
+     */
+    public void recordSuccess(String url, long connectMillis, long transferMillis, long bytes) {
+        Entry entry = getEntry(url);
+        if (entry != null) {
+            synchronized (entry) {
+                entry.decay();
+                entry.requests++;
+                entry.successes++;
+                entry.connectMillis += connectMillis;
+                entry.transferMillis += transferMillis;
+                entry.bytes += bytes;
+                entry.unreachable = false;
+            }
+        }
+    }
+
+    /**
+     * Records a request answered with "not found".
+     *
+     * @param url           the requested URL
+     * @param connectMillis time spent until the response started, in milliseconds
+     */
+    public void recordNotFound(String url, long connectMillis) {
+        Entry entry = getEntry(url);
+        if (entry != null) {
+            synchronized (entry) {
+                entry.decay();
+                entry.requests++;
+                entry.notFound++;
+                entry.connectMillis += connectMillis;
+                entry.unreachable = false;
+            }
+        }
+    }
+
+    /**
+     * Records a request that couldn't reach the repository, because of an
+     * unknown host, a refused connection or a timeout. The repository is
+     * considered unreachable until it's successfully reached again or the
+     * statistics are cleared.
+     *
+     * @param url the requested URL
+     */
+    public void recordUnreachable(String url) {
+        Entry entry = getEntry(url);
+        if (entry != null) {
+            synchronized (entry) {
+                entry.decay();
+                entry.requests++;
+                entry.unreachable = true;
+            }
+        }
+    }
+
+    /**
+     * Gets whether the repository couldn't be reached by the last request.
+     *
+     * @param repository the repository URL
+     * @return true if the repository is unreachable, false otherwise
+     */
+    public boolean isUnreachable(String repository) {
+        Entry entry = entries.get(requireNonNull(repository, "repository"));
+        return entry != null && entry.unreachable;
+    }
+
+    /**
+     * Gets the fraction of requests to the repository that were successful.
+     *
+     * @param repository the repository URL
+     * @return success rate between 0 and 1, or 0 if no request was made
+     */
+    public double getSuccessRate(String repository) {
+        Entry entry = entries.get(requireNonNull(repository, "repository"));
+        if (entry == null) {
+            return 0;
+        }
+
+        synchronized (entry) {
+            return entry.requests == 0 ? 0 : entry.successes / entry.requests;
+        }
+    }
+
+    /**
+     * Gets the fraction of requests to the repository that were answered with
+     * "not found".
+     *
+     * @param repository the repository URL
+     * @return not found rate between 0 and 1, or 0 if no request was made
+     */
+    public double getNotFoundRate(String repository) {
+        Entry entry = entries.get(requireNonNull(repository, "repository"));
+        if (entry == null) {
+            return 0;
+        }
+
+        synchronized (entry) {
+            return entry.requests == 0 ? 0 : entry.notFound / entry.requests;
+        }
+    }
+
+    /**
+     * Gets the average time until the repository started answering.
+     *
+     * @param repository the repository URL
+     * @return average connect time in milliseconds, or -1 if the repository never answered
+     */
+    public double getAverageConnectMillis(String repository) {
+        Entry entry = entries.get(requireNonNull(repository, "repository"));
+        if (entry == null) {
+            return -1;
+        }
+
+        synchronized (entry) {
+            double answered = entry.successes + entry.notFound;
+            return answered == 0 ? -1 : entry.connectMillis / answered;
+        }
+    }
+
+    /**
+     * Gets the average transfer rate of the repository.
+     *
+     * @param repository the repository URL
+     * @return average transfer rate in bytes per millisecond, or -1 if nothing was transferred
+     */
+    public double getAverageTransferRate(String repository) {
+        Entry entry = entries.get(requireNonNull(repository, "repository"));
+        if (entry == null) {
+            return -1;
+        }
+
+        synchronized (entry) {
+            return entry.bytes == 0 ? -1 : entry.bytes / Math.max(1, entry.transferMillis);
+        }
+    }
+
+    /**
+     * Sorts the provided repositories by their expected cost, cheapest first.
+     * <p>
+     * The expected cost of a repository is its average connect time divided
+     * by its smoothed success rate, so fast repositories that usually have
+     * the requested artifacts come first. Repositories with the same cost keep
+     * their original order.
+     *
+     * @param repositories the repositories to sort
+     * @return sorted repositories
+     */
+    public List<String> sort(Collection<String> repositories) {
+        List<String> sorted = new ArrayList<>(requireNonNull(repositories, "repositories"));
+
+        // Repositories without any answer are expected to be as fast as the known ones
+        double totalMillis = 0;
+        int known = 0;
+        for (String repository : sorted) {
+            double millis = getAverageConnectMillis(repository);
+            if (millis >= 0) {
+                totalMillis += millis;
+                known++;
+            }
+        }
+        double defaultMillis = known == 0 ? 0 : totalMillis / known;
+
+        Map<String, Double> costs = new HashMap<>();
+        for (String repository : sorted) {
+            costs.put(repository, getCost(repository, defaultMillis));
+        }
+
+        sorted.sort(Comparator.comparingDouble(costs::get));
+        return sorted;
+    }
+
+    /**
+     * Clears all the statistics.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Loads the statistics from a file, merging them with the current ones.
+     * The loaded statistics of a repository are scaled down to the maximum
+     * weight of its requests, so that statistics saved as lifetime totals
+     * don't outweigh new requests.
+     *
+     * @param file the file to read
+     * @throws IOException if the file couldn't be read
+     */
+    public void load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(requireNonNull(file, "file"))) {
+            properties.load(in);
+        }
+
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.endsWith(".url")) {
+                continue;
+            }
+
+            String prefix = key.substring(0, key.length() - "url".length());
+            Entry entry = entries.computeIfAbsent(properties.getProperty(key), r -> new Entry());
+            try {
+                double requests = Double.parseDouble(properties.getProperty(prefix + "requests", "0"));
+                double scale = requests > MAX_REQUESTS ? MAX_REQUESTS / requests : 1;
+                synchronized (entry) {
+                    entry.requests += requests * scale;
+                    entry.successes += Double.parseDouble(properties.getProperty(prefix + "successes", "0")) * scale;
+                    entry.notFound += Double.parseDouble(properties.getProperty(prefix + "not-found", "0")) * scale;
+                    entry.connectMillis += Double.parseDouble(properties.getProperty(prefix + "connect-millis", "0")) * scale;
+                    entry.transferMillis += Double.parseDouble(properties.getProperty(prefix + "transfer-millis", "0")) * scale;
+                    entry.bytes += Double.parseDouble(properties.getProperty(prefix + "bytes", "0")) * scale;
+                }
+            } catch (NumberFormatException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Saves the statistics to a file. Whether a repository is unreachable
+     * isn't saved, since it could be reachable again at the next start.
+     *
+     * @param file the file to write
+     * @throws IOException if the file couldn't be written
+     */
+    public void save(Path file) throws IOException {
+        Properties properties = new Properties();
+
+        int i = 0;
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            String prefix = "repository." + i++ + '.';
+            Entry entry = e.getValue();
+            synchronized (entry) {
+                properties.setProperty(prefix + "url", e.getKey());
+                properties.setProperty(prefix + "requests", Double.toString(entry.requests));
+                properties.setProperty(prefix + "successes", Double.toString(entry.successes));
+                properties.setProperty(prefix + "not-found", Double.toString(entry.notFound));
+                properties.setProperty(prefix + "connect-millis", Double.toString(entry.connectMillis));
+                properties.setProperty(prefix + "transfer-millis", Double.toString(entry.transferMillis));
+                properties.setProperty(prefix + "bytes", Double.toString(entry.bytes));
+            }
+        }
+
+        // Write to a temporary file first, so that an interrupted write doesn't corrupt the statistics
+        // The temporary file name is unique, since the file may be shared with other processes
+        Path directory = requireNonNull(file, "file").toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, "Libby repository statistics");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Gets the statistics of the repository the provided URL belongs to.
+     *
+     * @param url the requested URL
+     * @return the repository statistics or null if the URL doesn't belong to any registered repository
+     */
+    private Entry getEntry(String url) {
+        String repository = findRepository(url);
+        return repository != null ? entries.get(repository) : null;
+    }
+
+    /**
+     * Gets the expected cost of requesting a file from the repository.
+     *
+     * @param repository    the repository URL
+     * @param defaultMillis connect time to use if the repository never answered
+     * @return the expected cost
+     */
+    private double getCost(String repository, double defaultMillis) {
+        Entry entry = entries.get(repository);
+        if (entry == null) {
+            return (defaultMillis + 1) / 0.5;
+        }
+
+        synchronized (entry) {
+            if (entry.unreachable) {
+                return Double.MAX_VALUE;
+            }
+
+            double answered = entry.successes + entry.notFound;
+            double millis = answered == 0 ? defaultMillis : entry.connectMillis / answered;
+            // Laplace smoothing, a repository without requests has a success rate of 0.5
+            double successRate = (entry.successes + 1D) / (entry.requests + 2D);
+            return (millis + 1) / successRate;
+        }
+    }
+
+    /**
+     * Mutable statistics of a single repository.
+     */
+    private static class Entry {
+        private double requests;
+        private double successes;
+        private double notFound;
+        private double connectMillis;
+        private double transferMillis;
+        private double bytes;
+        private volatile boolean unreachable;
+
+        /**
+         * Decays the statistics before a new request is recorded.
+         */
+        private void decay() {
+            requests *= DECAY;
+            successes *= DECAY;
+            notFound *= DECAY;
+            connectMillis *= DECAY;
+            transferMillis *= DECAY;
+            bytes *= DECAY;
+        }
+    }
+}
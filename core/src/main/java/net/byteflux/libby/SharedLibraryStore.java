@@ -0,0 +1,240 @@
+package net.byteflux.libby;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A content-addressable store of library jars shared by every
+ * {@link LibraryManager} using the same store directory, in the same JVM or
+ * in different processes on the same host.
+ * <p>
+ * Jars are stored once under {@code objects/}, named by their SHA-256
+ * checksum, and an index under {@code index/} maps the Maven path of every
+ * library to the checksum of its jar. The jars saved by a library manager are
+ * hard links to the stored jars, or symbolic links if hard links aren't
+ * supported, so a library used by many plugins is downloaded and stored only
+ * once. If neither kind of link can be created, jars are copied.
+ * <p>
+ * Snapshot libraries are never stored, since their jars can change.
+ *
+ * @see LibraryManager#setSharedLibraryStore(SharedLibraryStore)
+ */
+public class SharedLibraryStore {
+    /**
+     * System property overriding the directory of the default store
+     */
+    public static final String DIRECTORY_PROPERTY = "libby.store";
+
+    /**
+     * Directory of the store
+     */
+    private final Path directory;
+
+    /**
+     * Creates a new shared library store.
+     *
+     * @param directory the directory of the store
+     */
+    public SharedLibraryStore(Path directory) {
+        this.directory = requireNonNull(directory, "directory").toAbsolutePath();
+    }
+
+    /**
+     * Creates a store in the default directory, which is the value of the
+     * {@value #DIRECTORY_PROPERTY} system property if set, or
+     * {@code ~/.libby/store} otherwise.
+     *
+     * @return store in the default directory
+     */
+    public static SharedLibraryStore createDefault() {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory != null) {
+            return new SharedLibraryStore(Paths.get(directory));
+        }
+        return new SharedLibraryStore(Paths.get(System.getProperty("user.home"), ".libby", "store"));
+    }
+
+    /**
+     * Gets the directory of the store.
+     *
+     * @return store directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Finds the stored jar of a library.
+     *
+     * @param path     the Maven path of the library
+     * @param checksum the expected SHA-256 checksum of the jar, or null to
+     *                 look up the checksum in the index
+     * @return the stored jar, or null if it isn't stored
+     * @see Library#getPath()
+     */
+    public Path find(String path, byte[] checksum) {
+        requireNonNull(path, "path");
+
+        String hash;
+        if (checksum != null) {
+            hash = Checksums.toHex(checksum);
+        } else {
+            try {
+                hash = new String(Files.readAllBytes(getIndexFile(path)), StandardCharsets.US_ASCII).trim();
+            } catch (IOException e) {
+                return null;
+            }
+            if (hash.length() != 64) {
+                return null;
+            }
+        }
+
+        Path object = getObject(hash);
+        return Files.isRegularFile(object) ? object : null;
+    }
+
+    /**
+     * Adds a downloaded jar to the store and indexes it by the Maven path of
+     * its library. The jar is hard linked into the store if possible and
+     * copied otherwise.
+     *
+     * @param path the Maven path of the library
+     * @param file the downloaded jar
+     * @return the stored jar
+     * @throws IOException if the jar couldn't be stored
+     * @see Library#getPath()
+     */
+    public Path add(String path, Path file) throws IOException {
+        return add(path, file, Checksums.sha256(requireNonNull(file, "file")));
+    }
+
+    /**
+     * Adds a downloaded jar whose checksum is already known to the store and
+     * indexes it by the Maven path of its library, without reading the jar
+     * again. The jar is hard linked into the store if possible and copied
+     * otherwise.
+     *
+     * @param path     the Maven path of the library
+     * @param file     the downloaded jar
+     * @param checksum the SHA-256 checksum of the jar
+     * @return the stored jar
+     * @throws IOException if the jar couldn't be stored
+     * @see Library#getPath()
+     */
+    public Path add(String path, Path file, byte[] checksum) throws IOException {
+        requireNonNull(path, "path");
+        requireNonNull(file, "file");
+        requireNonNull(checksum, "checksum");
+
+        String hash = Checksums.toHex(checksum);
+        Path object = getObject(hash);
+        if (!Files.isRegularFile(object)) {
+            Files.createDirectories(object.getParent());
+            Path tmp = getTemporaryFile(object);
+            try {
+                try {
+                    Files.createLink(tmp, file);
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(file, tmp);
+                }
+                // Stores are shared between processes, the jar may have been stored by another one meanwhile
+                Files.move(tmp, object, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        Path indexFile = getIndexFile(path);
+        Files.createDirectories(indexFile.getParent());
+        Path tmp = getTemporaryFile(indexFile);
+        try {
+            Files.write(tmp, hash.getBytes(StandardCharsets.US_ASCII));
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return object;
+    }
+
+    /**
+     * Makes a file in the save directory of a library manager point to a
+     * stored jar, using a hard link, a symbolic link or a copy, in order of
+     * preference. An existing file is replaced atomically, so that it's
+     * never missing for other processes.
+     *
+     * @param object the stored jar
+     * @param file   the file to link
+     * @throws IOException if the file couldn't be linked nor copied
+     */
+    public void link(Path object, Path file) throws IOException {
+        requireNonNull(object, "object");
+        requireNonNull(file, "file");
+
+        if (Files.exists(file) && Files.isSameFile(object, file)) {
+            return;
+        }
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = getTemporaryFile(file);
+        try {
+            try {
+                Files.createLink(tmp, object);
+            } catch (IOException | UnsupportedOperationException e) {
+                try {
+                    Files.createSymbolicLink(tmp, object);
+                } catch (IOException | UnsupportedOperationException e2) {
+                    if (Files.isRegularFile(file)) {
+                        // Already a copy of the stored jar
+                        return;
+                    }
+                    Files.copy(object, tmp);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Gets the stored jar with the provided checksum.
+     *
+     * @param hash the hex encoded SHA-256 checksum of the jar
+     * @return stored jar path
+     */
+    private Path getObject(String hash) {
+        return directory.resolve("objects").resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    /**
+     * Gets the index file of a library, which contains the checksum of its jar.
+     *
+     * @param path the Maven path of the library
+     * @return index file path
+     */
+    private Path getIndexFile(String path) {
+        Path indexFile = directory.resolve("index").resolve(path + ".sha256").normalize();
+        if (!indexFile.startsWith(directory)) {
+            throw new IllegalArgumentException("Invalid library path: " + path);
+        }
+        return indexFile;
+    }
+
+    /**
+     * Gets a unique temporary file next to the provided file, so that
+     * concurrent writers never write to the same temporary file.
+     *
+     * @param file the file to write
+     * @return temporary file path
+     */
+    private static Path getTemporaryFile(Path file) {
+        return file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+    }
+}
@@ -0,0 +1,92 @@
+package net.byteflux.libby;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How often a {@link LibraryManager} checks the repositories for new builds
+ * of the snapshot libraries it already downloaded.
+ * <p>
+ * A check only downloads a snapshot jar again if the remote build changed,
+ * which is detected with the resolved snapshot version and with the HTTP
+ * validators of the previous download.
+ *
+ * @see LibraryManager#setSnapshotUpdatePolicy(SnapshotUpdatePolicy)
+ */
+public final class SnapshotUpdatePolicy {
+    /**
+     * Checks for new builds every time a snapshot library is loaded
+     */
+    public static final SnapshotUpdatePolicy ALWAYS = new SnapshotUpdatePolicy(0);
+
+    /**
+     * Never checks for new builds of downloaded snapshot libraries
+     */
+    public static final SnapshotUpdatePolicy NEVER = new SnapshotUpdatePolicy(Long.MAX_VALUE);
+
+    /**
+     * Minimum time between two checks, in milliseconds
+     */
+    private final long interval;
+
+    /**
+     * Creates a new snapshot update policy.
+     *
+     * @param interval minimum time between two checks, in milliseconds
+     */
+    private SnapshotUpdatePolicy(long interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Creates a policy checking for new builds at most once per interval.
+     *
+     * @param duration the interval duration
+     * @param unit     the interval unit
+     * @return new snapshot update policy
+     */
+    public static SnapshotUpdatePolicy interval(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("duration cannot be negative");
+        }
+        return new SnapshotUpdatePolicy(unit.toMillis(duration));
+    }
+
+    /**
+     * Gets the minimum time between two checks.
+     *
+     * @return interval in milliseconds, {@link Long#MAX_VALUE} if new builds are never checked
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Gets whether a snapshot library last checked at the provided time
+     * should be checked again.
+     *
+     * @param lastChecked time of the last check, in milliseconds since the epoch, or 0 if never checked
+     * @return true if the library should be checked, false otherwise
+     */
+    public boolean isUpdateDue(long lastChecked) {
+        if (interval == Long.MAX_VALUE) {
+            return false;
+        }
+        return System.currentTimeMillis() - lastChecked >= interval;
+    }
+
+    /**
+     * Gets a concise, human-readable string representation of this policy.
+     *
+     * @return string representation
+     */
+    @Override
+    public String toString() {
+        if (interval == 0) {
+            return "always";
+        }
+        if (interval == Long.MAX_VALUE) {
+            return "never";
+        }
+        return "interval:" + interval + "ms";
+    }
+}
@@ -6,7 +6,23 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
 import static java.util.Objects.requireNonNull;
 
@@ -14,12 +30,40 @@ import static java.util.Objects.requireNonNull;
  * This class loader is a simple child of {@code URLClassLoader} that uses
  * the JVM's Extensions Class Loader as the parent instead of the system class
  * loader to provide an unpolluted classpath.
+ * <p>
+ * Jars added with {@link #addPath(Path)} are indexed by package, so that a
+ * class or a resource is looked up in the jars containing its package only,
+ * and a class of a package no jar contains is reported missing without
+ * opening any jar. The package list of every jar is cached in an index file
+ * next to the jar. Lookups fall back to the linear search of
+ * {@code URLClassLoader} once anything which can't be indexed is added, like
+ * a directory or a URL.
  */
 public class IsolatedClassLoader extends URLClassLoader {
     static {
         ClassLoader.registerAsParallelCapable();
     }
 
+    /**
+     * Version of the index file format
+     */
+    private static final String INDEX_VERSION = "libby-index-0";
+
+    /**
+     * Indexed jars, by package in path form
+     */
+    private final Map<String, List<IndexedJar>> packages = new ConcurrentHashMap<>();
+
+    /**
+     * Indexed jars, in the order they were added
+     */
+    private final List<IndexedJar> jars = new ArrayList<>();
+
+    /**
+     * Whether every URL of this class loader is an indexed jar
+     */
+    private volatile boolean indexed;
+
     /**
      * Creates a new isolated class loader for the given URLs.
      *
@@ -27,29 +71,271 @@ public class IsolatedClassLoader extends URLClassLoader {
      */
     public IsolatedClassLoader(URL... urls) {
         super(requireNonNull(urls, "urls"), ClassLoader.getSystemClassLoader().getParent());
+        indexed = urls.length == 0;
     }
 
     /**
-     * Adds a URL to the classpath.
+     * Adds a URL to the classpath. URLs can't be indexed, so lookups fall
+     * back to a linear search of all the URLs afterwards.
      *
      * @param url the URL to add
      */
     @Override
     public void addURL(URL url) {
+        indexed = false;
         super.addURL(url);
     }
 
     /**
-     * Adds a path to the classpath.
+     * Adds a path to the classpath, indexing it if it's a jar.
      *
      * @param path the path to add
      */
     public void addPath(Path path) {
+        URL url;
         try {
-            addURL(requireNonNull(path, "path").toUri().toURL());
+            url = requireNonNull(path, "path").toUri().toURL();
         } catch (MalformedURLException e) {
             throw new IllegalArgumentException(e);
         }
+
+        IndexedJar jar = null;
+        if (Files.isRegularFile(path)) {
+            try {
+                jar = new IndexedJar(path, url);
+            } catch (IOException e) {
+                // Let the URLClassLoader report the broken jar when it's searched
+            }
+        }
+
+        synchronized (jars) {
+            if (jar == null || jar.hasClassPath) {
+                addURL(url);
+                return;
+            }
+
+            IndexedJar added = jar;
+            jars.add(added);
+            for (String packageName : added.packages) {
+                packages.compute(packageName, (name, list) -> {
+                    List<IndexedJar> updated = list != null ? new ArrayList<>(list) : new ArrayList<>(1);
+                    updated.add(added);
+                    return Collections.unmodifiableList(updated);
+                });
+            }
+            super.addURL(url);
+        }
+    }
+
+    /**
+     * Finds a class in the jars containing its package.
+     *
+     * @param name the binary name of the class
+     * @return the found class
+     * @throws ClassNotFoundException if no jar contains the class
+     */
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        if (!indexed) {
+            return super.findClass(name);
+        }
+
+        String path = name.replace('.', '/') + ".class";
+        for (IndexedJar jar : getJars(path)) {
+            if (jar.multiRelease) {
+                // The entry depends on the Java version, which URLClassLoader handles
+                return super.findClass(name);
+            }
+
+            try {
+                JarFile jarFile = jar.getJarFile();
+                JarEntry entry = jarFile.getJarEntry(path);
+                if (entry != null) {
+                    return defineClass(name, jar, jarFile, entry);
+                }
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+        throw new ClassNotFoundException(name);
+    }
+
+    /**
+     * Defines a class read from an indexed jar.
+     * <p>
+     * Packages are looked up with the deprecated {@link #getPackage(String)},
+     * since its replacement {@code getDefinedPackage(String)} isn't available
+     * on Java 8.
+     *
+     * @param name    the binary name of the class
+     * @param jar     the indexed jar
+     * @param jarFile the opened jar
+     * @param entry   the entry of the class
+     * @return the defined class
+     * @throws IOException if the class couldn't be read
+     */
+    @SuppressWarnings("deprecation")
+    private Class<?> defineClass(String name, IndexedJar jar, JarFile jarFile, JarEntry entry) throws IOException {
+        int lastDot = name.lastIndexOf('.');
+        if (lastDot != -1) {
+            String packageName = name.substring(0, lastDot);
+            if (getPackage(packageName) == null) {
+                try {
+                    Manifest manifest = jarFile.getManifest();
+                    if (manifest != null) {
+                        definePackage(packageName, manifest, jar.url);
+                    } else {
+                        definePackage(packageName, null, null, null, null, null, null, null);
+                    }
+                } catch (IllegalArgumentException e) {
+                    // Defined by another thread meanwhile
+                }
+            }
+        }
+
+        byte[] bytes = readAllBytes(jarFile.getInputStream(entry));
+        return defineClass(name, bytes, 0, bytes.length, new CodeSource(jar.url, entry.getCodeSigners()));
+    }
+
+    /**
+     * Finds a resource in the jars containing its directory.
+     *
+     * @param name the resource name
+     * @return the resource URL, or null if no jar contains the resource
+     */
+    @Override
+    public URL findResource(String name) {
+        if (!indexed || !isPlainName(name)) {
+            return super.findResource(name);
+        }
+
+        for (IndexedJar jar : getJars(name)) {
+            if (jar.multiRelease) {
+                return super.findResource(name);
+            }
+
+            URL url = jar.getResource(name);
+            if (url != null) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds all the resources with the provided name in the jars containing
+     * their directory.
+     *
+     * @param name the resource name
+     * @return the resource URLs
+     * @throws IOException if a jar couldn't be read
+     */
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        if (!indexed || !isPlainName(name)) {
+            return super.findResources(name);
+        }
+
+        List<URL> urls = new ArrayList<>();
+        for (IndexedJar jar : getJars(name)) {
+            if (jar.multiRelease) {
+                return super.findResources(name);
+            }
+
+            URL url = jar.getResource(name);
+            if (url != null) {
+                urls.add(url);
+            }
+        }
+        return Collections.enumeration(urls);
+    }
+
+    /**
+     * Closes this class loader and the indexed jars it opened.
+     *
+     * @throws IOException if a jar couldn't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        synchronized (jars) {
+            for (IndexedJar jar : jars) {
+                try {
+                    jar.close();
+                } catch (IOException e) {
+                    if (exception == null) {
+                        exception = e;
+                    } else {
+                        exception.addSuppressed(e);
+                    }
+                }
+            }
+        }
+
+        try {
+            super.close();
+        } catch (IOException e) {
+            if (exception == null) {
+                exception = e;
+            } else {
+                exception.addSuppressed(e);
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * Gets the index file caching the package list of a jar.
+     *
+     * @param jar the jar
+     * @return index file path
+     */
+    public static Path getIndexFile(Path jar) {
+        return requireNonNull(jar, "jar").resolveSibling(jar.getFileName() + ".index");
+    }
+
+    /**
+     * Gets the indexed jars containing the directory of an entry.
+     *
+     * @param path the entry path
+     * @return the indexed jars, in the order they were added
+     */
+    private List<IndexedJar> getJars(String path) {
+        List<IndexedJar> found = packages.get(getDirectory(path));
+        return found != null ? found : Collections.emptyList();
+    }
+
+    /**
+     * Gets the directory containing an entry, which is its package for a
+     * class.
+     *
+     * @param path the entry path
+     * @return the directory in path form, empty for the root directory
+     */
+    private static String getDirectory(String path) {
+        int lastSlash = path.lastIndexOf('/');
+        return lastSlash != -1 ? path.substring(0, lastSlash) : "";
+    }
+
+    /**
+     * Gets whether a resource name can be appended to a jar URL as is.
+     *
+     * @param name the resource name
+     * @return true if the name doesn't need any URL encoding, false otherwise
+     */
+    private static boolean isPlainName(String name) {
+        if (name.isEmpty() || name.startsWith("/")) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || "/._-$+".indexOf(c) != -1)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -101,4 +387,146 @@ public class IsolatedClassLoader extends URLClassLoader {
             }
         }
     }
+
+    /**
+     * A jar indexed by package.
+     */
+    private static class IndexedJar {
+        /**
+         * Path of the jar
+         */
+        private final Path path;
+
+        /**
+         * URL of the jar
+         */
+        private final URL url;
+
+        /**
+         * Packages containing entries of the jar, in path form
+         */
+        private final Set<String> packages;
+
+        /**
+         * Whether the jar is a multi-release jar
+         */
+        private final boolean multiRelease;
+
+        /**
+         * Whether the manifest of the jar has a Class-Path attribute
+         */
+        private final boolean hasClassPath;
+
+        /**
+         * The opened jar, or null if it wasn't opened yet
+         */
+        private JarFile jarFile;
+
+        /**
+         * Indexes a jar, reading its index file if it's up to date.
+         *
+         * @param path the path of the jar
+         * @param url  the URL of the jar
+         * @throws IOException if the jar couldn't be read
+         */
+        private IndexedJar(Path path, URL url) throws IOException {
+            this.path = path;
+            this.url = url;
+
+            String header = INDEX_VERSION + ' ' + Files.size(path) + ' ' + Files.getLastModifiedTime(path).toMillis();
+            Path indexFile = getIndexFile(path);
+            List<String> lines = null;
+            try {
+                lines = Files.readAllLines(indexFile, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                // Not indexed yet
+            }
+
+            if (lines != null && lines.size() >= 2 && lines.get(0).equals(header)) {
+                String[] flags = lines.get(1).split(" ");
+                multiRelease = flags[0].equals("true");
+                hasClassPath = flags.length > 1 && flags[1].equals("true");
+                packages = new HashSet<>(lines.subList(2, lines.size()));
+                return;
+            }
+
+            Set<String> packages = new HashSet<>();
+            try (JarFile jar = new JarFile(path.toFile())) {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    String name = entries.nextElement().getName();
+                    packages.add(getDirectory(name));
+                    if (name.endsWith("/")) {
+                        // Directories are also looked up without their trailing slash
+                        packages.add(getDirectory(name.substring(0, name.length() - 1)));
+                    }
+                }
+
+                Manifest manifest = jar.getManifest();
+                Attributes attributes = manifest != null ? manifest.getMainAttributes() : null;
+                multiRelease = attributes != null && "true".equalsIgnoreCase(attributes.getValue("Multi-Release"));
+                hasClassPath = attributes != null && attributes.getValue(Attributes.Name.CLASS_PATH) != null;
+            }
+            this.packages = packages;
+
+            List<String> index = new ArrayList<>(packages.size() + 2);
+            index.add(header);
+            index.add(multiRelease + " " + hasClassPath);
+            index.addAll(packages);
+            try {
+                // Written to a unique temporary file first, since the jar may be shared with other processes
+                Path tmp = Files.createTempFile(indexFile.toAbsolutePath().getParent(), indexFile.getFileName().toString(), ".tmp");
+                try {
+                    Files.write(tmp, index, StandardCharsets.UTF_8);
+                    Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            } catch (IOException e) {
+                // The jar is indexed again next time
+            }
+        }
+
+        /**
+         * Gets the opened jar, opening it if needed.
+         *
+         * @return the opened jar
+         * @throws IOException if the jar couldn't be opened
+         */
+        private synchronized JarFile getJarFile() throws IOException {
+            if (jarFile == null) {
+                jarFile = new JarFile(path.toFile());
+            }
+            return jarFile;
+        }
+
+        /**
+         * Gets the URL of an entry of the jar.
+         *
+         * @param name the entry name
+         * @return the entry URL, or null if the jar doesn't contain the entry
+         */
+        private URL getResource(String name) {
+            try {
+                if (getJarFile().getEntry(name) == null) {
+                    return null;
+                }
+                return new URL("jar:" + url + "!/" + name);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Closes the jar if it was opened.
+         *
+         * @throws IOException if the jar couldn't be closed
+         */
+        private synchronized void close() throws IOException {
+            if (jarFile != null) {
+                jarFile.close();
+                jarFile = null;
+            }
+        }
+    }
 }
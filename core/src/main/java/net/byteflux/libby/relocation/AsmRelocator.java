@@ -0,0 +1,935 @@
+package net.byteflux.libby.relocation;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A jar relocation engine using ASM directly, which relocates the entries of
+ * a jar in parallel. Its rules match the ones of Luck's Jar Relocator.
+ * <p>
+ * Entries the rules don't modify are copied as they're compressed in the
+ * input jar, so that only the classes referencing relocated names are parsed,
+ * rewritten and compressed again.
+ * <p>
+ * This class is loaded by an {@link net.byteflux.libby.classloader.IsolatedClassLoader}
+ * containing ASM, so its public API only uses JDK types.
+ *
+ * @see RelocationHelper
+ */
+public class AsmRelocator {
+    /**
+     * Maximum number of entries relocated ahead of the entry being written,
+     * for each thread
+     */
+    private static final int ENTRIES_AHEAD_PER_THREAD = 8;
+
+    /**
+     * Deflater of the current thread
+     */
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+    /**
+     * Executor relocating jar entries
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Number of threads relocating jar entries
+     */
+    private final int threads;
+
+    /**
+     * Creates a new relocation engine.
+     *
+     * @param threads number of threads relocating the entries of a jar
+     */
+    public AsmRelocator(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+
+        this.threads = threads;
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "Libby relocation thread");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Stops the threads of this engine once the current relocations are
+     * done. The engine can't relocate jars anymore.
+     */
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Relocates a jar. The rules are provided as parallel arrays, the rule at
+     * index {@code i} relocating {@code patterns[i]} to {@code relocatedPatterns[i]}.
+     *
+     * @param in                input jar
+     * @param out               output jar
+     * @param patterns          the patterns to relocate
+     * @param relocatedPatterns the relocated patterns
+     * @param includes          the included classes of each rule, empty to include every class
+     * @param excludes          the excluded classes of each rule
+     * @throws IOException if the input jar couldn't be read or the output jar couldn't be written
+     */
+    public void relocate(Path in, Path out, String[] patterns, String[] relocatedPatterns, String[][] includes, String[][] excludes) throws IOException {
+        relocate(new Path[] {in}, new Path[] {out}, patterns, relocatedPatterns, includes, excludes);
+    }
+
+    /**
+     * Relocates several jars with the same rules in a single pass. The rules
+     * are compiled once, and the entries of the next jars are relocated while
+     * the previous jars are still being written.
+     *
+     * @param in                input jars
+     * @param out               output jars, in the same order as the input jars
+     * @param patterns          the patterns to relocate
+     * @param relocatedPatterns the relocated patterns
+     * @param includes          the included classes of each rule, empty to include every class
+     * @param excludes          the excluded classes of each rule
+     * @throws IOException if an input jar couldn't be read or an output jar couldn't be written
+     * @see #relocate(Path, Path, String[], String[], String[][], String[][])
+     */
+    public void relocate(Path[] in, Path[] out, String[] patterns, String[] relocatedPatterns, String[][] includes, String[][] excludes) throws IOException {
+        if (in.length != out.length) {
+            throw new IllegalArgumentException("in and out must have the same length");
+        }
+
+        List<Rule> rules = new ArrayList<>(patterns.length);
+        for (int i = 0; i < patterns.length; i++) {
+            rules.add(new Rule(patterns[i], relocatedPatterns[i], includes[i], excludes[i]));
+        }
+        RelocatingRemapper remapper = new RelocatingRemapper(rules);
+
+        RawZipFile[] zips = new RawZipFile[in.length];
+        Deque<CompletableFuture<RelocatedEntry>> pending = new ArrayDeque<>();
+        RawZipOutputStream zipOut = null;
+        try {
+            Set<String> written = new HashSet<>();
+            Iterator<RawZipFile.Entry> entries = null;
+            int reading = -1;
+            int writing = -1;
+
+            while (true) {
+                // Keep the executor busy while the entries are written in their original order
+                while (pending.size() < threads * ENTRIES_AHEAD_PER_THREAD) {
+                    if (entries == null || !entries.hasNext()) {
+                        if (reading == in.length - 1) {
+                            break;
+                        }
+                        reading++;
+                        zips[reading] = new RawZipFile(in[reading]);
+                        entries = zips[reading].getEntries().iterator();
+                        continue;
+                    }
+
+                    RawZipFile.Entry entry = entries.next();
+                    if (isSkipped(entry)) {
+                        continue;
+                    }
+                    RawZipFile zip = zips[reading];
+                    int jar = reading;
+                    pending.add(CompletableFuture.supplyAsync(() -> relocateEntry(zip, jar, entry, remapper), executor));
+                }
+
+                RelocatedEntry entry = pending.isEmpty() ? null : join(pending.poll());
+                int jar = entry != null ? entry.jar : out.length;
+
+                // Move to the output jar of the entry, creating the output jars of the jars without entries
+                while (writing < jar) {
+                    if (zipOut != null) {
+                        zipOut.close();
+                        zipOut = null;
+                        zips[writing].close();
+                    }
+                    if (++writing == out.length) {
+                        break;
+                    }
+                    zipOut = new RawZipOutputStream(out[writing]);
+                    written.clear();
+                }
+
+                if (entry == null) {
+                    return;
+                }
+                write(zipOut, entry, written);
+            }
+        } finally {
+            // Don't relocate the remaining entries after a failure
+            pending.forEach(future -> future.cancel(false));
+            if (zipOut != null) {
+                zipOut.close();
+            }
+            for (RawZipFile zip : zips) {
+                if (zip != null) {
+                    zip.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets whether an entry of the input jar is left out of the output jar.
+     * Directories are recreated from the relocated entry names, and signatures
+     * become invalid once classes are relocated.
+     *
+     * @param entry the entry
+     * @return true if the entry is left out, false otherwise
+     */
+    private static boolean isSkipped(RawZipFile.Entry entry) {
+        String name = entry.name;
+        if (entry.isDirectory() || name.equals("META-INF/INDEX.LIST")) {
+            return true;
+        }
+        return name.startsWith("META-INF/") && (name.endsWith(".SF") || name.endsWith(".DSA") || name.endsWith(".RSA") || name.endsWith(".EC"));
+    }
+
+    /**
+     * Relocates an entry of the input jar. Resources and classes whose
+     * constant pool doesn't contain any relocated pattern are copied as
+     * they're compressed in the input jar, only their name being relocated.
+     * The other classes are relocated by ASM and compressed again.
+     *
+     * @param zip      the input jar
+     * @param jar      the index of the input jar
+     * @param entry    the entry to relocate
+     * @param remapper the remapper applying the relocation rules
+     * @return relocated entry
+     */
+    private static RelocatedEntry relocateEntry(RawZipFile zip, int jar, RawZipFile.Entry entry, RelocatingRemapper remapper) {
+        String name = entry.name;
+        try {
+            byte[] raw = zip.readRaw(entry);
+
+            if (name.endsWith(".class")) {
+                String mappedName = remapper.map(name.substring(0, name.length() - ".class".length())) + ".class";
+                byte[] bytes = RawZipFile.inflate(entry, raw);
+                if (!remapper.trie.occursInConstantPool(bytes)) {
+                    return new RelocatedEntry(jar, mappedName, entry, raw);
+                }
+
+                ClassReader classReader = new ClassReader(bytes);
+                ClassWriter classWriter = new ClassWriter(0);
+                try {
+                    classReader.accept(new RelocatingClassVisitor(classWriter, remapper, name), 0);
+                } catch (RuntimeException e) {
+                    throw new RuntimeException("Error processing class " + name, e);
+                }
+                return deflate(jar, mappedName, entry.dosTime, classWriter.toByteArray());
+            }
+
+            if (name.equals("META-INF/MANIFEST.MF")) {
+                return deflate(jar, name, entry.dosTime, relocateManifest(RawZipFile.inflate(entry, raw)));
+            }
+
+            return new RelocatedEntry(jar, remapper.map(name), entry, raw);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Removes the digests of signed entries from a manifest, since they
+     * become invalid once classes are relocated.
+     *
+     * @param bytes the manifest
+     * @return the manifest without digests
+     * @throws IOException if the manifest couldn't be read
+     */
+    private static byte[] relocateManifest(byte[] bytes) throws IOException {
+        Manifest in = new Manifest(new ByteArrayInputStream(bytes));
+        Manifest out = new Manifest();
+        out.getMainAttributes().putAll(in.getMainAttributes());
+        for (Map.Entry<String, Attributes> entry : in.getEntries().entrySet()) {
+            Attributes attributes = new Attributes();
+            for (Map.Entry<Object, Object> attribute : entry.getValue().entrySet()) {
+                if (!attribute.getKey().toString().endsWith("-Digest")) {
+                    attributes.put(attribute.getKey(), attribute.getValue());
+                }
+            }
+            if (!attributes.isEmpty()) {
+                out.getEntries().put(entry.getKey(), attributes);
+            }
+        }
+
+        ByteArrayOutputStream manifestOut = new ByteArrayOutputStream();
+        out.write(manifestOut);
+        return manifestOut.toByteArray();
+    }
+
+    /**
+     * Compresses the contents of a relocated entry, on the relocating thread
+     * rather than on the thread writing the output jar.
+     *
+     * @param jar     index of the jar of the entry
+     * @param name    relocated entry name
+     * @param dosTime modification date and time of the input entry, in MS-DOS format
+     * @param bytes   relocated entry contents
+     * @return relocated entry
+     */
+    private static RelocatedEntry deflate(int jar, String name, int dosTime, byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        Deflater deflater = DEFLATER.get();
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return new RelocatedEntry(jar, name, RawZipFile.DEFLATED, dosTime, crc.getValue(), bytes.length, compressed.toByteArray());
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    /**
+     * Writes a relocated entry to the output jar, preceded by its parent
+     * directories. Entries whose relocated name was already written are
+     * skipped.
+     *
+     * @param zipOut  the output jar
+     * @param entry   the relocated entry
+     * @param written the names of the entries already written
+     * @throws IOException if the entry couldn't be written
+     */
+    private static void write(RawZipOutputStream zipOut, RelocatedEntry entry, Set<String> written) throws IOException {
+        int index = entry.name.indexOf('/');
+        while (index != -1) {
+            String directory = entry.name.substring(0, index + 1);
+            if (written.add(directory)) {
+                zipOut.writeDirectory(directory, entry.dosTime);
+            }
+            index = entry.name.indexOf('/', index + 1);
+        }
+
+        if (!written.add(entry.name)) {
+            return;
+        }
+        zipOut.writeEntry(entry.name, entry.method, entry.dosTime, entry.crc, entry.size, entry.compressed);
+    }
+
+    /**
+     * Waits for an entry to be relocated.
+     *
+     * @param future the relocation of the entry
+     * @return relocated entry
+     * @throws IOException if the entry couldn't be read
+     */
+    private static RelocatedEntry join(CompletableFuture<RelocatedEntry> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * An entry of the output jar.
+     */
+    private static class RelocatedEntry {
+        /**
+         * Index of the jar of the entry
+         */
+        private final int jar;
+
+        /**
+         * Relocated entry name
+         */
+        private final String name;
+
+        /**
+         * Compression method of the entry contents
+         */
+        private final int method;
+
+        /**
+         * Modification date and time of the input entry, in MS-DOS format
+         */
+        private final int dosTime;
+
+        /**
+         * CRC-32 of the uncompressed entry contents
+         */
+        private final long crc;
+
+        /**
+         * Size of the uncompressed entry contents
+         */
+        private final long size;
+
+        /**
+         * Compressed entry contents
+         */
+        private final byte[] compressed;
+
+        /**
+         * Creates a new relocated entry.
+         *
+         * @param jar        index of the jar of the entry
+         * @param name       relocated entry name
+         * @param method     compression method of the entry contents
+         * @param dosTime    modification date and time of the input entry, in MS-DOS format
+         * @param crc        CRC-32 of the uncompressed entry contents
+         * @param size       size of the uncompressed entry contents
+         * @param compressed compressed entry contents
+         */
+        private RelocatedEntry(int jar, String name, int method, int dosTime, long crc, long size, byte[] compressed) {
+            this.jar = jar;
+            this.name = name;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.size = size;
+            this.compressed = compressed;
+        }
+
+        /**
+         * Creates a relocated entry copying the contents of an input entry.
+         *
+         * @param jar   index of the jar of the entry
+         * @param name  relocated entry name
+         * @param entry the input entry
+         * @param raw   compressed contents of the input entry
+         */
+        private RelocatedEntry(int jar, String name, RawZipFile.Entry entry, byte[] raw) {
+            this(jar, name, entry.method, entry.dosTime, entry.crc, entry.size, raw);
+        }
+    }
+
+    /**
+     * A relocation rule.
+     */
+    static class Rule {
+        /**
+         * Pattern and relocated pattern, in dotted form
+         */
+        private final String pattern, relocatedPattern;
+
+        /**
+         * Pattern and relocated pattern, in path form
+         */
+        private final String pathPattern, relocatedPathPattern;
+
+        /**
+         * Included and excluded class paths
+         */
+        private final List<Pattern> includes, excludes;
+
+        /**
+         * Creates a new relocation rule.
+         *
+         * @param pattern          the pattern to relocate
+         * @param relocatedPattern the relocated pattern
+         * @param includes         the included classes, empty to include every class
+         * @param excludes         the excluded classes
+         */
+        Rule(String pattern, String relocatedPattern, String[] includes, String[] excludes) {
+            this.pattern = pattern.replace('/', '.');
+            this.pathPattern = pattern.replace('.', '/');
+            this.relocatedPattern = relocatedPattern.replace('/', '.');
+            this.relocatedPathPattern = relocatedPattern.replace('.', '/');
+            this.includes = compileSelectors(includes);
+            this.excludes = compileSelectors(excludes);
+        }
+
+        /**
+         * Compiles class selectors, which are class names with Ant-style
+         * wildcards. A selector ending with {@code .*} also selects its package.
+         *
+         * @param selectors the class selectors
+         * @return compiled path patterns
+         */
+        private static List<Pattern> compileSelectors(String[] selectors) {
+            List<Pattern> patterns = new ArrayList<>();
+            for (String selector : selectors) {
+                String path = selector.replace('.', '/');
+                patterns.add(compileSelector(path));
+                if (path.endsWith("/*")) {
+                    patterns.add(compileSelector(path.substring(0, path.lastIndexOf('/'))));
+                }
+            }
+            return patterns;
+        }
+
+        /**
+         * Compiles an Ant-style path selector, where {@code **} selects any
+         * number of directories, {@code *} any characters of a directory and
+         * {@code ?} a single character of a directory.
+         *
+         * @param selector the path selector
+         * @return compiled path pattern
+         */
+        private static Pattern compileSelector(String selector) {
+            StringBuilder regex = new StringBuilder();
+            for (int i = 0; i < selector.length(); i++) {
+                char c = selector.charAt(i);
+                if (selector.startsWith("**/", i)) {
+                    regex.append("(.*/)?");
+                    i += 2;
+                } else if (selector.startsWith("/**", i) && i + 3 == selector.length()) {
+                    regex.append("(/.*)?");
+                    i += 2;
+                } else if (selector.startsWith("**", i)) {
+                    regex.append(".*");
+                    i++;
+                } else if (c == '*') {
+                    regex.append("[^/]*");
+                } else if (c == '?') {
+                    regex.append("[^/]");
+                } else {
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return Pattern.compile(regex.toString());
+        }
+
+        /**
+         * Gets whether a path matches any of the provided patterns.
+         *
+         * @param patterns the patterns
+         * @param path     the path
+         * @return true if the path matches a pattern, false otherwise
+         */
+        private static boolean matches(List<Pattern> patterns, String path) {
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(path).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Gets whether this rule's includes and excludes select a path.
+         *
+         * @param path the path, with or without the {@code .class} extension
+         * @return true if the path is selected, false otherwise
+         */
+        private boolean selects(String path) {
+            if (includes.isEmpty() && excludes.isEmpty()) {
+                return true;
+            }
+
+            if (path.endsWith(".class")) {
+                path = path.substring(0, path.length() - ".class".length());
+            }
+            return (includes.isEmpty() || matches(includes, path)) && !matches(excludes, path);
+        }
+
+        /**
+         * Relocates a path starting with this rule's pattern at the provided offset.
+         *
+         * @param path   the path
+         * @param offset the offset of the pattern in the path
+         * @return relocated path
+         */
+        private String relocatePath(String path, int offset) {
+            return path.substring(0, offset) + relocatedPathPattern + path.substring(offset + pathPattern.length());
+        }
+
+        /**
+         * Relocates a class name starting with this rule's pattern.
+         *
+         * @param name the class name, in dotted form
+         * @return relocated class name
+         */
+        private String relocateClass(String name) {
+            return relocatedPattern + name.substring(pattern.length());
+        }
+    }
+
+    /**
+     * Relocation rules compiled into a prefix trie of their path patterns, so
+     * that finding the rule relocating a name only reads the name once,
+     * whatever the number of rules.
+     */
+    static class RuleTrie {
+        /**
+         * Relocation rules, in order of priority
+         */
+        private final List<Rule> rules;
+
+        /**
+         * Root node of the trie
+         */
+        private final Node root = new Node();
+
+        /**
+         * Root node of the trie of the path patterns encoded in modified
+         * UTF-8, one byte per node, as they're stored in class files
+         */
+        private final Node bytesRoot = new Node();
+
+        /**
+         * Compiles relocation rules into a trie.
+         *
+         * @param rules relocation rules, in order of priority
+         */
+        RuleTrie(List<Rule> rules) {
+            this.rules = rules;
+            for (int i = 0; i < rules.size(); i++) {
+                Node node = root;
+                Node bytesNode = bytesRoot;
+                String pathPattern = rules.get(i).pathPattern;
+                for (int j = 0; j < pathPattern.length(); j++) {
+                    char c = pathPattern.charAt(j);
+                    node = node.getOrCreateChild(c);
+                    if (c >= 0x01 && c <= 0x7F) {
+                        bytesNode = bytesNode.getOrCreateChild(c);
+                    } else if (c <= 0x7FF) {
+                        bytesNode = bytesNode.getOrCreateChild((char) (0xC0 | c >> 6));
+                        bytesNode = bytesNode.getOrCreateChild((char) (0x80 | c & 0x3F));
+                    } else {
+                        bytesNode = bytesNode.getOrCreateChild((char) (0xE0 | c >> 12));
+                        bytesNode = bytesNode.getOrCreateChild((char) (0x80 | c >> 6 & 0x3F));
+                        bytesNode = bytesNode.getOrCreateChild((char) (0x80 | c & 0x3F));
+                    }
+                }
+                node.rules.add(i);
+                bytesNode.rules.add(i);
+            }
+        }
+
+        /**
+         * Gets whether the constant pool of a class contains a string
+         * containing any path pattern, in path or dotted form, ignoring the
+         * includes and excludes of the rules. A class for which this returns
+         * false isn't modified by the rules.
+         *
+         * @param bytes the class file
+         * @return true if a pattern occurs in the constant pool, or if the
+         * class file couldn't be parsed, false otherwise
+         */
+        boolean occursInConstantPool(byte[] bytes) {
+            try {
+                int count = (bytes[8] & 0xFF) << 8 | bytes[9] & 0xFF;
+                int position = 10;
+                for (int i = 1; i < count; i++) {
+                    switch (bytes[position]) {
+                        case 1: // Utf8
+                            int length = (bytes[position + 1] & 0xFF) << 8 | bytes[position + 2] & 0xFF;
+                            if (occursIn(bytes, position + 3, position + 3 + length)) {
+                                return true;
+                            }
+                            position += 3 + length;
+                            break;
+                        case 7: // Class
+                        case 8: // String
+                        case 16: // MethodType
+                        case 19: // Module
+                        case 20: // Package
+                            position += 3;
+                            break;
+                        case 15: // MethodHandle
+                            position += 4;
+                            break;
+                        case 3: // Integer
+                        case 4: // Float
+                        case 9: // Fieldref
+                        case 10: // Methodref
+                        case 11: // InterfaceMethodref
+                        case 12: // NameAndType
+                        case 17: // Dynamic
+                        case 18: // InvokeDynamic
+                            position += 5;
+                            break;
+                        case 5: // Long
+                        case 6: // Double
+                            position += 9;
+                            i++;
+                            break;
+                        default:
+                            // Let ASM report the invalid class
+                            return true;
+                    }
+                }
+                return false;
+            } catch (ArrayIndexOutOfBoundsException e) {
+                return true;
+            }
+        }
+
+        /**
+         * Gets whether a path pattern occurs in a modified UTF-8 string, dots
+         * being read as slashes.
+         *
+         * @param bytes the bytes of the string
+         * @param start the start of the string, inclusive
+         * @param end   the end of the string, exclusive
+         * @return true if a pattern occurs in the string, false otherwise
+         */
+        private boolean occursIn(byte[] bytes, int start, int end) {
+            for (int offset = start; offset < end; offset++) {
+                Node node = bytesRoot;
+                for (int i = offset; node != null; i++) {
+                    if (!node.rules.isEmpty()) {
+                        return true;
+                    }
+                    if (i == end) {
+                        break;
+                    }
+                    node = node.getChild(bytes[i] == '.' ? '/' : (char) (bytes[i] & 0xFF));
+                }
+            }
+            return !bytesRoot.rules.isEmpty();
+        }
+
+        /**
+         * Gets the rule with the highest priority whose pattern starts the
+         * path at the provided offset and whose includes and excludes select it.
+         *
+         * @param path   the path
+         * @param offset the offset in the path at which patterns start
+         * @return index of the rule, or {@link Integer#MAX_VALUE} if no rule matches
+         */
+        private int find(String path, int offset) {
+            int found = Integer.MAX_VALUE;
+            Node node = root;
+            for (int i = offset; node != null; i++) {
+                for (int rule : node.rules) {
+                    if (rule < found && rules.get(rule).selects(path)) {
+                        found = rule;
+                    }
+                }
+                node = i < path.length() ? node.getChild(path.charAt(i)) : null;
+            }
+            return found;
+        }
+
+        /**
+         * A node of the trie.
+         */
+        private static class Node {
+            /**
+             * Characters of the child nodes
+             */
+            private char[] keys = new char[0];
+
+            /**
+             * Child nodes, in the same order as their characters
+             */
+            private Node[] children = new Node[0];
+
+            /**
+             * Indexes of the rules whose pattern ends at this node
+             */
+            private final List<Integer> rules = new ArrayList<>(1);
+
+            /**
+             * Gets a child node.
+             *
+             * @param key the character of the child
+             * @return child node, or null if there isn't any
+             */
+            private Node getChild(char key) {
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] == key) {
+                        return children[i];
+                    }
+                }
+                return null;
+            }
+
+            /**
+             * Gets a child node, creating it if needed.
+             *
+             * @param key the character of the child
+             * @return child node
+             */
+            private Node getOrCreateChild(char key) {
+                Node child = getChild(key);
+                if (child == null) {
+                    child = new Node();
+                    keys = Arrays.copyOf(keys, keys.length + 1);
+                    children = Arrays.copyOf(children, children.length + 1);
+                    keys[keys.length - 1] = key;
+                    children[children.length - 1] = child;
+                }
+                return child;
+            }
+        }
+    }
+
+    /**
+     * A remapper applying relocation rules to class names, descriptors and
+     * string constants.
+     */
+    private static class RelocatingRemapper extends Remapper {
+        /**
+         * Relocation rules, in order of priority
+         */
+        private final List<Rule> rules;
+
+        /**
+         * Relocation rules compiled into a trie
+         */
+        private final RuleTrie trie;
+
+        /**
+         * Creates a new relocating remapper.
+         *
+         * @param rules relocation rules, in order of priority
+         */
+        private RelocatingRemapper(List<Rule> rules) {
+            this.rules = rules;
+            this.trie = new RuleTrie(rules);
+        }
+
+        /**
+         * Relocates an internal name or a path.
+         *
+         * @param name the internal name or path
+         * @return relocated name
+         */
+        @Override
+        public String map(String name) {
+            String relocated = relocate(name, false);
+            return relocated != null ? relocated : super.map(name);
+        }
+
+        /**
+         * Relocates a constant, which may be a class name in dotted form.
+         *
+         * @param value the constant
+         * @return relocated constant
+         */
+        @Override
+        public Object mapValue(Object value) {
+            if (value instanceof String) {
+                String relocated = relocate((String) value, true);
+                if (relocated != null) {
+                    return relocated;
+                }
+            }
+            return super.mapValue(value);
+        }
+
+        /**
+         * Relocates a name with the first rule relocating it.
+         *
+         * @param name    the name
+         * @param isClass true if the name may be a class name in dotted form
+         * @return relocated name, or null if no rule relocates it
+         */
+        private String relocate(String name, boolean isClass) {
+            String prefix = "";
+            String suffix = "";
+
+            // Class descriptors and array descriptors of classes, as in [[Lcom/example/Foo;
+            int dimensions = 0;
+            while (dimensions < name.length() && name.charAt(dimensions) == '[') {
+                dimensions++;
+            }
+            if (name.length() > dimensions + 2 && name.charAt(dimensions) == 'L' && name.charAt(name.length() - 1) == ';') {
+                prefix = name.substring(0, dimensions + 1);
+                suffix = ";";
+                name = name.substring(dimensions + 1, name.length() - 1);
+            }
+
+            int classRule = Integer.MAX_VALUE;
+            if (isClass && name.indexOf('/') == -1) {
+                classRule = trie.find(name.replace('.', '/'), 0);
+            }
+
+            int offset = 0;
+            int pathRule = trie.find(name, 0);
+            if (!name.isEmpty() && name.charAt(0) == '/') {
+                int rule = trie.find(name, 1);
+                if (rule < pathRule) {
+                    offset = 1;
+                    pathRule = rule;
+                }
+            }
+
+            if (classRule <= pathRule && classRule != Integer.MAX_VALUE) {
+                return prefix + rules.get(classRule).relocateClass(name) + suffix;
+            }
+            if (pathRule != Integer.MAX_VALUE) {
+                return prefix + rules.get(pathRule).relocatePath(name, offset) + suffix;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A class visitor relocating a class, including its source file name.
+     */
+    private static class RelocatingClassVisitor extends ClassRemapper {
+        /**
+         * Package of the class, in path form with a trailing slash
+         */
+        private final String packageName;
+
+        /**
+         * Creates a new relocating class visitor.
+         *
+         * @param classVisitor the visitor receiving the relocated class
+         * @param remapper     the remapper applying the relocation rules
+         * @param name         the entry name of the class
+         */
+        private RelocatingClassVisitor(ClassVisitor classVisitor, RelocatingRemapper remapper, String name) {
+            super(classVisitor, remapper);
+            this.packageName = name.substring(0, name.lastIndexOf('/') + 1);
+        }
+
+        /**
+         * Relocates the source file name of the class.
+         *
+         * @param source the source file name
+         * @param debug  additional debug information
+         */
+        @Override
+        public void visitSource(String source, String debug) {
+            if (source == null) {
+                super.visitSource(null, debug);
+                return;
+            }
+
+            String mappedName = remapper.map(packageName + source);
+            super.visitSource(mappedName.substring(mappedName.lastIndexOf('/') + 1), debug);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package net.byteflux.libby.relocation;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * A minimal zip file reader giving access to the compressed data of its
+ * entries, so that unmodified entries can be copied to another zip file
+ * without being inflated and deflated again.
+ * <p>
+ * Entries can be read by several threads at the same time. Encrypted
+ * entries and compression methods other than stored and deflated aren't
+ * supported.
+ *
+ * @see RawZipOutputStream
+ */
+class RawZipFile implements Closeable {
+    /**
+     * Compression method of stored entries
+     */
+    static final int STORED = 0;
+
+    /**
+     * Compression method of deflated entries
+     */
+    static final int DEFLATED = 8;
+
+    /**
+     * Signature of the end of central directory record
+     */
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    /**
+     * Signature of the zip64 end of central directory locator
+     */
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    /**
+     * Signature of the zip64 end of central directory record
+     */
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+
+    /**
+     * Signature of central directory headers
+     */
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+
+    /**
+     * Signature of local file headers
+     */
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+
+    /**
+     * Inflater of the current thread
+     */
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    /**
+     * Channel of the zip file
+     */
+    private final FileChannel channel;
+
+    /**
+     * Entries of the zip file, in central directory order
+     */
+    private final List<Entry> entries;
+
+    /**
+     * Opens a zip file and reads its central directory.
+     *
+     * @param file the zip file
+     * @throws IOException if the zip file couldn't be read or isn't supported
+     */
+    RawZipFile(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            entries = Collections.unmodifiableList(readCentralDirectory());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the entries of the zip file.
+     *
+     * @return entries, in central directory order
+     */
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Reads the data of an entry as it's stored in the zip file.
+     *
+     * @param entry the entry
+     * @return compressed data of the entry
+     * @throws IOException if the entry couldn't be read
+     */
+    byte[] readRaw(Entry entry) throws IOException {
+        ByteBuffer header = read(entry.localHeaderOffset, 30);
+        if (header.getInt(0) != LOCAL_SIGNATURE) {
+            throw new ZipException("Invalid local header of " + entry.name);
+        }
+
+        long dataOffset = entry.localHeaderOffset + 30 + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+        return read(dataOffset, (int) entry.compressedSize).array();
+    }
+
+    /**
+     * Decompresses the data of an entry.
+     *
+     * @param entry the entry
+     * @param raw   the compressed data of the entry
+     * @return uncompressed data of the entry
+     * @throws IOException if the data couldn't be decompressed
+     * @see #readRaw(Entry)
+     */
+    static byte[] inflate(Entry entry, byte[] raw) throws IOException {
+        if (entry.method == STORED) {
+            return raw;
+        }
+
+        byte[] bytes = new byte[(int) entry.size];
+        Inflater inflater = INFLATER.get();
+        try {
+            inflater.setInput(raw);
+            int length = 0;
+            while (length < bytes.length) {
+                int inflated = inflater.inflate(bytes, length, bytes.length - length);
+                if (inflated == 0) {
+                    if (inflater.finished() || inflater.needsDictionary()) {
+                        break;
+                    }
+                    if (inflater.needsInput()) {
+                        // The native library may need an extra dummy byte when there's no zlib header
+                        inflater.setInput(new byte[1]);
+                    }
+                }
+                length += inflated;
+            }
+            if (length != bytes.length) {
+                throw new ZipException("Invalid size of " + entry.name);
+            }
+            return bytes;
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid compressed data of " + entry.name + ": " + e.getMessage());
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    /**
+     * Reads bytes of the zip file.
+     *
+     * @param position the position of the bytes in the file
+     * @param length   the number of bytes to read
+     * @return little-endian buffer containing the read bytes
+     * @throws IOException if the bytes couldn't be read
+     */
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read == -1) {
+                throw new EOFException("Unexpected end of zip file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Reads the central directory of the zip file.
+     *
+     * @return entries of the zip file
+     * @throws IOException if the central directory couldn't be read
+     */
+    private List<Entry> readCentralDirectory() throws IOException {
+        long size = channel.size();
+        int tailLength = (int) Math.min(size, 22 + 0xFFFF);
+        ByteBuffer tail = read(size - tailLength, tailLength);
+
+        int end = -1;
+        for (int i = tailLength - 22; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1) {
+            throw new ZipException("Missing end of central directory");
+        }
+
+        long count = tail.getShort(end + 10) & 0xFFFF;
+        long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+
+        if (count == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+            long locator = size - tailLength + end - 20;
+            ByteBuffer locatorBuffer = read(locator, 20);
+            if (locatorBuffer.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+                ByteBuffer zip64End = read(locatorBuffer.getLong(8), 56);
+                if (zip64End.getInt(0) != ZIP64_END_SIGNATURE) {
+                    throw new ZipException("Invalid zip64 end of central directory");
+                }
+                count = zip64End.getLong(32);
+                directorySize = zip64End.getLong(40);
+                directoryOffset = zip64End.getLong(48);
+            }
+        }
+
+        if (directorySize > Integer.MAX_VALUE) {
+            throw new ZipException("Central directory too large");
+        }
+
+        ByteBuffer directory = read(directoryOffset, (int) directorySize);
+        List<Entry> entries = new ArrayList<>((int) Math.min(count, 0xFFFF));
+        int position = 0;
+        for (long i = 0; i < count; i++) {
+            if (directory.getInt(position) != CENTRAL_SIGNATURE) {
+                throw new ZipException("Invalid central directory header");
+            }
+
+            int flags = directory.getShort(position + 8) & 0xFFFF;
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            int dosTime = directory.getInt(position + 12);
+            long crc = directory.getInt(position + 16) & 0xFFFFFFFFL;
+            long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+            long uncompressedSize = directory.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+
+            byte[] nameBytes = new byte[nameLength];
+            directory.position(position + 46);
+            directory.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            // Sizes and offsets which don't fit are in the zip64 extra field, in this order
+            int extra = position + 46 + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = directory.getShort(extra) & 0xFFFF;
+                int length = directory.getShort(extra + 2) & 0xFFFF;
+                if (id == 0x0001) {
+                    int field = extra + 4;
+                    if (uncompressedSize == 0xFFFFFFFFL) {
+                        uncompressedSize = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == 0xFFFFFFFFL) {
+                        compressedSize = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (localHeaderOffset == 0xFFFFFFFFL) {
+                        localHeaderOffset = directory.getLong(field);
+                    }
+                }
+                extra += 4 + length;
+            }
+
+            if ((flags & 1) != 0) {
+                throw new ZipException("Encrypted entries aren't supported: " + name);
+            }
+            if (method != STORED && method != DEFLATED) {
+                throw new ZipException("Unsupported compression method " + method + ": " + name);
+            }
+            if (compressedSize > Integer.MAX_VALUE - 8 || uncompressedSize > Integer.MAX_VALUE - 8) {
+                throw new ZipException("Entry too large: " + name);
+            }
+
+            entries.add(new Entry(name, method, dosTime, crc, compressedSize, uncompressedSize, localHeaderOffset));
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    /**
+     * Closes the zip file.
+     *
+     * @throws IOException if the zip file couldn't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * An entry of a zip file.
+     */
+    static class Entry {
+        /**
+         * Entry name
+         */
+        final String name;
+
+        /**
+         * Compression method, {@link #STORED} or {@link #DEFLATED}
+         */
+        final int method;
+
+        /**
+         * Modification date and time, in MS-DOS format
+         */
+        final int dosTime;
+
+        /**
+         * CRC-32 of the uncompressed data
+         */
+        final long crc;
+
+        /**
+         * Size of the compressed data
+         */
+        final long compressedSize;
+
+        /**
+         * Size of the uncompressed data
+         */
+        final long size;
+
+        /**
+         * Offset of the local file header of the entry
+         */
+        private final long localHeaderOffset;
+
+        /**
+         * Creates a new zip entry.
+         *
+         * @param name              entry name
+         * @param method            compression method
+         * @param dosTime           modification date and time, in MS-DOS format
+         * @param crc               CRC-32 of the uncompressed data
+         * @param compressedSize    size of the compressed data
+         * @param size              size of the uncompressed data
+         * @param localHeaderOffset offset of the local file header of the entry
+         */
+        private Entry(String name, int method, int dosTime, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        /**
+         * Gets whether this entry is a directory.
+         *
+         * @return true if this entry is a directory, false otherwise
+         */
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package net.byteflux.libby.relocation;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipException;
+
+/**
+ * A minimal zip file writer whose entries are written already compressed,
+ * so that entries read with {@link RawZipFile#readRaw(RawZipFile.Entry)}
+ * can be copied without being inflated and deflated again, and modified
+ * entries can be compressed by other threads than the writing one.
+ *
+ * @see RawZipFile
+ */
+class RawZipOutputStream implements Closeable {
+    /**
+     * Signature of local file headers
+     */
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+
+    /**
+     * Signature of central directory headers
+     */
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+
+    /**
+     * Signature of the end of central directory record
+     */
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    /**
+     * Signature of the zip64 end of central directory record
+     */
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+
+    /**
+     * Signature of the zip64 end of central directory locator
+     */
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    /**
+     * General purpose flag of entries whose name is encoded in UTF-8
+     */
+    private static final int UTF8_FLAG = 0x800;
+
+    /**
+     * Stream of the zip file
+     */
+    private final OutputStream out;
+
+    /**
+     * Central directory headers of the written entries
+     */
+    private final List<byte[]> headers = new ArrayList<>();
+
+    /**
+     * Number of bytes written to the zip file
+     */
+    private long written;
+
+    /**
+     * Creates a new zip file.
+     *
+     * @param file the zip file
+     * @throws IOException if the zip file couldn't be created
+     */
+    RawZipOutputStream(Path file) throws IOException {
+        out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+    }
+
+    /**
+     * Writes an entry.
+     *
+     * @param name           entry name
+     * @param method         compression method, {@link RawZipFile#STORED} or {@link RawZipFile#DEFLATED}
+     * @param dosTime        modification date and time, in MS-DOS format
+     * @param crc            CRC-32 of the uncompressed data
+     * @param size           size of the uncompressed data
+     * @param compressed     compressed data
+     * @throws IOException if the entry couldn't be written
+     */
+    void writeEntry(String name, int method, int dosTime, long crc, long size, byte[] compressed) throws IOException {
+        if (written > 0xFFFFFFFFL - 1) {
+            throw new ZipException("Zip file too large");
+        }
+
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int flags = nameBytes.length != name.length() ? UTF8_FLAG : 0;
+
+        ByteBuffer local = buffer(30 + nameBytes.length);
+        local.putInt(LOCAL_SIGNATURE);
+        local.putShort((short) 20);
+        local.putShort((short) flags);
+        local.putShort((short) method);
+        local.putInt(dosTime);
+        local.putInt((int) crc);
+        local.putInt(compressed.length);
+        local.putInt((int) size);
+        local.putShort((short) nameBytes.length);
+        local.putShort((short) 0);
+        local.put(nameBytes);
+
+        ByteBuffer central = buffer(46 + nameBytes.length);
+        central.putInt(CENTRAL_SIGNATURE);
+        central.putShort((short) 20);
+        central.putShort((short) 20);
+        central.putShort((short) flags);
+        central.putShort((short) method);
+        central.putInt(dosTime);
+        central.putInt((int) crc);
+        central.putInt(compressed.length);
+        central.putInt((int) size);
+        central.putShort((short) nameBytes.length);
+        central.putShort((short) 0);
+        central.putShort((short) 0);
+        central.putShort((short) 0);
+        central.putShort((short) 0);
+        central.putInt(0);
+        central.putInt((int) written);
+        central.put(nameBytes);
+        headers.add(central.array());
+
+        write(local.array());
+        write(compressed);
+    }
+
+    /**
+     * Writes a directory entry.
+     *
+     * @param name    directory name, with a trailing slash
+     * @param dosTime modification date and time, in MS-DOS format
+     * @throws IOException if the entry couldn't be written
+     */
+    void writeDirectory(String name, int dosTime) throws IOException {
+        writeEntry(name, RawZipFile.STORED, dosTime, 0, 0, new byte[0]);
+    }
+
+    /**
+     * Writes the central directory and closes the zip file.
+     *
+     * @throws IOException if the central directory couldn't be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            long directoryOffset = written;
+            for (byte[] header : headers) {
+                write(header);
+            }
+            long directorySize = written - directoryOffset;
+
+            boolean zip64 = headers.size() >= 0xFFFF || directoryOffset >= 0xFFFFFFFFL || directorySize >= 0xFFFFFFFFL;
+            if (zip64) {
+                long zip64End = written;
+                ByteBuffer record = buffer(56);
+                record.putInt(ZIP64_END_SIGNATURE);
+                record.putLong(44);
+                record.putShort((short) 45);
+                record.putShort((short) 45);
+                record.putInt(0);
+                record.putInt(0);
+                record.putLong(headers.size());
+                record.putLong(headers.size());
+                record.putLong(directorySize);
+                record.putLong(directoryOffset);
+                write(record.array());
+
+                ByteBuffer locator = buffer(20);
+                locator.putInt(ZIP64_LOCATOR_SIGNATURE);
+                locator.putInt(0);
+                locator.putLong(zip64End);
+                locator.putInt(1);
+                write(locator.array());
+            }
+
+            ByteBuffer end = buffer(22);
+            end.putInt(END_SIGNATURE);
+            end.putShort((short) 0);
+            end.putShort((short) 0);
+            end.putShort((short) (zip64 ? 0xFFFF : headers.size()));
+            end.putShort((short) (zip64 ? 0xFFFF : headers.size()));
+            end.putInt(zip64 ? -1 : (int) directorySize);
+            end.putInt(zip64 ? -1 : (int) directoryOffset);
+            end.putShort((short) 0);
+            write(end.array());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes bytes to the zip file.
+     *
+     * @param bytes the bytes
+     * @throws IOException if the bytes couldn't be written
+     */
+    private void write(byte[] bytes) throws IOException {
+        out.write(bytes);
+        written += bytes.length;
+    }
+
+    /**
+     * Allocates a little-endian buffer.
+     *
+     * @param length the buffer length
+     * @return allocated buffer
+     */
+    private static ByteBuffer buffer(int length) {
+        return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -5,101 +5,107 @@ import net.byteflux.libby.LibraryManager;
 import net.byteflux.libby.Repositories;
 import net.byteflux.libby.classloader.IsolatedClassLoader;
 
-import java.io.File;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
 
 import static java.util.Objects.requireNonNull;
 
 /**
- * A reflection-based helper for relocating library jars. It automatically
- * downloads and invokes Luck's Jar Relocator to perform jar relocations.
+ * A helper for relocating library jars. It automatically downloads ASM and
+ * invokes {@link AsmRelocator}, Libby's relocation engine, which relocates
+ * the entries of a jar in parallel.
+ * <p>
+ * The engine is shared by every copy of Libby in the JVM, whatever the
+ * package Libby is relocated into: the first copy needing it downloads ASM
+ * and publishes it in the system properties, the other copies use the
+ * published engine. It's closed once every relocation helper using it is
+ * closed. The classes of the copy which created the engine stay loaded until
+ * then.
  *
- * @see <a href="https://github.com/lucko/jar-relocator">Luck's Jar Relocator</a>
+ * @see SharedRelocationEngine
  */
 public class RelocationHelper {
     /**
-     * Reflected constructor for creating new jar relocator instances
+     * Package of the relocation engine, with a trailing dot. Its classes are
+     * defined in the class loader containing ASM when they're first loaded.
      */
-    private final Constructor<?> jarRelocatorConstructor;
+    private static final String ENGINE_PACKAGE = RelocationHelper.class.getName().substring(0, RelocationHelper.class.getName().lastIndexOf('.') + 1);
 
     /**
-     * Reflected method for running a jar relocator
+     * System property the shared relocation engine is published under. It
+     * isn't a class name, so that it isn't relocated together with Libby, and
+     * it's versioned, so that copies of Libby using a different protocol
+     * don't share their engine.
      */
-    private final Method jarRelocatorRunMethod;
+    private static final String ENGINE_PROPERTY = "libby.relocation-engine.1";
 
     /**
-     * Reflected constructor for creating relocation instances
+     * Shared relocation engine, holding a reference owned by this helper
      */
-    private final Constructor<?> relocationConstructor;
+    private final BiFunction<String, Object[], Object> engine;
 
     /**
-     * Creates a new relocation helper using the provided library manager to
-     * download the dependencies required for runtime relocation.
+     * Whether this relocation helper has been closed
+     */
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Creates a new relocation helper using the shared relocation engine,
+     * downloading the dependencies required for runtime relocation with the
+     * provided library manager if no engine is published yet.
+     * <p>
+     * The relocation helper must be closed by its creator, so that the
+     * engine is closed once no relocation helper uses it anymore.
      *
      * @param libraryManager the library manager used to download dependencies
      */
     public RelocationHelper(LibraryManager libraryManager) {
-        requireNonNull(libraryManager, "libraryManager");
-
-        IsolatedClassLoader classLoader = new IsolatedClassLoader();
-
-        // ObjectWeb ASM Commons
-        classLoader.addPath(libraryManager.downloadLibrary(
-            Library.builder()
-                   .groupId("org.ow2.asm")
-                   .artifactId("asm-commons")
-                   .version("9.2")
-                   .checksum("vkzlMTiiOLtSLNeBz5Hzulzi9sqT7GLUahYqEnIl4KY=")
-                   .repository(Repositories.MAVEN_CENTRAL)
-                   .build()
-        ));
-
-        // ObjectWeb ASM
-        classLoader.addPath(libraryManager.downloadLibrary(
-            Library.builder()
-                   .groupId("org.ow2.asm")
-                   .artifactId("asm")
-                   .version("9.2")
-                   .checksum("udT+TXGTjfOIOfDspCqqpkz4sxPWeNoDbwyzyhmbR/U=")
-                   .repository(Repositories.MAVEN_CENTRAL)
-                   .build()
-        ));
-
-        // Luck's Jar Relocator
-        classLoader.addPath(libraryManager.downloadLibrary(
-            Library.builder()
-                   .groupId("me.lucko")
-                   .artifactId("jar-relocator")
-                   .version("1.7")
-                   .checksum("b30RhOF6kHiHl+O5suNLh/+eAr1iOFEFLXhwkHHDu4I=")
-                   .repository(Repositories.MAVEN_CENTRAL)
-                   .build()
-        ));
-
-        try {
-            Class<?> jarRelocatorClass = classLoader.loadClass("me.lucko.jarrelocator.JarRelocator");
-            Class<?> relocationClass = classLoader.loadClass("me.lucko.jarrelocator.Relocation");
+        engine = acquireEngine(requireNonNull(libraryManager, "libraryManager"));
+    }
 
-            // me.lucko.jarrelocator.JarRelocator(File, File, Collection)
-            jarRelocatorConstructor = jarRelocatorClass.getConstructor(File.class, File.class, Collection.class);
+    /**
+     * Gets a relocation helper using the shared relocation engine. Every call
+     * must be followed by a call to {@link #release(RelocationHelper)} once
+     * the relocation helper isn't needed anymore.
+     *
+     * @param libraryManager the library manager used to download dependencies
+     *                       if no relocation engine is published yet
+     * @return the relocation helper
+     */
+    public static RelocationHelper acquire(LibraryManager libraryManager) {
+        return new RelocationHelper(libraryManager);
+    }
 
-            // me.lucko.jarrelocator.JarRelocator#run()
-            jarRelocatorRunMethod = jarRelocatorClass.getMethod("run");
+    /**
+     * Releases a relocation helper, the shared relocation engine being closed
+     * once every relocation helper using it is released.
+     *
+     * @param relocationHelper the relocation helper
+     * @see #acquire(LibraryManager)
+     */
+    public static void release(RelocationHelper relocationHelper) {
+        requireNonNull(relocationHelper, "relocationHelper").close();
+    }
 
-            // me.lucko.jarrelocator.Relocation(String, String, Collection, Collection)
-            relocationConstructor = relocationClass.getConstructor(String.class, String.class, Collection.class, Collection.class);
-        } catch (ReflectiveOperationException e) {
-            throw new RuntimeException(e);
+    /**
+     * Releases the reference of this relocation helper to the shared
+     * relocation engine. This relocation helper can't relocate jars anymore.
+     */
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            engine.apply(SharedRelocationEngine.RELEASE, null);
         }
     }
 
     /**
-     * Invokes the jar relocator to process the input jar and generate an
+     * Invokes the relocation engine to process the input jar and generate an
      * output jar with the provided relocation rules applied.
      *
      * @param in          input jar
@@ -109,22 +115,163 @@ public class RelocationHelper {
     public void relocate(Path in, Path out, Collection<Relocation> relocations) {
         requireNonNull(in, "in");
         requireNonNull(out, "out");
+
+        relocate(Collections.singletonList(in), Collections.singletonList(out), relocations);
+    }
+
+    /**
+     * Invokes the relocation engine to process several input jars with the
+     * same relocation rules in a single pass. The rules are compiled once
+     * and the jars are relocated one after another without any pause
+     * between them, which is faster than relocating them separately.
+     *
+     * @param in          input jars
+     * @param out         output jars, in the same order as the input jars
+     * @param relocations relocations to apply
+     */
+    public void relocate(List<Path> in, List<Path> out, Collection<Relocation> relocations) {
+        requireNonNull(in, "in");
+        requireNonNull(out, "out");
         requireNonNull(relocations, "relocations");
+        if (in.size() != out.size()) {
+            throw new IllegalArgumentException("in and out must have the same size");
+        }
 
-        try {
-            List<Object> rules = new LinkedList<>();
-            for (Relocation relocation : relocations) {
-                rules.add(relocationConstructor.newInstance(
-                    relocation.getPattern(),
-                    relocation.getRelocatedPattern(),
-                    relocation.getIncludes(),
-                    relocation.getExcludes()
-                ));
+        int size = relocations.size();
+        String[] patterns = new String[size];
+        String[] relocatedPatterns = new String[size];
+        String[][] includes = new String[size][];
+        String[][] excludes = new String[size][];
+
+        int i = 0;
+        for (Relocation relocation : relocations) {
+            patterns[i] = relocation.getPattern();
+            relocatedPatterns[i] = relocation.getRelocatedPattern();
+            includes[i] = relocation.getIncludes().toArray(new String[0]);
+            excludes[i] = relocation.getExcludes().toArray(new String[0]);
+            i++;
+        }
+
+        if (closed.get()) {
+            throw new IllegalStateException("Relocation helper closed");
+        }
+        engine.apply(SharedRelocationEngine.RELOCATE, new Object[] {in.toArray(new Path[0]), out.toArray(new Path[0]), patterns, relocatedPatterns, includes, excludes});
+    }
+
+    /**
+     * Acquires a reference to the shared relocation engine, creating and
+     * publishing it if no copy of Libby published it yet.
+     *
+     * @param libraryManager the library manager used to download dependencies
+     *                       if the engine has to be created
+     * @return the shared relocation engine
+     */
+    @SuppressWarnings("unchecked")
+    private static synchronized BiFunction<String, Object[], Object> acquireEngine(LibraryManager libraryManager) {
+        Properties properties = System.getProperties();
+        while (true) {
+            Object published = properties.get(ENGINE_PROPERTY);
+            if (published instanceof BiFunction) {
+                BiFunction<String, Object[], Object> engine = (BiFunction<String, Object[], Object>) published;
+                if ((Boolean) engine.apply(SharedRelocationEngine.ACQUIRE, null)) {
+                    return engine;
+                }
+                // Closed by its last user in the meantime, which unpublished it
+                continue;
+            }
+
+            BiFunction<String, Object[], Object> engine = createEngine(libraryManager);
+            // An unexpected value of the property isn't replaced, the engine is only used by this copy of Libby then
+            if (published != null || properties.putIfAbsent(ENGINE_PROPERTY, engine) == null) {
+                return engine;
             }
+            // Published by another copy of Libby in the meantime
+            engine.apply(SharedRelocationEngine.RELEASE, null);
+        }
+    }
 
-            jarRelocatorRunMethod.invoke(jarRelocatorConstructor.newInstance(in.toFile(), out.toFile(), rules));
-        } catch (ReflectiveOperationException e) {
+    /**
+     * Downloads ASM with the provided library manager and creates a new
+     * relocation engine, with a single reference owned by the caller.
+     *
+     * @param libraryManager the library manager used to download dependencies
+     * @return the created relocation engine
+     */
+    @SuppressWarnings("unchecked")
+    private static BiFunction<String, Object[], Object> createEngine(LibraryManager libraryManager) {
+        IsolatedClassLoader classLoader = new EngineClassLoader();
+        try {
+            // ObjectWeb ASM Commons
+            classLoader.addPath(libraryManager.downloadLibrary(
+                Library.builder()
+                       .groupId("org.ow2.asm")
+                       .artifactId("asm-commons")
+                       .version("9.2")
+                       .checksum("vkzlMTiiOLtSLNeBz5Hzulzi9sqT7GLUahYqEnIl4KY=")
+                       .repository(Repositories.MAVEN_CENTRAL)
+                       .build()
+            ));
+
+            // ObjectWeb ASM
+            classLoader.addPath(libraryManager.downloadLibrary(
+                Library.builder()
+                       .groupId("org.ow2.asm")
+                       .artifactId("asm")
+                       .version("9.2")
+                       .checksum("udT+TXGTjfOIOfDspCqqpkz4sxPWeNoDbwyzyhmbR/U=")
+                       .repository(Repositories.MAVEN_CENTRAL)
+                       .build()
+            ));
+
+            // net.byteflux.libby.relocation.SharedRelocationEngine(String, int)
+            Class<?> engineClass = classLoader.loadClass(ENGINE_PACKAGE + "SharedRelocationEngine");
+            return (BiFunction<String, Object[], Object>) engineClass.getConstructor(String.class, int.class).newInstance(ENGINE_PROPERTY, Runtime.getRuntime().availableProcessors());
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            try {
+                classLoader.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * A class loader containing ASM, which defines the classes of the
+     * relocation engine from this copy of Libby. Every class of the engine,
+     * including nested and synthetic classes, is found when it's first
+     * loaded, since ASM isn't visible from the class loader of this class.
+     */
+    private static class EngineClassLoader extends IsolatedClassLoader {
+        static {
+            ClassLoader.registerAsParallelCapable();
+        }
+
+        /**
+         * Finds a class of the relocation engine or of ASM.
+         *
+         * @param name the binary name of the class
+         * @return the found class
+         * @throws ClassNotFoundException if the class doesn't exist
+         */
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            if (!name.startsWith(ENGINE_PACKAGE) || name.indexOf('.', ENGINE_PACKAGE.length()) != -1) {
+                return super.findClass(name);
+            }
+
+            InputStream classBytes = RelocationHelper.class.getResourceAsStream('/' + name.replace('.', '/') + ".class");
+            if (classBytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            try {
+                return defineClass(name, classBytes);
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
 }
@@ -0,0 +1,148 @@
+package net.byteflux.libby.relocation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.function.BiFunction;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A reference-counted {@link AsmRelocator} shared by every copy of Libby in
+ * the JVM. Copies of Libby relocated into different plugins are different
+ * classes, so the engine is published in the system properties as a
+ * {@link BiFunction}, which every copy knows, taking an operation and its
+ * arguments:
+ * <ul>
+ *     <li>{@value #ACQUIRE}, without arguments, adds a reference to the engine
+ *     and returns {@code true}, or returns {@code false} if the engine has been
+ *     closed in the meantime;</li>
+ *     <li>{@value #RELEASE}, without arguments, removes a reference, the engine
+ *     being unpublished and closed together with its class loader once no
+ *     reference is left;</li>
+ *     <li>{@value #RELOCATE}, with the arguments of
+ *     {@link AsmRelocator#relocate(Path[], Path[], String[], String[], String[][], String[][])},
+ *     relocates jars, throwing {@link UncheckedIOException} if a jar couldn't
+ *     be read or written.</li>
+ * </ul>
+ * <p>
+ * This class is loaded by the class loader containing ASM, like
+ * {@link AsmRelocator}.
+ *
+ * @see RelocationHelper
+ */
+public class SharedRelocationEngine implements BiFunction<String, Object[], Object> {
+    /**
+     * Operation adding a reference to the engine
+     */
+    public static final String ACQUIRE = "acquire";
+
+    /**
+     * Operation removing a reference from the engine
+     */
+    public static final String RELEASE = "release";
+
+    /**
+     * Operation relocating jars
+     */
+    public static final String RELOCATE = "relocate";
+
+    /**
+     * System property the engine is published under
+     */
+    private final String property;
+
+    /**
+     * Relocation engine
+     */
+    private final AsmRelocator relocator;
+
+    /**
+     * Number of references to the engine, starting with the one of its creator
+     */
+    private int references = 1;
+
+    /**
+     * Whether the engine has been closed
+     */
+    private boolean closed;
+
+    /**
+     * Creates a new shared relocation engine, with a single reference owned
+     * by its creator.
+     *
+     * @param property system property the engine is published under
+     * @param threads  number of threads relocating the entries of a jar
+     */
+    public SharedRelocationEngine(String property, int threads) {
+        this.property = requireNonNull(property, "property");
+        relocator = new AsmRelocator(threads);
+    }
+
+    /**
+     * Performs an operation on the engine.
+     *
+     * @param operation the operation
+     * @param args      the arguments of the operation
+     * @return the result of the operation
+     */
+    @Override
+    public Object apply(String operation, Object[] args) {
+        switch (requireNonNull(operation, "operation")) {
+            case ACQUIRE:
+                return acquire();
+            case RELEASE:
+                release();
+                return null;
+            case RELOCATE:
+                try {
+                    relocator.relocate((Path[]) args[0], (Path[]) args[1], (String[]) args[2], (String[]) args[3], (String[][]) args[4], (String[][]) args[5]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    /**
+     * Adds a reference to the engine.
+     *
+     * @return true if the reference was added, false if the engine has been closed
+     */
+    private synchronized boolean acquire() {
+        if (closed) {
+            return false;
+        }
+        references++;
+        return true;
+    }
+
+    /**
+     * Removes a reference from the engine, unpublishing and closing it once
+     * no reference is left.
+     */
+    private void release() {
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Relocation engine already closed");
+            }
+            if (--references > 0) {
+                return;
+            }
+
+            // Unpublished before the lock is released, so that nobody finds the closed engine
+            closed = true;
+            System.getProperties().remove(property, this);
+        }
+
+        relocator.close();
+        try {
+            ((Closeable) getClass().getClassLoader()).close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
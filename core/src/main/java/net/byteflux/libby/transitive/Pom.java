@@ -0,0 +1,416 @@
+package net.byteflux.libby.transitive;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * The parts of a Maven POM needed to resolve transitive dependencies: its
+ * coordinates, parent, properties, dependency management and dependencies.
+ * Profiles, build configuration and everything else are ignored.
+ *
+ * @see PomDependencyResolver
+ */
+class Pom {
+    /**
+     * Shared StAX factory, which doesn't resolve DTDs or external entities
+     */
+    private static final XMLInputFactory XML_INPUT_FACTORY = newXmlInputFactory();
+
+    /**
+     * Path of dependencies in a POM
+     */
+    private static final String DEPENDENCY = "project/dependencies/dependency";
+
+    /**
+     * Path of managed dependencies in a POM
+     */
+    private static final String MANAGED_DEPENDENCY = "project/dependencyManagement/dependencies/dependency";
+
+    /**
+     * Parent coordinates, or null if there's no parent
+     */
+    String parentGroupId, parentArtifactId, parentVersion;
+
+    /**
+     * Project coordinates, null if inherited from the parent
+     */
+    String groupId, artifactId, version;
+
+    /**
+     * Declared properties
+     */
+    final Map<String, String> properties = new LinkedHashMap<>();
+
+    /**
+     * Managed dependencies
+     */
+    final List<Dependency> dependencyManagement = new ArrayList<>();
+
+    /**
+     * Dependencies
+     */
+    final List<Dependency> dependencies = new ArrayList<>();
+
+    /**
+     * Gets whether this POM has a parent.
+     *
+     * @return true if this POM has a parent, false otherwise
+     */
+    boolean hasParent() {
+        return parentGroupId != null && parentArtifactId != null && parentVersion != null;
+    }
+
+    /**
+     * Creates a new POM inheriting from the provided parent, as Maven does
+     * before interpolating properties. Properties, managed dependencies and
+     * dependencies of this POM override the ones of the parent.
+     *
+     * @param parent the parent POM, itself already inheriting from its parents
+     * @return inheriting POM
+     */
+    Pom inherit(Pom parent) {
+        Pom pom = new Pom();
+        pom.parentGroupId = parentGroupId;
+        pom.parentArtifactId = parentArtifactId;
+        pom.parentVersion = parentVersion;
+        pom.groupId = groupId != null ? groupId : parentGroupId;
+        pom.artifactId = artifactId;
+        pom.version = version != null ? version : parentVersion;
+
+        pom.properties.putAll(parent.properties);
+        pom.properties.putAll(properties);
+
+        pom.dependencyManagement.addAll(dependencyManagement);
+        pom.dependencyManagement.addAll(withoutOverridden(parent.dependencyManagement, dependencyManagement));
+
+        pom.dependencies.addAll(withoutOverridden(parent.dependencies, dependencies));
+        pom.dependencies.addAll(dependencies);
+        return pom;
+    }
+
+    /**
+     * Gets the dependencies of a parent POM which aren't overridden by its child.
+     *
+     * @param inherited the dependencies of the parent
+     * @param declared  the dependencies of the child
+     * @return the dependencies which aren't overridden
+     */
+    private static List<Dependency> withoutOverridden(List<Dependency> inherited, List<Dependency> declared) {
+        Set<String> keys = new HashSet<>();
+        for (Dependency dependency : declared) {
+            keys.add(dependency.getManagementKey());
+        }
+
+        List<Dependency> dependencies = new ArrayList<>();
+        for (Dependency dependency : inherited) {
+            if (!keys.contains(dependency.getManagementKey())) {
+                dependencies.add(dependency);
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * Reads a POM.
+     *
+     * @param in the POM contents
+     * @return read POM
+     * @throws IOException if the POM couldn't be read or isn't valid XML
+     */
+    static Pom read(InputStream in) throws IOException {
+        Pom pom = new Pom();
+        try {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+            try {
+                StringBuilder path = new StringBuilder();
+                Dependency dependency = null;
+                String exclusionGroupId = null, exclusionArtifactId = null;
+
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = reader.getLocalName();
+                        String parent = path.toString();
+                        String current = parent.isEmpty() ? name : parent + '/' + name;
+
+                        if (current.equals(DEPENDENCY) || current.equals(MANAGED_DEPENDENCY)) {
+                            dependency = new Dependency();
+                        } else if (dependency != null && current.endsWith("/exclusions/exclusion")) {
+                            exclusionGroupId = exclusionArtifactId = null;
+                        } else if (dependency != null && parent.endsWith("/exclusions/exclusion")) {
+                            String text = reader.getElementText().trim();
+                            if (name.equals("groupId")) {
+                                exclusionGroupId = text;
+                            } else if (name.equals("artifactId")) {
+                                exclusionArtifactId = text;
+                            }
+                            continue;
+                        } else if (dependency != null && (parent.equals(DEPENDENCY) || parent.equals(MANAGED_DEPENDENCY))) {
+                            if (!name.equals("exclusions")) {
+                                dependency.set(name, reader.getElementText().trim());
+                                continue;
+                            }
+                        } else if (parent.equals("project/properties")) {
+                            pom.properties.put(name, reader.getElementText().trim());
+                            continue;
+                        } else if (parent.equals("project/parent")) {
+                            String text = reader.getElementText().trim();
+                            switch (name) {
+                                case "groupId":
+                                    pom.parentGroupId = text;
+                                    break;
+                                case "artifactId":
+                                    pom.parentArtifactId = text;
+                                    break;
+                                case "version":
+                                    pom.parentVersion = text;
+                                    break;
+                            }
+                            continue;
+                        } else if (parent.equals("project")) {
+                            switch (name) {
+                                case "groupId":
+                                    pom.groupId = reader.getElementText().trim();
+                                    continue;
+                                case "artifactId":
+                                    pom.artifactId = reader.getElementText().trim();
+                                    continue;
+                                case "version":
+                                    pom.version = reader.getElementText().trim();
+                                    continue;
+                            }
+                        }
+
+                        if (path.length() > 0) {
+                            path.append('/');
+                        }
+                        path.append(name);
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        String current = path.toString();
+                        if (dependency != null && current.equals(DEPENDENCY)) {
+                            pom.dependencies.add(dependency);
+                            dependency = null;
+                        } else if (dependency != null && current.equals(MANAGED_DEPENDENCY)) {
+                            pom.dependencyManagement.add(dependency);
+                            dependency = null;
+                        } else if (dependency != null && current.endsWith("/exclusions/exclusion") && exclusionGroupId != null && exclusionArtifactId != null) {
+                            dependency.exclusions.add(exclusionGroupId + ':' + exclusionArtifactId);
+                        }
+
+                        int index = path.lastIndexOf("/");
+                        path.setLength(Math.max(index, 0));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid POM", e);
+        }
+        return pom;
+    }
+
+    /**
+     * Reads the timestamped version of the unclassified POM of a snapshot
+     * from its maven-metadata.xml.
+     *
+     * @param in      the maven-metadata.xml contents
+     * @param version the snapshot version, ending with {@code -SNAPSHOT}
+     * @return timestamped version or null if the metadata doesn't have one,
+     * like the metadata of local repositories
+     * @throws IOException if the metadata couldn't be read or isn't valid XML
+     */
+    static String readSnapshotVersion(InputStream in, String version) throws IOException {
+        String timestamp = null, buildNumber = null;
+        try {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+            try {
+                boolean inSnapshot = false, inSnapshotVersion = false;
+                String versionClassifier = "", versionExtension = null, versionValue = null;
+
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if (name.equals("snapshot")) {
+                            inSnapshot = true;
+                        } else if (name.equals("snapshotVersion")) {
+                            inSnapshotVersion = true;
+                            versionClassifier = "";
+                            versionExtension = versionValue = null;
+                        } else if (inSnapshot && name.equals("timestamp")) {
+                            timestamp = reader.getElementText().trim();
+                        } else if (inSnapshot && name.equals("buildNumber")) {
+                            buildNumber = reader.getElementText().trim();
+                        } else if (inSnapshotVersion && name.equals("classifier")) {
+                            versionClassifier = reader.getElementText().trim();
+                        } else if (inSnapshotVersion && name.equals("extension")) {
+                            versionExtension = reader.getElementText().trim();
+                        } else if (inSnapshotVersion && name.equals("value")) {
+                            versionValue = reader.getElementText().trim();
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if (name.equals("snapshot")) {
+                            inSnapshot = false;
+                        } else if (name.equals("snapshotVersion")) {
+                            inSnapshotVersion = false;
+                            if ("pom".equals(versionExtension) && versionClassifier.isEmpty() && versionValue != null && !versionValue.isEmpty()) {
+                                return versionValue;
+                            }
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid maven-metadata.xml", e);
+        }
+
+        // Older metadata only has the <snapshot> tag
+        if (timestamp == null || timestamp.isEmpty() || buildNumber == null || buildNumber.isEmpty()) {
+            return null;
+        }
+        return version.substring(0, version.length() - "SNAPSHOT".length()) + timestamp + '-' + buildNumber;
+    }
+
+    /**
+     * Creates a StAX factory which doesn't resolve DTDs or external entities.
+     *
+     * @return new StAX factory
+     */
+    private static XMLInputFactory newXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        return factory;
+    }
+
+    /**
+     * A dependency or managed dependency declared in a POM.
+     */
+    static class Dependency {
+        /**
+         * Dependency coordinates
+         */
+        String groupId, artifactId, version, type, classifier;
+
+        /**
+         * Dependency scope, null if not declared
+         */
+        String scope;
+
+        /**
+         * Dependency optionality, null if not declared
+         */
+        String optional;
+
+        /**
+         * Excluded transitive dependencies, as {@code groupId:artifactId}
+         */
+        final List<String> exclusions = new ArrayList<>();
+
+        /**
+         * Sets a field from a child element of the dependency.
+         *
+         * @param name the element name
+         * @param text the element text
+         */
+        private void set(String name, String text) {
+            switch (name) {
+                case "groupId":
+                    groupId = text;
+                    break;
+                case "artifactId":
+                    artifactId = text;
+                    break;
+                case "version":
+                    version = text;
+                    break;
+                case "type":
+                    type = text;
+                    break;
+                case "classifier":
+                    classifier = text;
+                    break;
+                case "scope":
+                    scope = text;
+                    break;
+                case "optional":
+                    optional = text;
+                    break;
+            }
+        }
+
+        /**
+         * Gets the type of the dependency.
+         *
+         * @return dependency type, {@code jar} if not declared
+         */
+        String getType() {
+            return type == null || type.isEmpty() ? "jar" : type;
+        }
+
+        /**
+         * Gets the key identifying this dependency in a dependency management.
+         *
+         * @return management key
+         */
+        String getManagementKey() {
+            return groupId + ':' + artifactId + ':' + getType() + ':' + (classifier == null ? "" : classifier);
+        }
+
+        /**
+         * Creates a copy of this dependency with the version, scope and
+         * exclusions of its managed dependency applied.
+         *
+         * @param managed the managed dependency
+         * @return managed dependency
+         */
+        Dependency manage(Dependency managed) {
+            Dependency dependency = interpolate(UnaryOperator.identity());
+            if (managed.version != null && !managed.version.isEmpty()) {
+                dependency.version = managed.version;
+            }
+            if (managed.scope != null) {
+                dependency.scope = managed.scope;
+            }
+            dependency.exclusions.addAll(managed.exclusions);
+            return dependency;
+        }
+
+        /**
+         * Creates a copy of this dependency with every property interpolated.
+         *
+         * @param interpolator the property interpolator, which returns null for null values
+         * @return interpolated dependency
+         */
+        Dependency interpolate(UnaryOperator<String> interpolator) {
+            Dependency dependency = new Dependency();
+            dependency.groupId = interpolator.apply(groupId);
+            dependency.artifactId = interpolator.apply(artifactId);
+            dependency.version = interpolator.apply(version);
+            dependency.type = interpolator.apply(type);
+            dependency.classifier = interpolator.apply(classifier);
+            dependency.scope = interpolator.apply(scope);
+            dependency.optional = interpolator.apply(optional);
+            for (String exclusion : exclusions) {
+                dependency.exclusions.add(interpolator.apply(exclusion));
+            }
+            return dependency;
+        }
+    }
+}
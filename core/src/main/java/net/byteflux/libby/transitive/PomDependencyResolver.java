@@ -0,0 +1,611 @@
+package net.byteflux.libby.transitive;
+
+import net.byteflux.libby.Library;
+import net.byteflux.libby.LibraryManager;
+import net.byteflux.libby.transport.TransportResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A lightweight transitive dependency resolver which reads POMs directly,
+ * without downloading and loading Maven Resolver.
+ * <p>
+ * POMs are streamed with StAX and support parent POMs, properties,
+ * dependency management, imported BOMs and exclusions. Only compile and
+ * runtime, non-optional dependencies are resolved, and version conflicts are
+ * mediated like Maven does: the dependency nearest to a root wins, then the
+ * first declared one. Profiles aren't evaluated and version ranges are
+ * approximated by their lower bound, so {@link TransitiveDependencyHelper}
+ * should be preferred for unusual POMs.
+ * <p>
+ * Downloaded POMs are saved in the save directory with the Maven repository
+ * layout, so they're only downloaded once.
+ *
+ * @see LibraryManager#setNativeTransitiveResolution(boolean)
+ */
+public class PomDependencyResolver implements TransitiveDependencyResolver {
+    /**
+     * Pattern of property expressions
+     */
+    private static final Pattern PROPERTY_PATTERN = Pattern.compile("\\$\\{([^}]+)}");
+
+    /**
+     * LibraryManager instance, used to access its transport and repositories
+     */
+    private final LibraryManager libraryManager;
+
+    /**
+     * Directory where POMs are saved
+     */
+    private final Path saveDirectory;
+
+    /**
+     * POMs with their parents merged in but not interpolated, by coordinates
+     */
+    private final Map<String, Pom> inheritedPoms = new HashMap<>();
+
+    /**
+     * Effective POMs, by coordinates
+     */
+    private final Map<String, Pom> effectivePoms = new HashMap<>();
+
+    /**
+     * Creates a new POM dependency resolver.
+     *
+     * @param libraryManager the library manager used to download POMs
+     * @param saveDirectory  the directory where downloaded POMs are saved
+     */
+    public PomDependencyResolver(LibraryManager libraryManager, Path saveDirectory) {
+        this.libraryManager = requireNonNull(libraryManager, "libraryManager");
+        this.saveDirectory = requireNonNull(saveDirectory, "saveDirectory");
+    }
+
+    /**
+     * Finds the transitive libraries of several libraries at once, by walking
+     * their POMs breadth-first.
+     * <p>
+     * The edges of the graph are kept, including the ones to dependencies
+     * which lost the mediation, so the transitive libraries of each library
+     * are then found by walking its own subtree with the winning versions.
+     * <p>
+     * Note: The method merges the repositories from both the library manager and the given libraries
+     * for dependency resolution.
+     *
+     * @param libraries the primary libraries for which transitive dependencies need to be found
+     * @return the transitive libraries of each provided library, by library,
+     * not including the provided libraries themselves
+     * @throws UncheckedIOException if a POM couldn't be downloaded or read
+     */
+    @Override
+    public synchronized Map<Library, Collection<Library>> findTransitiveLibraries(Collection<Library> libraries) {
+        requireNonNull(libraries, "libraries");
+        if (libraries.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Library first = libraries.iterator().next();
+        List<String> repositories = Stream.concat(libraryManager.getRepositories().stream(), libraries.stream().flatMap(library -> library.getRepositories().stream()))
+                                          .distinct()
+                                          .collect(Collectors.toList());
+
+        // Roots come first, so their versions always win
+        Set<String> resolved = new HashSet<>();
+        Queue<Node> queue = new ArrayDeque<>();
+        for (Library library : libraries) {
+            String key = getKey(library);
+            resolved.add(key);
+            Set<String> exclusions = new HashSet<>();
+            library.getExcludedTransitiveDependencies().forEach(excluded -> exclusions.add(excluded.getGroupId() + ':' + excluded.getArtifactId()));
+            queue.add(new Node(key, library.getGroupId(), library.getArtifactId(), library.getVersion(), exclusions, null));
+        }
+
+        // The winning library and the dependencies of every node, by key
+        Map<String, Library> winners = new HashMap<>();
+        Map<String, Set<String>> edges = new HashMap<>();
+        Node node;
+        while ((node = queue.poll()) != null) {
+            Pom pom = getEffectivePom(node.groupId, node.artifactId, node.version, repositories, new HashSet<>());
+            if (pom == null) {
+                continue;
+            }
+
+            // The dependency management of a root, with its imported BOMs, applies to its whole subtree like Maven does
+            Map<String, Pom.Dependency> management = node.management;
+            if (management == null) {
+                management = new HashMap<>();
+                for (Pom.Dependency managed : pom.dependencyManagement) {
+                    management.putIfAbsent(managed.getManagementKey(), managed);
+                }
+            }
+
+            Set<String> dependencies = edges.computeIfAbsent(node.key, key -> new LinkedHashSet<>());
+            for (Pom.Dependency declared : pom.dependencies) {
+                Pom.Dependency managed = management.get(declared.getManagementKey());
+                Pom.Dependency dependency = managed != null ? declared.manage(managed) : declared;
+                if (!isResolvable(dependency, node) || isExcluded(dependency, node.exclusions)) {
+                    continue;
+                }
+
+                // Nearest wins, the first time a dependency is found is the nearest to a root
+                String key = dependency.getManagementKey();
+                dependencies.add(key);
+                if (!resolved.add(key)) {
+                    continue;
+                }
+
+                Set<String> exclusions = new HashSet<>(node.exclusions);
+                exclusions.addAll(dependency.exclusions);
+                String version = getVersion(dependency.version);
+                queue.add(new Node(key, dependency.groupId, dependency.artifactId, version, exclusions, management));
+
+                Library.Builder libraryBuilder = Library.builder()
+                                                        .groupId(dependency.groupId)
+                                                        .artifactId(dependency.artifactId)
+                                                        .version(version);
+                if (dependency.classifier != null && !dependency.classifier.isEmpty()) {
+                    libraryBuilder.classifier(dependency.classifier);
+                }
+
+                first.getRelocations().forEach(libraryBuilder::relocate);
+                first.getRepositories().forEach(libraryBuilder::repository);
+
+                winners.put(key, libraryBuilder.build());
+            }
+        }
+
+        Map<Library, Collection<Library>> transitiveLibraries = new LinkedHashMap<>();
+        for (Library library : libraries) {
+            transitiveLibraries.put(library, getSubtree(getKey(library), winners, edges));
+        }
+        return transitiveLibraries;
+    }
+
+    /**
+     * Walks the subtree of a node breadth-first and collects its winning
+     * libraries. Other roots are walked through but aren't collected.
+     *
+     * @param root    the key of the node
+     * @param winners the winning library of every transitive dependency, by key
+     * @param edges   the dependencies of every node, by key
+     * @return the transitive libraries of the node
+     */
+    private static List<Library> getSubtree(String root, Map<String, Library> winners, Map<String, Set<String>> edges) {
+        List<Library> subtree = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        visited.add(root);
+        Queue<String> queue = new ArrayDeque<>();
+        queue.add(root);
+
+        String key;
+        while ((key = queue.poll()) != null) {
+            for (String dependency : edges.getOrDefault(key, Collections.emptySet())) {
+                if (!visited.add(dependency)) {
+                    continue;
+                }
+
+                Library winner = winners.get(dependency);
+                if (winner != null) {
+                    subtree.add(winner);
+                }
+                queue.add(dependency);
+            }
+        }
+        return subtree;
+    }
+
+    /**
+     * Gets the key of a root library, identifying it like a dependency.
+     *
+     * @param library the library
+     * @return key of the library
+     * @see Pom.Dependency#getManagementKey()
+     */
+    private static String getKey(Library library) {
+        return library.getGroupId() + ':' + library.getArtifactId() + ":jar:" + (library.hasClassifier() ? library.getClassifier() : "");
+    }
+
+    /**
+     * Gets whether a dependency is a compile or runtime, non-optional jar
+     * dependency with a known version.
+     *
+     * @param dependency the dependency
+     * @param node       the artifact declaring the dependency
+     * @return true if the dependency is resolvable, false otherwise
+     * @throws RuntimeException if the version of the dependency references an unknown property
+     */
+    private static boolean isResolvable(Pom.Dependency dependency, Node node) {
+        if (dependency.groupId == null || dependency.artifactId == null || dependency.version == null) {
+            return false;
+        }
+        if ("true".equals(dependency.optional)) {
+            return false;
+        }
+        if (dependency.scope != null && !dependency.scope.equals("compile") && !dependency.scope.equals("runtime")) {
+            return false;
+        }
+
+        String type = dependency.getType();
+        if (!type.equals("jar") && !type.equals("bundle")) {
+            return false;
+        }
+
+        // Maven fails on uninterpolated versions too, since they can't be resolved
+        if (dependency.version.contains("${")) {
+            throw new RuntimeException("Cannot resolve version " + dependency.version + " of " + dependency.groupId + ':' + dependency.artifactId
+                                       + ", required by " + node.groupId + ':' + node.artifactId + ':' + node.version);
+        }
+        return true;
+    }
+
+    /**
+     * Gets whether a dependency is excluded.
+     *
+     * @param dependency the dependency
+     * @param exclusions the exclusions, as {@code groupId:artifactId} which can be {@code *}
+     * @return true if the dependency is excluded, false otherwise
+     */
+    private static boolean isExcluded(Pom.Dependency dependency, Set<String> exclusions) {
+        return exclusions.contains(dependency.groupId + ':' + dependency.artifactId)
+            || exclusions.contains(dependency.groupId + ":*")
+            || exclusions.contains("*:" + dependency.artifactId)
+            || exclusions.contains("*:*");
+    }
+
+    /**
+     * Gets a concrete version from a declared version, approximating version
+     * ranges by their lower bound, or their upper bound if there's no lower bound.
+     *
+     * @param version the declared version
+     * @return concrete version
+     */
+    private static String getVersion(String version) {
+        if (!version.startsWith("[") && !version.startsWith("(")) {
+            return version;
+        }
+
+        // Only the first range of a union of ranges is considered
+        int end = version.indexOf(']') != -1 ? version.indexOf(']') : version.length();
+        if (version.indexOf(')') != -1 && version.indexOf(')') < end) {
+            end = version.indexOf(')');
+        }
+        String[] bounds = version.substring(1, end).split(",", -1);
+        String lower = bounds[0].trim();
+        return !lower.isEmpty() ? lower : bounds[bounds.length - 1].trim();
+    }
+
+    /**
+     * Gets the effective POM of an artifact, with its parents merged in, its
+     * properties interpolated, its BOMs imported and the versions of its
+     * dependencies managed.
+     *
+     * @param groupId      Maven group ID
+     * @param artifactId   Maven artifact ID
+     * @param version      artifact version
+     * @param repositories repositories to download POMs from
+     * @param visiting     coordinates of the POMs being built, to break cycles
+     * @return effective POM or null if the POM doesn't exist
+     */
+    private Pom getEffectivePom(String groupId, String artifactId, String version, List<String> repositories, Set<String> visiting) {
+        String coordinates = groupId + ':' + artifactId + ':' + version;
+        Pom effective = effectivePoms.get(coordinates);
+        if (effective != null || !visiting.add(coordinates)) {
+            return effective;
+        }
+
+        Pom pom = getInheritedPom(groupId, artifactId, version, repositories, new HashSet<>());
+        if (pom == null) {
+            return null;
+        }
+
+        Map<String, String> properties = new HashMap<>(pom.properties);
+        putProjectProperties(properties, "project.", pom);
+        putProjectProperties(properties, "pom.", pom);
+        putProjectProperties(properties, "", pom);
+
+        effective = new Pom();
+        effective.parentGroupId = interpolate(pom.parentGroupId, properties);
+        effective.parentArtifactId = interpolate(pom.parentArtifactId, properties);
+        effective.parentVersion = interpolate(pom.parentVersion, properties);
+        effective.groupId = interpolate(pom.groupId, properties);
+        effective.artifactId = interpolate(pom.artifactId, properties);
+        effective.version = interpolate(pom.version, properties);
+        effective.properties.putAll(properties);
+
+        List<Pom.Dependency> imports = new ArrayList<>();
+        for (Pom.Dependency managed : pom.dependencyManagement) {
+            Pom.Dependency dependency = managed.interpolate(value -> interpolate(value, properties));
+            if ("import".equals(dependency.scope) && "pom".equals(dependency.getType())) {
+                imports.add(dependency);
+            } else {
+                effective.dependencyManagement.add(dependency);
+            }
+        }
+
+        // Imported BOMs don't override what's already managed
+        for (Pom.Dependency imported : imports) {
+            if (imported.groupId == null || imported.artifactId == null || imported.version == null) {
+                continue;
+            }
+
+            Pom bom = getEffectivePom(imported.groupId, imported.artifactId, getVersion(imported.version), repositories, visiting);
+            if (bom != null) {
+                Set<String> managed = new HashSet<>();
+                effective.dependencyManagement.forEach(dependency -> managed.add(dependency.getManagementKey()));
+                for (Pom.Dependency dependency : bom.dependencyManagement) {
+                    if (managed.add(dependency.getManagementKey())) {
+                        effective.dependencyManagement.add(dependency);
+                    }
+                }
+            }
+        }
+
+        Map<String, Pom.Dependency> management = new HashMap<>();
+        effective.dependencyManagement.forEach(dependency -> management.putIfAbsent(dependency.getManagementKey(), dependency));
+        for (Pom.Dependency declared : pom.dependencies) {
+            Pom.Dependency dependency = declared.interpolate(value -> interpolate(value, properties));
+            Pom.Dependency managed = management.get(dependency.getManagementKey());
+            if (managed != null) {
+                if (dependency.version == null || dependency.version.isEmpty()) {
+                    dependency.version = managed.version;
+                }
+                if (dependency.scope == null) {
+                    dependency.scope = managed.scope;
+                }
+                dependency.exclusions.addAll(managed.exclusions);
+            }
+            effective.dependencies.add(dependency);
+        }
+
+        effectivePoms.put(coordinates, effective);
+        return effective;
+    }
+
+    /**
+     * Adds the coordinates of a POM to its properties.
+     *
+     * @param properties the properties
+     * @param prefix     the prefix of the property names
+     * @param pom        the POM
+     */
+    private static void putProjectProperties(Map<String, String> properties, String prefix, Pom pom) {
+        putIfNotNull(properties, prefix + "groupId", pom.groupId);
+        putIfNotNull(properties, prefix + "artifactId", pom.artifactId);
+        putIfNotNull(properties, prefix + "version", pom.version);
+        putIfNotNull(properties, prefix + "parent.groupId", pom.parentGroupId);
+        putIfNotNull(properties, prefix + "parent.artifactId", pom.parentArtifactId);
+        putIfNotNull(properties, prefix + "parent.version", pom.parentVersion);
+    }
+
+    /**
+     * Adds a property if its value isn't null.
+     *
+     * @param properties the properties
+     * @param name       the property name
+     * @param value      the property value
+     */
+    private static void putIfNotNull(Map<String, String> properties, String name, String value) {
+        if (value != null) {
+            properties.put(name, value);
+        }
+    }
+
+    /**
+     * Replaces the property expressions of a value. Unknown properties are
+     * left as is.
+     *
+     * @param value      the value, may be null
+     * @param properties the properties
+     * @return interpolated value, or null if the value is null
+     */
+    private static String interpolate(String value, Map<String, String> properties) {
+        // Properties can reference other properties, but not infinitely
+        for (int i = 0; value != null && value.contains("${") && i < 10; i++) {
+            Matcher matcher = PROPERTY_PATTERN.matcher(value);
+            StringBuffer interpolated = new StringBuffer();
+            while (matcher.find()) {
+                String property = properties.get(matcher.group(1));
+                if (property == null) {
+                    property = System.getProperty(matcher.group(1), matcher.group());
+                }
+                matcher.appendReplacement(interpolated, Matcher.quoteReplacement(property));
+            }
+            matcher.appendTail(interpolated);
+
+            if (interpolated.toString().equals(value)) {
+                break;
+            }
+            value = interpolated.toString();
+        }
+        return value;
+    }
+
+    /**
+     * Gets the POM of an artifact with its parents merged in.
+     *
+     * @param groupId      Maven group ID
+     * @param artifactId   Maven artifact ID
+     * @param version      artifact version
+     * @param repositories repositories to download POMs from
+     * @param visiting     coordinates of the POMs being merged, to break cycles
+     * @return POM with its parents merged in or null if the POM doesn't exist
+     */
+    private Pom getInheritedPom(String groupId, String artifactId, String version, List<String> repositories, Set<String> visiting) {
+        String coordinates = groupId + ':' + artifactId + ':' + version;
+        if (inheritedPoms.containsKey(coordinates) || !visiting.add(coordinates)) {
+            return inheritedPoms.get(coordinates);
+        }
+
+        Pom pom = readPom(groupId, artifactId, version, repositories);
+        if (pom != null && pom.hasParent()) {
+            Pom parent = getInheritedPom(pom.parentGroupId, pom.parentArtifactId, pom.parentVersion, repositories, visiting);
+            if (parent != null) {
+                pom = pom.inherit(parent);
+            }
+        }
+        if (pom != null) {
+            if (pom.groupId == null) {
+                pom.groupId = pom.parentGroupId;
+            }
+            if (pom.version == null) {
+                pom.version = pom.parentVersion;
+            }
+        }
+
+        inheritedPoms.put(coordinates, pom);
+        return pom;
+    }
+
+    /**
+     * Reads the POM of an artifact, downloading it if it isn't saved yet.
+     *
+     * @param groupId      Maven group ID
+     * @param artifactId   Maven artifact ID
+     * @param version      artifact version
+     * @param repositories repositories to download the POM from
+     * @return read POM or null if the POM wasn't found in any repository
+     * @throws UncheckedIOException if a repository couldn't be reached or the POM couldn't be read
+     */
+    private Pom readPom(String groupId, String artifactId, String version, List<String> repositories) {
+        String directory = groupId.replace('.', '/') + '/' + artifactId + '/' + version + '/';
+        String path = directory + artifactId + '-' + version + ".pom";
+        Path file = saveDirectory.resolve(path);
+        boolean snapshot = version.endsWith("-SNAPSHOT");
+
+        try {
+            if (Files.exists(file) && !snapshot) {
+                try (InputStream in = Files.newInputStream(file)) {
+                    return Pom.read(in);
+                }
+            }
+
+            IOException failure = null;
+            for (String repository : repositories) {
+                // Remote snapshots are deployed with a timestamped name, which is saved with the snapshot name
+                String url = snapshot ? getSnapshotPomUrl(repository, directory, artifactId, version) : null;
+                if (url == null) {
+                    url = repository + path;
+                }
+                if (libraryManager.getNegativeCache().isFailing(url)) {
+                    continue;
+                }
+
+                try (TransportResponse response = libraryManager.getTransport().request("GET", url, Collections.emptyMap())) {
+                    int status = response.getStatusCode();
+                    if (status == 404 || status == 410) {
+                        libraryManager.getNegativeCache().markNotFound(url);
+                        continue;
+                    }
+                    if (status / 100 != 2) {
+                        failure = new IOException("Unexpected response code " + status + " for " + url);
+                        continue;
+                    }
+
+                    Files.createDirectories(file.getParent());
+                    Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+                    try {
+                        try (InputStream in = response.getBody()) {
+                            Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+                        }
+                        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+                    } finally {
+                        Files.deleteIfExists(tmp);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                    continue;
+                }
+
+                try (InputStream in = Files.newInputStream(file)) {
+                    return Pom.read(in);
+                }
+            }
+
+            // A POM missing from every repository is treated as having no dependencies, like Maven does
+            if (failure != null) {
+                throw failure;
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read POM of " + groupId + ':' + artifactId + ':' + version, e);
+        }
+    }
+
+    /**
+     * Gets the URL of the timestamped POM of a snapshot from its maven-metadata.xml.
+     *
+     * @param repository the repository
+     * @param directory  the path of the snapshot directory in the repository
+     * @param artifactId Maven artifact ID
+     * @param version    the snapshot version
+     * @return URL of the timestamped POM or null if the repository doesn't have timestamped snapshots
+     */
+    private String getSnapshotPomUrl(String repository, String directory, String artifactId, String version) {
+        String url = repository + directory + "maven-metadata.xml";
+        if (libraryManager.getNegativeCache().isFailing(url)) {
+            return null;
+        }
+
+        try (TransportResponse response = libraryManager.getTransport().request("GET", url, Collections.emptyMap())) {
+            int status = response.getStatusCode();
+            if (status == 404 || status == 410) {
+                libraryManager.getNegativeCache().markNotFound(url);
+                return null;
+            }
+            if (status / 100 != 2) {
+                return null;
+            }
+
+            try (InputStream in = response.getBody()) {
+                String snapshotVersion = Pom.readSnapshotVersion(in, version);
+                return snapshotVersion != null ? repository + directory + artifactId + '-' + snapshotVersion + ".pom" : null;
+            }
+        } catch (IOException e) {
+            // The snapshot name is requested instead, which reports the failure
+            return null;
+        }
+    }
+
+    /**
+     * An artifact whose dependencies remain to be resolved.
+     */
+    private static class Node {
+        private final String key;
+        private final String groupId;
+        private final String artifactId;
+        private final String version;
+        private final Set<String> exclusions;
+        private final Map<String, Pom.Dependency> management;
+
+        private Node(String key, String groupId, String artifactId, String version, Set<String> exclusions, Map<String, Pom.Dependency> management) {
+            this.key = key;
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+            this.exclusions = exclusions;
+            this.management = management;
+        }
+    }
+}
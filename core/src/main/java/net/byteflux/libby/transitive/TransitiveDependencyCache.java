@@ -0,0 +1,231 @@
+package net.byteflux.libby.transitive;
+
+import net.byteflux.libby.Library;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A persistent cache of the transitive dependencies found by a
+ * {@link TransitiveDependencyHelper}, so that Maven Resolver doesn't have to
+ * be started again to resolve the dependencies of a library that was already
+ * resolved.
+ * <p>
+ * Results are keyed by the resolver which found them, the coordinates of
+ * the libraries resolved together, the repositories they were resolved from
+ * and their excluded transitive dependencies. Snapshot libraries are never cached, since their
+ * dependencies can change.
+ */
+public class TransitiveDependencyCache {
+    /**
+     * Path of the cache file
+     */
+    private final Path file;
+
+    /**
+     * Cached transitive dependencies, as space separated coordinates by cache key,
+     * with the dependencies of each library separated by a '|'
+     */
+    private Properties properties;
+
+    /**
+     * Creates a new transitive dependency cache.
+     *
+     * @param file path of the cache file
+     */
+    public TransitiveDependencyCache(Path file) {
+        this.file = requireNonNull(file, "file");
+    }
+
+    /**
+     * Gets the cached transitive dependencies of several libraries resolved together.
+     *
+     * @param resolver     the type of resolver the libraries would be resolved with
+     * @param libraries    the libraries, sharing the same relocations and repositories
+     * @param repositories the repositories of the library manager
+     * @return the transitive libraries of each library, by library, or null if they aren't cached
+     * @see TransitiveDependencyResolver#findTransitiveLibraries(Collection)
+     */
+    public synchronized Map<Library, Collection<Library>> get(Class<? extends TransitiveDependencyResolver> resolver, Collection<Library> libraries, Collection<String> repositories) {
+        if (requireNonNull(libraries, "libraries").isEmpty() || libraries.stream().anyMatch(Library::isSnapshot)) {
+            return null;
+        }
+
+        String value = getProperties().getProperty(getKey(resolver, libraries, repositories));
+        if (value == null) {
+            return null;
+        }
+
+        // The transitive dependencies of each library are separated by a '|'
+        String[] subtrees = value.split("\\|", -1);
+        if (subtrees.length != libraries.size()) {
+            return null;
+        }
+
+        Library first = libraries.iterator().next();
+        Map<String, Library> found = new HashMap<>();
+        Map<Library, Collection<Library>> transitiveLibraries = new LinkedHashMap<>();
+        int index = 0;
+        for (Library library : libraries) {
+            List<Library> libraryTransitiveLibraries = new ArrayList<>();
+            for (String coordinates : subtrees[index++].split(" ")) {
+                if (coordinates.isEmpty()) {
+                    continue;
+                }
+
+                String[] parts = coordinates.split(":");
+                if (parts.length != 3 && parts.length != 4) {
+                    return null;
+                }
+
+                // Libraries shared by several libraries are the same instance, like when they're resolved
+                Library transitiveLibrary = found.get(coordinates);
+                if (transitiveLibrary == null) {
+                    Library.Builder libraryBuilder = Library.builder()
+                                                            .groupId(parts[0])
+                                                            .artifactId(parts[1])
+                                                            .version(parts[2]);
+                    if (parts.length == 4) {
+                        libraryBuilder.classifier(parts[3]);
+                    }
+
+                    first.getRelocations().forEach(libraryBuilder::relocate);
+                    first.getRepositories().forEach(libraryBuilder::repository);
+
+                    transitiveLibrary = libraryBuilder.build();
+                    found.put(coordinates, transitiveLibrary);
+                }
+                libraryTransitiveLibraries.add(transitiveLibrary);
+            }
+            transitiveLibraries.put(library, libraryTransitiveLibraries);
+        }
+        return transitiveLibraries;
+    }
+
+    /**
+     * Caches the transitive dependencies of several libraries resolved together
+     * and saves the cache file.
+     *
+     * @param resolver            the type of resolver the libraries were resolved with
+     * @param libraries           the libraries, sharing the same relocations and repositories
+     * @param repositories        the repositories of the library manager
+     * @param transitiveLibraries the transitive libraries of each library, by library
+     * @throws IOException if the cache file couldn't be written
+     */
+    public synchronized void put(Class<? extends TransitiveDependencyResolver> resolver, Collection<Library> libraries, Collection<String> repositories, Map<Library, Collection<Library>> transitiveLibraries) throws IOException {
+        requireNonNull(transitiveLibraries, "transitiveLibraries");
+        if (requireNonNull(libraries, "libraries").isEmpty() || libraries.stream().anyMatch(Library::isSnapshot)) {
+            return;
+        }
+
+        StringBuilder value = new StringBuilder();
+        int index = 0;
+        for (Library library : libraries) {
+            if (index++ > 0) {
+                value.append('|');
+            }
+            for (Library transitiveLibrary : transitiveLibraries.getOrDefault(library, Collections.emptyList())) {
+                if (value.length() > 0 && value.charAt(value.length() - 1) != '|') {
+                    value.append(' ');
+                }
+                value.append(transitiveLibrary.getGroupId()).append(':')
+                     .append(transitiveLibrary.getArtifactId()).append(':')
+                     .append(transitiveLibrary.getVersion());
+                if (transitiveLibrary.hasClassifier()) {
+                    value.append(':').append(transitiveLibrary.getClassifier());
+                }
+            }
+        }
+        getProperties().setProperty(getKey(resolver, libraries, repositories), value.toString());
+
+        // Write to a temporary file first, so that an interrupted write doesn't corrupt the cache
+        // The temporary file name is unique, since the file may be shared with other processes
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, "Libby transitive dependency cache");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Clears the cache and deletes the cache file.
+     *
+     * @throws IOException if the cache file couldn't be deleted
+     */
+    public synchronized void clear() throws IOException {
+        properties = new Properties();
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Gets the cached properties, reading the cache file the first time.
+     *
+     * @return cached properties
+     */
+    private Properties getProperties() {
+        if (properties == null) {
+            properties = new Properties();
+            if (Files.exists(file)) {
+                try (InputStream in = Files.newInputStream(file)) {
+                    properties.load(in);
+                } catch (IOException | IllegalArgumentException e) {
+                    // A corrupted cache is just resolved again
+                    properties = new Properties();
+                }
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Gets the cache key of several libraries resolved together.
+     *
+     * @param resolver     the type of resolver
+     * @param libraries    the libraries
+     * @param repositories the repositories of the library manager
+     * @return cache key
+     */
+    private static String getKey(Class<? extends TransitiveDependencyResolver> resolver, Collection<Library> libraries, Collection<String> repositories) {
+        requireNonNull(resolver, "resolver");
+        requireNonNull(repositories, "repositories");
+
+        // Resolvers can disagree on the dependencies of a library, so their results are cached separately
+        StringBuilder key = new StringBuilder(resolver.getSimpleName());
+        for (Library library : libraries) {
+            key.append(" +");
+            key.append(library.getGroupId()).append(':')
+               .append(library.getArtifactId()).append(':')
+               .append(library.getVersion());
+            for (ExcludedDependency excludedDependency : library.getExcludedTransitiveDependencies()) {
+                key.append(" !").append(excludedDependency.getGroupId()).append(':').append(excludedDependency.getArtifactId());
+            }
+            for (String repository : library.getRepositories()) {
+                key.append(' ').append(repository);
+            }
+        }
+        for (String repository : repositories) {
+            key.append(' ').append(repository);
+        }
+        return key.toString();
+    }
+}
@@ -2,15 +2,21 @@ package net.byteflux.libby.transitive;
 
 import net.byteflux.libby.Repositories;
 import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositoryCache;
 import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositoryException;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.collection.CollectRequest;
 import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyFilter;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.graph.Exclusion;
 import org.eclipse.aether.repository.LocalRepository;
 import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
 import org.eclipse.aether.resolution.ArtifactResult;
 import org.eclipse.aether.resolution.DependencyRequest;
 import org.eclipse.aether.resolution.DependencyResolutionException;
@@ -18,12 +24,17 @@ import org.eclipse.aether.resolution.DependencyResult;
 import org.eclipse.aether.supplier.RepositorySystemSupplier;
 import org.eclipse.aether.util.artifact.JavaScopes;
 import org.eclipse.aether.util.filter.DependencyFilterUtils;
+import org.eclipse.aether.util.graph.transformer.ConflictResolver;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -51,9 +62,18 @@ class TransitiveDependencyCollector {
      * @see LocalRepository
      */
     private final Path saveDirectory;
+    /**
+     * Number of threads used to resolve dependency descriptors in parallel
+     */
+    private final int threads;
 
     public TransitiveDependencyCollector(Path saveDirectory) {
+        this(saveDirectory, 5);
+    }
+
+    public TransitiveDependencyCollector(Path saveDirectory, int threads) {
         this.saveDirectory = saveDirectory;
+        this.threads = threads;
         this.repositorySystemSession = newRepositorySystemSession(repositorySystem);
     }
 
@@ -105,6 +125,98 @@ class TransitiveDependencyCollector {
         return findTransitiveDependencies(groupId, artifactId, version, Arrays.stream(repositories).map(TransitiveDependencyCollector::newDefaultRepository).toArray(RemoteRepository[]::new));
     }
 
+    /**
+     * Resolves transitive dependencies of several maven artifacts at once. Dependencies with scope {@code JavaScopes.COMPILE}, {@code JavaScopes.RUNTIME} returned only.
+     * <p>
+     * All the artifacts are collected in a single dependency graph, so shared dependencies are only collected once and their versions are mediated across
+     * every artifact. The graph keeps the losers of version conflicts, so the dependencies of each artifact can then be found by walking its own subtree,
+     * with the winning versions. Searches provided repository urls only.
+     *
+     * @param coordinates  Maven coordinates of the artifacts, as {@code groupId:artifactId:version}
+     * @param exclusions   excluded transitive dependencies of each artifact, as {@code groupId:artifactId}
+     * @param repositories Maven repositories for transitive dependencies search
+     * @return Transitive dependencies of each artifact, in the order of the provided artifacts, exception otherwise
+     * @throws RepositoryException thrown if a dependency doesn't exists on provided repositories
+     */
+    public List<List<Artifact>> findTransitiveDependencies(String[] coordinates, String[][] exclusions, String... repositories) throws RepositoryException {
+        List<Dependency> dependencies = new ArrayList<>(coordinates.length);
+        for (int i = 0; i < coordinates.length; i++) {
+            String[] parts = coordinates[i].split(":");
+            Artifact artifact = new DefaultArtifact(parts[0], parts[1], null, "jar", parts[2]);
+
+            List<Exclusion> dependencyExclusions = new ArrayList<>(exclusions[i].length);
+            for (String exclusion : exclusions[i]) {
+                String[] excluded = exclusion.split(":");
+                dependencyExclusions.add(new Exclusion(excluded[0], excluded[1], "*", "*"));
+            }
+
+            dependencies.add(new Dependency(artifact, JavaScopes.COMPILE, false, dependencyExclusions));
+        }
+        List<RemoteRepository> repositoryList = Arrays.stream(repositories).map(TransitiveDependencyCollector::newDefaultRepository).collect(Collectors.toList());
+
+        // Losers of version conflicts are kept as leaves pointing to their winner, so each root still reaches every dependency it needs
+        DefaultRepositorySystemSession session = new DefaultRepositorySystemSession(repositorySystemSession);
+        session.setConfigProperty(ConflictResolver.CONFIG_PROP_VERBOSE, true);
+
+        CollectRequest collectRequest = new CollectRequest(dependencies, null, repositoryList);
+        DependencyNode graph = repositorySystem.collectDependencies(session, collectRequest).getRoot();
+
+        DependencyFilter filter = DependencyFilterUtils.classpathFilter(JavaScopes.COMPILE, JavaScopes.RUNTIME);
+        List<List<Artifact>> transitiveDependencies = new ArrayList<>(coordinates.length);
+        Set<DependencyNode> resolved = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<ArtifactRequest> artifactRequests = new ArrayList<>();
+        for (DependencyNode root : graph.getChildren()) {
+            List<DependencyNode> nodes = new ArrayList<>();
+            collectSubtree(getWinner(root), filter, Collections.newSetFromMap(new IdentityHashMap<>()), nodes);
+
+            List<Artifact> artifacts = new ArrayList<>(nodes.size());
+            for (DependencyNode node : nodes) {
+                artifacts.add(node.getArtifact());
+                // Shared dependencies are only resolved once
+                if (resolved.add(node)) {
+                    artifactRequests.add(new ArtifactRequest(node));
+                }
+            }
+            transitiveDependencies.add(artifacts);
+        }
+
+        repositorySystem.resolveArtifacts(repositorySystemSession, artifactRequests);
+        return transitiveDependencies;
+    }
+
+    /**
+     * Collects the nodes of the subtree of a node, depth-first, replacing the losers of version conflicts by their winner.
+     *
+     * @param node    the node
+     * @param filter  filter of the collected nodes, whose children are still walked
+     * @param visited the already walked nodes
+     * @param nodes   the collected nodes
+     */
+    private static void collectSubtree(DependencyNode node, DependencyFilter filter, Set<DependencyNode> visited, List<DependencyNode> nodes) {
+        for (DependencyNode child : node.getChildren()) {
+            DependencyNode winner = getWinner(child);
+            if (!visited.add(winner)) {
+                continue;
+            }
+
+            if (filter.accept(winner, Collections.emptyList())) {
+                nodes.add(winner);
+            }
+            collectSubtree(winner, filter, visited, nodes);
+        }
+    }
+
+    /**
+     * Gets the node which won the version conflict of a node.
+     *
+     * @param node the node
+     * @return the winner, or the node itself if it won
+     */
+    private static DependencyNode getWinner(DependencyNode node) {
+        DependencyNode winner = (DependencyNode) node.getData().get(ConflictResolver.NODE_DATA_WINNER);
+        return winner != null ? winner : node;
+    }
+
     /**
      * Resolves transitive dependencies of specific maven artifact. Dependencies with scope {@code JavaScopes.COMPILE}, {@code JavaScopes.RUNTIME} returned only. Searches maven central
      * only.
@@ -136,7 +248,16 @@ class TransitiveDependencyCollector {
         properties.putAll(System.getProperties());
 
         session.setSystemProperties(properties);
-        session.setConfigProperties(properties);
+
+        // Collect the graph breadth-first, resolving the descriptors of sibling dependencies in parallel, unless configured otherwise
+        Properties configProperties = new Properties();
+        configProperties.putAll(properties);
+        configProperties.putIfAbsent("aether.dependencyCollector.impl", "bf");
+        configProperties.putIfAbsent("aether.dependencyCollector.bf.threads", Integer.toString(threads));
+        session.setConfigProperties(configProperties);
+
+        // Descriptors and version ranges are cached across every resolution made with this session
+        session.setCache(new DefaultRepositoryCache());
 
         return session;
     }
@@ -10,7 +10,12 @@ import java.lang.reflect.Method;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -22,7 +27,7 @@ import static java.util.Objects.requireNonNull;
  *
  * @see <a href="https://github.com/apache/maven-resolver">Apache Maven Artifact Resolver</a>
  */
-public class TransitiveDependencyHelper {
+public class TransitiveDependencyHelper implements TransitiveDependencyResolver {
     /**
      * TransitiveDependencyCollector class instance, used in {@link #findTransitiveLibraries(Library)}
      */
@@ -33,6 +38,11 @@ public class TransitiveDependencyHelper {
      */
     private final Method resolveTransitiveDependenciesMethod;
 
+    /**
+     * Reflected method for resolving transitive dependencies of several libraries at once
+     */
+    private final Method resolveBulkTransitiveDependenciesMethod;
+
     /**
      * Reflected getter methods of Artifact class
      */
@@ -71,13 +81,16 @@ public class TransitiveDependencyHelper {
             Class<?> transitiveDependencyCollectorClass = classLoader.loadClass(collectorClassName);
             Class<?> artifactClass = classLoader.loadClass("org.eclipse.aether.artifact.Artifact");
 
-            // net.byteflux.libby.TransitiveDependencyCollector(Path)
-            Constructor<?> constructor = transitiveDependencyCollectorClass.getConstructor(Path.class);
+            // net.byteflux.libby.TransitiveDependencyCollector(Path, int)
+            Constructor<?> constructor = transitiveDependencyCollectorClass.getConstructor(Path.class, int.class);
             constructor.setAccessible(true);
-            transitiveDependencyCollectorObject = constructor.newInstance(saveDirectory);
+            transitiveDependencyCollectorObject = constructor.newInstance(saveDirectory, libraryManager.getTransitiveResolutionThreads());
             // net.byteflux.libby.TransitiveDependencyCollector#findTransitiveDependencies(String, String, String, String...)
             resolveTransitiveDependenciesMethod = transitiveDependencyCollectorClass.getMethod("findTransitiveDependencies", String.class, String.class, String.class, String[].class);
             resolveTransitiveDependenciesMethod.setAccessible(true);
+            // net.byteflux.libby.TransitiveDependencyCollector#findTransitiveDependencies(String[], String[][], String...)
+            resolveBulkTransitiveDependenciesMethod = transitiveDependencyCollectorClass.getMethod("findTransitiveDependencies", String[].class, String[][].class, String[].class);
+            resolveBulkTransitiveDependenciesMethod.setAccessible(true);
             // org.eclipse.aether.artifact.Artifact#getGroupId()
             artifactGetGroupIdMethod = artifactClass.getMethod("getGroupId");
             // org.eclipse.aether.artifact.Artifact#getArtifactId()
@@ -142,4 +155,80 @@ public class TransitiveDependencyHelper {
                                                                                .noneMatch(excludedDependency -> excludedDependency.similar(transitiveLibrary)))
                                   .collect(Collectors.toList());
     }
+
+    /**
+     * Finds and returns the transitive libraries of several libraries at once, as a single
+     * Maven Resolver dependency graph.
+     * <p>
+     * Note: The method merges the repositories from both the library manager and the given libraries
+     * for dependency resolution.
+     * </p>
+     *
+     * @param libraries The primary libraries for which transitive dependencies need to be found.
+     * @return The transitive libraries of each provided library, by library, not including the
+     * provided libraries themselves. Libraries shared by several provided libraries are the same instance.
+     * @throws RuntimeException If there's any exception during the reflection-based operations.
+     */
+    @Override
+    public Map<Library, Collection<Library>> findTransitiveLibraries(Collection<Library> libraries) {
+        requireNonNull(libraries, "libraries");
+        if (libraries.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Library first = libraries.iterator().next();
+        String[] repositories = Stream.concat(libraryManager.getRepositories().stream(), libraries.stream().flatMap(library -> library.getRepositories().stream()))
+                                      .distinct()
+                                      .toArray(String[]::new);
+        String[] coordinates = libraries.stream()
+                                        .map(library -> library.getGroupId() + ':' + library.getArtifactId() + ':' + library.getVersion())
+                                        .toArray(String[]::new);
+        String[][] exclusions = libraries.stream()
+                                         .map(library -> library.getExcludedTransitiveDependencies()
+                                                                .stream()
+                                                                .map(excludedDependency -> excludedDependency.getGroupId() + ':' + excludedDependency.getArtifactId())
+                                                                .toArray(String[]::new))
+                                         .toArray(String[][]::new);
+
+        Map<Library, Collection<Library>> transitiveLibraries = new LinkedHashMap<>();
+        Map<String, Library> found = new HashMap<>();
+        try {
+            List<List<Object>> artifacts = (List<List<Object>>) resolveBulkTransitiveDependenciesMethod.invoke(transitiveDependencyCollectorObject,
+                coordinates,
+                exclusions,
+                repositories);
+
+            Iterator<List<Object>> rootArtifacts = artifacts.iterator();
+            for (Library library : libraries) {
+                List<Library> libraryTransitiveLibraries = new ArrayList<>();
+                for (Object artifact : rootArtifacts.next()) {
+                    String groupId = (String) artifactGetGroupIdMethod.invoke(artifact);
+                    String artifactId = (String) artifactGetArtifactIdMethod.invoke(artifact);
+                    String version = (String) artifactGetVersionMethod.invoke(artifact);
+
+                    if (libraries.stream().anyMatch(root -> root.getGroupId().equals(groupId) && root.getArtifactId().equals(artifactId))) continue;
+
+                    Library transitiveLibrary = found.get(groupId + ':' + artifactId + ':' + version);
+                    if (transitiveLibrary == null) {
+                        Library.Builder libraryBuilder = Library.builder()
+                                                                .groupId(groupId)
+                                                                .artifactId(artifactId)
+                                                                .version(version);
+
+                        first.getRelocations().forEach(libraryBuilder::relocate);
+                        first.getRepositories().forEach(libraryBuilder::repository);
+
+                        transitiveLibrary = libraryBuilder.build();
+                        found.put(groupId + ':' + artifactId + ':' + version, transitiveLibrary);
+                    }
+                    libraryTransitiveLibraries.add(transitiveLibrary);
+                }
+                transitiveLibraries.put(library, libraryTransitiveLibraries);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+
+        return transitiveLibraries;
+    }
 }
@@ -0,0 +1,36 @@
+package net.byteflux.libby.transitive;
+
+import net.byteflux.libby.Library;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A resolver of the transitive dependencies of libraries, used by a
+ * {@link net.byteflux.libby.LibraryManager} when a library has
+ * {@link Library#resolveTransitiveDependencies()} enabled.
+ *
+ * @see TransitiveDependencyHelper
+ * @see PomDependencyResolver
+ */
+public interface TransitiveDependencyResolver {
+    /**
+     * Finds the transitive libraries of several libraries at once.
+     * <p>
+     * The provided libraries are resolved as a single dependency graph with
+     * one root per library, so dependencies shared by several libraries are
+     * only resolved once and get a single version. The excluded transitive
+     * dependencies of a library are excluded from its own subtree only.
+     * Transitive libraries get the relocations and repositories of the first
+     * library, so the provided libraries should share the same relocations.
+     * <p>
+     * Each library is mapped to its own transitive libraries, found by walking
+     * its subtree of the graph with the mediated versions, so a dependency
+     * shared by several libraries is the same instance in each of them.
+     *
+     * @param libraries the primary libraries for which transitive dependencies need to be found
+     * @return the transitive libraries of each provided library, in load order
+     * and not including the provided libraries themselves, by library
+     */
+    Map<Library, Collection<Library>> findTransitiveLibraries(Collection<Library> libraries);
+}
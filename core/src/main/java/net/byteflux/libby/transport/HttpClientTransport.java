@@ -0,0 +1,493 @@
+package net.byteflux.libby.transport;
+
+import net.byteflux.libby.LibbyProperties;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.nio.channels.UnresolvedAddressException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A reflection-based transport using the {@code java.net.http.HttpClient}
+ * available since Java 11. A single client is shared by all the requests, so
+ * that connections are reused per host and requests to HTTP/2 servers are
+ * multiplexed over the same connection.
+ * <p>
+ * Non-HTTP URLs, like the local Maven repository, are delegated to a
+ * {@link URLConnectionTransport}.
+ *
+ * @see <a href="https://openjdk.org/groups/net/httpclient/intro.html">Java HTTP Client</a>
+ */
+public class HttpClientTransport implements Transport {
+    /**
+     * Scheduler used to enforce read timeouts on response bodies, shared by
+     * the open transports
+     */
+    private static ScheduledExecutorService timeoutScheduler;
+
+    /**
+     * Number of open transports using the timeout scheduler
+     */
+    private static int openTransports;
+
+    /**
+     * The shared HTTP client instance, or null once closed
+     */
+    private volatile Object httpClient;
+
+    /**
+     * Reflected {@code shutdownNow} method of the HTTP client, available since Java 21
+     */
+    private final Method shutdownNowMethod;
+
+    /**
+     * Reflected methods of the HTTP client API
+     */
+    private final Method newRequestBuilderMethod, timeoutMethod, headerMethod, methodMethod, buildMethod, sendMethod;
+
+    /**
+     * Reflected methods of the HTTP response API
+     */
+    private final Method statusCodeMethod, headersMethod, firstValueMethod, bodyMethod, uriMethod;
+
+    /**
+     * Empty request body and input stream body handler
+     */
+    private final Object noBody, ofInputStream;
+
+    /**
+     * Transport used for non-HTTP URLs
+     */
+    private final URLConnectionTransport fallback;
+
+    /**
+     * Read timeout, in milliseconds
+     */
+    private final int readTimeout;
+
+    /**
+     * Creates a new transport.
+     *
+     * @param connectTimeout connect timeout in milliseconds
+     * @param readTimeout    read timeout in milliseconds
+     * @throws UnsupportedOperationException if the HTTP client isn't available
+     */
+    public HttpClientTransport(int connectTimeout, int readTimeout) {
+        this.readTimeout = readTimeout;
+        this.fallback = new URLConnectionTransport(connectTimeout, readTimeout);
+
+        try {
+            Class<?> httpClientClass = Class.forName("java.net.http.HttpClient");
+            Class<?> clientBuilderClass = Class.forName("java.net.http.HttpClient$Builder");
+            Class<?> versionClass = Class.forName("java.net.http.HttpClient$Version");
+            Class<?> redirectClass = Class.forName("java.net.http.HttpClient$Redirect");
+            Class<?> httpRequestClass = Class.forName("java.net.http.HttpRequest");
+            Class<?> requestBuilderClass = Class.forName("java.net.http.HttpRequest$Builder");
+            Class<?> bodyPublisherClass = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+            Class<?> bodyPublishersClass = Class.forName("java.net.http.HttpRequest$BodyPublishers");
+            Class<?> httpResponseClass = Class.forName("java.net.http.HttpResponse");
+            Class<?> bodyHandlerClass = Class.forName("java.net.http.HttpResponse$BodyHandler");
+            Class<?> bodyHandlersClass = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+            Class<?> httpHeadersClass = Class.forName("java.net.http.HttpHeaders");
+
+            // HttpClient.newBuilder().version(HTTP_2).followRedirects(NORMAL).connectTimeout(...).build()
+            Object clientBuilder = httpClientClass.getMethod("newBuilder").invoke(null);
+            clientBuilderClass.getMethod("version", versionClass).invoke(clientBuilder, versionClass.getField("HTTP_2").get(null));
+            clientBuilderClass.getMethod("followRedirects", redirectClass).invoke(clientBuilder, redirectClass.getField("NORMAL").get(null));
+            clientBuilderClass.getMethod("connectTimeout", Duration.class).invoke(clientBuilder, Duration.ofMillis(connectTimeout));
+            httpClient = clientBuilderClass.getMethod("build").invoke(clientBuilder);
+
+            // java.net.http.HttpRequest
+            newRequestBuilderMethod = httpRequestClass.getMethod("newBuilder", URI.class);
+            timeoutMethod = requestBuilderClass.getMethod("timeout", Duration.class);
+            headerMethod = requestBuilderClass.getMethod("header", String.class, String.class);
+            methodMethod = requestBuilderClass.getMethod("method", String.class, bodyPublisherClass);
+            buildMethod = requestBuilderClass.getMethod("build");
+            noBody = bodyPublishersClass.getMethod("noBody").invoke(null);
+
+            // java.net.http.HttpClient#send(HttpRequest, BodyHandler)
+            sendMethod = httpClientClass.getMethod("send", httpRequestClass, bodyHandlerClass);
+            ofInputStream = bodyHandlersClass.getMethod("ofInputStream").invoke(null);
+
+            // java.net.http.HttpResponse
+            statusCodeMethod = httpResponseClass.getMethod("statusCode");
+            headersMethod = httpResponseClass.getMethod("headers");
+            bodyMethod = httpResponseClass.getMethod("body");
+            uriMethod = httpResponseClass.getMethod("uri");
+            firstValueMethod = httpHeadersClass.getMethod("firstValue", String.class);
+
+            Method shutdownNow;
+            try {
+                shutdownNow = httpClientClass.getMethod("shutdownNow");
+            } catch (NoSuchMethodException e) {
+                shutdownNow = null;
+            }
+            shutdownNowMethod = shutdownNow;
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("The Java HTTP client is not available", e);
+        }
+
+        acquireTimeoutScheduler();
+    }
+
+    /**
+     * Gets the timeout scheduler, creating it if needed, and registers an
+     * open transport using it.
+     */
+    private static synchronized void acquireTimeoutScheduler() {
+        if (openTransports++ == 0) {
+            timeoutScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "libby-http-timeout");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Unregisters an open transport, shutting down the timeout scheduler once
+     * no transport uses it anymore.
+     */
+    private static synchronized void releaseTimeoutScheduler() {
+        if (--openTransports == 0) {
+            timeoutScheduler.shutdownNow();
+            timeoutScheduler = null;
+        }
+    }
+
+    /**
+     * Schedules a periodic read timeout check.
+     *
+     * @param check  the check to run
+     * @param period the period of the check, in milliseconds
+     * @return the scheduled check
+     * @throws IOException if every transport has been closed
+     */
+    private static synchronized ScheduledFuture<?> scheduleTimeoutCheck(Runnable check, long period) throws IOException {
+        if (timeoutScheduler == null) {
+            throw new IOException("Transport closed");
+        }
+        return timeoutScheduler.scheduleWithFixedDelay(check, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets whether the Java HTTP client is available in the current runtime.
+     *
+     * @return true if the HTTP client is available, false otherwise
+     */
+    public static boolean isSupported() {
+        try {
+            Class.forName("java.net.http.HttpClient");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    @Override
+    public TransportResponse request(String method, String url, Map<String, String> headers) throws IOException {
+        requireNonNull(method, "method");
+        requireNonNull(headers, "headers");
+
+        URI uri;
+        try {
+            uri = new URI(requireNonNull(url, "url"));
+        } catch (URISyntaxException e) {
+            return fallback.request(method, url, headers);
+        }
+
+        if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())) {
+            return fallback.request(method, url, headers);
+        }
+
+        Object httpClient = this.httpClient;
+        if (httpClient == null) {
+            throw new IOException("Transport closed");
+        }
+
+        try {
+            Object builder = newRequestBuilderMethod.invoke(null, uri);
+            timeoutMethod.invoke(builder, Duration.ofMillis(readTimeout));
+            headerMethod.invoke(builder, "User-Agent", LibbyProperties.HTTP_USER_AGENT);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                headerMethod.invoke(builder, header.getKey(), header.getValue());
+            }
+            methodMethod.invoke(builder, method, noBody);
+            Object request = buildMethod.invoke(builder);
+
+            return new Response(sendMethod.invoke(httpClient, request, ofInputStream));
+        } catch (InvocationTargetException e) {
+            throw translateException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Closes this transport. The HTTP client is shut down on Java 21+, and
+     * released to be garbage collected on older versions, which stops its
+     * threads. The timeout scheduler is shut down once every transport is
+     * closed.
+     */
+    @Override
+    public void close() {
+        Object httpClient;
+        synchronized (this) {
+            httpClient = this.httpClient;
+            this.httpClient = null;
+        }
+        if (httpClient == null) {
+            return;
+        }
+
+        try {
+            if (shutdownNowMethod != null) {
+                shutdownNowMethod.invoke(httpClient);
+            }
+        } catch (ReflectiveOperationException ignored) {
+        } finally {
+            releaseTimeoutScheduler();
+        }
+    }
+
+    /**
+     * Translates an exception thrown by the HTTP client to the equivalent
+     * exception thrown by {@link java.net.URLConnection}, so that callers can
+     * handle both transports in the same way.
+     *
+     * @param throwable the exception thrown by the HTTP client
+     * @return the translated exception
+     */
+    private static IOException translateException(Throwable throwable) {
+        if (throwable instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException exception = new InterruptedIOException("Request interrupted");
+            exception.initCause(throwable);
+            return exception;
+        }
+
+        if (throwable instanceof IOException) {
+            // java.net.http.HttpConnectTimeoutException and HttpTimeoutException, with the messages of URLConnection
+            String name = throwable.getClass().getName();
+            if (name.startsWith("java.net.http.Http") && name.endsWith("TimeoutException")) {
+                SocketTimeoutException exception = new SocketTimeoutException(name.endsWith("ConnectTimeoutException") ? "Connect timed out" : "Read timed out");
+                exception.initCause(throwable);
+                return exception;
+            }
+
+            if (throwable instanceof ConnectException && throwable.getCause() instanceof UnresolvedAddressException) {
+                UnknownHostException exception = new UnknownHostException(throwable.getMessage());
+                exception.initCause(throwable);
+                return exception;
+            }
+
+            return (IOException) throwable;
+        }
+
+        if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        }
+
+        return new IOException(throwable);
+    }
+
+    /**
+     * A response to a request made with the HTTP client.
+     */
+    private class Response implements TransportResponse {
+        /**
+         * The {@code java.net.http.HttpResponse} instance
+         */
+        private final Object response;
+
+        /**
+         * The response body, with read timeouts enforced
+         */
+        private InputStream body;
+
+        /**
+         * Creates a new response.
+         *
+         * @param response the {@code java.net.http.HttpResponse} instance
+         */
+        private Response(Object response) {
+            this.response = response;
+        }
+
+        @Override
+        public String getUrl() {
+            return invoke(uriMethod, response).toString();
+        }
+
+        @Override
+        public int getStatusCode() {
+            return (Integer) invoke(statusCodeMethod, response);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            Object headers = invoke(headersMethod, response);
+            return ((Optional<?>) invoke(firstValueMethod, headers, requireNonNull(name, "name"))).map(Object::toString).orElse(null);
+        }
+
+        @Override
+        public long getContentLength() {
+            String contentLength = getHeader("Content-Length");
+            if (contentLength == null) {
+                return -1;
+            }
+
+            try {
+                return Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = new TimeoutInputStream((InputStream) invoke(bodyMethod, response), readTimeout);
+            }
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // A body which was never read is closed directly, without scheduling its read timeout
+            InputStream in = body != null ? body : (InputStream) invoke(bodyMethod, response);
+            in.close();
+        }
+
+        /**
+         * Invokes a reflected method of the HTTP client API.
+         *
+         * @param method the method to invoke
+         * @param target the target instance
+         * @param args   the method arguments
+         * @return the method result
+         */
+        private Object invoke(Method method, Object target, Object... args) {
+            try {
+                return method.invoke(target, args);
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * An input stream which is closed if no data is read for longer than a
+     * timeout, since the HTTP client only enforces timeouts until the response
+     * headers are received. Closing the stream unblocks any pending read.
+     */
+    private static class TimeoutInputStream extends FilterInputStream {
+        /**
+         * Read timeout, in milliseconds
+         */
+        private final long timeout;
+
+        /**
+         * Time of the last read, in nanoseconds
+         */
+        private volatile long lastRead = System.nanoTime();
+
+        /**
+         * Whether the stream has been closed because of the timeout
+         */
+        private volatile boolean timedOut;
+
+        /**
+         * Periodic check of the read timeout
+         */
+        private final ScheduledFuture<?> check;
+
+        /**
+         * Creates a new timeout input stream.
+         *
+         * @param in      the stream to wrap
+         * @param timeout read timeout in milliseconds
+         * @throws IOException if every transport has been closed
+         */
+        private TimeoutInputStream(InputStream in, long timeout) throws IOException {
+            super(in);
+            this.timeout = timeout;
+            long period = Math.max(100, timeout / 4);
+            this.check = scheduleTimeoutCheck(this::checkTimeout, period);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read;
+            try {
+                read = super.read();
+            } catch (IOException e) {
+                throw timedOut ? new SocketTimeoutException("Read timed out") : e;
+            }
+            afterRead();
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read;
+            try {
+                read = super.read(b, off, len);
+            } catch (IOException e) {
+                throw timedOut ? new SocketTimeoutException("Read timed out") : e;
+            }
+            afterRead();
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            check.cancel(false);
+            super.close();
+        }
+
+        /**
+         * Updates the time of the last read or throws if the stream timed out.
+         *
+         * @throws SocketTimeoutException if the stream was closed because of the timeout
+         */
+        private void afterRead() throws SocketTimeoutException {
+            if (timedOut) {
+                throw new SocketTimeoutException("Read timed out");
+            }
+            lastRead = System.nanoTime();
+        }
+
+        /**
+         * Closes the stream if no data has been read for longer than the timeout.
+         */
+        private void checkTimeout() {
+            if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastRead) < timeout) {
+                return;
+            }
+
+            timedOut = true;
+            try {
+                close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
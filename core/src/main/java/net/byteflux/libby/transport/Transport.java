@@ -0,0 +1,71 @@
+package net.byteflux.libby.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A transport is used by a {@link net.byteflux.libby.LibraryManager} to make
+ * every request to repositories, like downloading artifacts and reading
+ * {@code maven-metadata.xml} files.
+ * <p>
+ * Implementations are expected to be thread-safe and to reuse connections to
+ * the same host when possible. A transport is closed by its library manager
+ * when the library manager is closed.
+ *
+ * @see #createDefault()
+ */
+public interface Transport extends Closeable {
+    /**
+     * Default connect timeout, in milliseconds
+     */
+    int DEFAULT_CONNECT_TIMEOUT = 5000;
+
+    /**
+     * Default read timeout, in milliseconds
+     */
+    int DEFAULT_READ_TIMEOUT = 5000;
+
+    /**
+     * Makes a request and returns the response once its headers have been
+     * received. Responses with an error status code are returned normally,
+     * while failures to reach the host are thrown.
+     * <p>
+     * The returned response must be closed to release the connection.
+     *
+     * @param method  the request method, like {@code GET} or {@code HEAD}
+     * @param url     the URL to request
+     * @param headers additional request headers
+     * @return the response
+     * @throws IOException if the host couldn't be reached or the request timed out
+     */
+    TransportResponse request(String method, String url, Map<String, String> headers) throws IOException;
+
+    /**
+     * Closes this transport, releasing its connections and threads. The
+     * default implementation does nothing.
+     *
+     * @throws IOException if the transport couldn't be closed
+     */
+    @Override
+    default void close() throws IOException {
+    }
+
+    /**
+     * Creates the default transport for the current runtime. The Java 11+
+     * HTTP client is used if available, since it supports HTTP/2, otherwise
+     * {@link java.net.HttpURLConnection} is used.
+     *
+     * @return new default transport
+     */
+    static Transport createDefault() {
+        if (HttpClientTransport.isSupported()) {
+            try {
+                return new HttpClientTransport(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+            } catch (RuntimeException ignored) {
+                // Fall back to URLConnection
+            }
+        }
+        return new URLConnectionTransport(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+}
@@ -0,0 +1,50 @@
+package net.byteflux.libby.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A response to a request made with a {@link Transport}. Closing the response
+ * releases its connection, so that it can be reused by the next request to
+ * the same host.
+ */
+public interface TransportResponse extends Closeable {
+    /**
+     * Gets the final URL of the response, after following any redirect.
+     *
+     * @return the response URL
+     */
+    String getUrl();
+
+    /**
+     * Gets the status code of the response. Responses from non-HTTP URLs
+     * have status code 200, or 404 if the file doesn't exist.
+     *
+     * @return the status code
+     */
+    int getStatusCode();
+
+    /**
+     * Gets the first value of a response header.
+     *
+     * @param name the case-insensitive header name
+     * @return the header value or null if the header is missing
+     */
+    String getHeader(String name);
+
+    /**
+     * Gets the length of the response body.
+     *
+     * @return the length of the body or -1 if unknown
+     */
+    long getContentLength();
+
+    /**
+     * Gets the response body. The stream is closed when the response is closed.
+     *
+     * @return the body of the response
+     * @throws IOException if the body couldn't be opened
+     */
+    InputStream getBody() throws IOException;
+}
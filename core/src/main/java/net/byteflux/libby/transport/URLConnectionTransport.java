@@ -0,0 +1,164 @@
+package net.byteflux.libby.transport;
+
+import net.byteflux.libby.LibbyProperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A transport based on {@link URLConnection}, available on every Java version
+ * and supporting every URL protocol.
+ * <p>
+ * HTTP connections are kept alive and reused per host by the JDK as long as
+ * responses are closed, which this transport always does after reading or
+ * discarding the response body.
+ */
+public class URLConnectionTransport implements Transport {
+    /**
+     * Connect timeout, in milliseconds
+     */
+    private final int connectTimeout;
+
+    /**
+     * Read timeout, in milliseconds
+     */
+    private final int readTimeout;
+
+    /**
+     * Creates a new transport with the default timeouts.
+     */
+    public URLConnectionTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * Creates a new transport.
+     *
+     * @param connectTimeout connect timeout in milliseconds
+     * @param readTimeout    read timeout in milliseconds
+     */
+    public URLConnectionTransport(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public TransportResponse request(String method, String url, Map<String, String> headers) throws IOException {
+        requireNonNull(method, "method");
+        requireNonNull(headers, "headers");
+
+        URLConnection connection = new URL(requireNonNull(url, "url")).openConnection();
+
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setRequestProperty("User-Agent", LibbyProperties.HTTP_USER_AGENT);
+        headers.forEach(connection::setRequestProperty);
+
+        if (connection instanceof HttpURLConnection) {
+            HttpURLConnection httpConnection = (HttpURLConnection) connection;
+            httpConnection.setRequestMethod(method);
+            // Connects and reads the response headers
+            httpConnection.getResponseCode();
+            return new Response(connection);
+        }
+
+        try {
+            return new Response(connection, connection.getInputStream());
+        } catch (FileNotFoundException e) {
+            return new Response(connection, null);
+        }
+    }
+
+    /**
+     * A response to a request made with a {@link URLConnection}.
+     */
+    private static class Response implements TransportResponse {
+        /**
+         * The connection of this response
+         */
+        private final URLConnection connection;
+
+        /**
+         * The status code of this response
+         */
+        private final int statusCode;
+
+        /**
+         * The response body, lazily opened for HTTP connections
+         */
+        private InputStream body;
+
+        /**
+         * Creates a new response for an HTTP connection.
+         *
+         * @param connection the connected HTTP connection
+         * @throws IOException if the status code couldn't be read
+         */
+        private Response(URLConnection connection) throws IOException {
+            this.connection = connection;
+            this.statusCode = ((HttpURLConnection) connection).getResponseCode();
+        }
+
+        /**
+         * Creates a new response for a non-HTTP connection.
+         *
+         * @param connection the connection
+         * @param body       the opened body or null if the file wasn't found
+         */
+        private Response(URLConnection connection, InputStream body) {
+            this.connection = connection;
+            this.statusCode = body != null ? 200 : 404;
+            this.body = body;
+        }
+
+        @Override
+        public String getUrl() {
+            return connection.getURL().toString();
+        }
+
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return connection.getHeaderField(requireNonNull(name, "name"));
+        }
+
+        @Override
+        public long getContentLength() {
+            return connection.getContentLengthLong();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                if (connection instanceof HttpURLConnection && statusCode >= 400) {
+                    body = ((HttpURLConnection) connection).getErrorStream();
+                } else if (connection instanceof HttpURLConnection) {
+                    body = connection.getInputStream();
+                }
+
+                if (body == null) {
+                    body = new ByteArrayInputStream(new byte[0]);
+                }
+            }
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Closing the body, even if unread, lets the JDK reuse the connection
+            getBody().close();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package net.byteflux.libby;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LockfileTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void savesAndLoadsEntries() throws IOException {
+        Path file = tempDir.resolve("libby.lock");
+        List<Lockfile.Artifact> artifacts = Arrays.asList(
+            new Lockfile.Artifact("com.example", "dependency", "1.0", null, null, Checksums.sha256("dependency"), "com/example/dependency/1.0/dependency-1.0.jar", null),
+            new Lockfile.Artifact("com.example", "library", "2.0", "linux", "https://repo.example.com/library-2.0-linux.jar", Checksums.sha256("library"),
+                                  "com/example/library/2.0/library-2.0-linux.jar", "com/example/library/2.0/library-2.0-linux-relocated-0123456789abcdef.jar")
+        );
+
+        Lockfile lockfile = new Lockfile(file);
+        lockfile.put("fingerprint", artifacts);
+        lockfile.save();
+
+        Lockfile loaded = new Lockfile(file);
+        loaded.load();
+        List<Lockfile.Artifact> loadedArtifacts = loaded.get("fingerprint");
+        assertEquals(artifacts.size(), loadedArtifacts.size());
+        for (int i = 0; i < artifacts.size(); i++) {
+            Lockfile.Artifact artifact = artifacts.get(i);
+            Lockfile.Artifact loadedArtifact = loadedArtifacts.get(i);
+            assertEquals(artifact.getGroupId(), loadedArtifact.getGroupId());
+            assertEquals(artifact.getArtifactId(), loadedArtifact.getArtifactId());
+            assertEquals(artifact.getVersion(), loadedArtifact.getVersion());
+            assertEquals(artifact.getClassifier(), loadedArtifact.getClassifier());
+            assertEquals(artifact.getUrl(), loadedArtifact.getUrl());
+            assertArrayEquals(artifact.getChecksum(), loadedArtifact.getChecksum());
+            assertEquals(artifact.getPath(), loadedArtifact.getPath());
+            assertEquals(artifact.getRelocatedPath(), loadedArtifact.getRelocatedPath());
+        }
+        assertNull(loaded.get("unknown"));
+    }
+
+    @Test
+    void dropsUnusedEntries() throws IOException {
+        Path file = tempDir.resolve("libby.lock");
+        List<Lockfile.Artifact> artifacts = Collections.singletonList(
+            new Lockfile.Artifact("com.example", "library", "1.0", null, null, Checksums.sha256("library"), "com/example/library/1.0/library-1.0.jar", null)
+        );
+
+        Lockfile lockfile = new Lockfile(file);
+        lockfile.put("used", artifacts);
+        lockfile.put("unused", artifacts);
+        lockfile.save();
+
+        Lockfile loaded = new Lockfile(file);
+        loaded.load();
+        loaded.get("used");
+        loaded.save();
+
+        Lockfile reloaded = new Lockfile(file);
+        reloaded.load();
+        assertEquals(1, reloaded.get("used").size());
+        assertNull(reloaded.get("unused"));
+    }
+
+    @Test
+    void ignoresMalformedEntries() throws IOException {
+        Path file = tempDir.resolve("libby.lock");
+        Files.write(file, ("{\"version\": 0, \"libraries\": {"
+                           + "\"malformed\": [{\"groupId\": \"com.example\", \"artifactId\": \"library\"}],"
+                           + "\"badChecksum\": [{\"groupId\": \"com.example\", \"artifactId\": \"library\", \"version\": \"1.0\", \"sha256\": \"not base64!\", \"path\": \"library-1.0.jar\"}],"
+                           + "\"valid\": [{\"groupId\": \"com.example\", \"artifactId\": \"library\", \"version\": \"1.0\", \"sha256\": \"AA==\", \"path\": \"library-1.0.jar\"}]"
+                           + "}}").getBytes(StandardCharsets.UTF_8));
+
+        Lockfile lockfile = new Lockfile(file);
+        lockfile.load();
+        assertNull(lockfile.get("malformed"));
+        assertNull(lockfile.get("badChecksum"));
+        assertEquals("library-1.0.jar", lockfile.get("valid").get(0).getPath());
+    }
+
+    @Test
+    void ignoresOtherVersions() throws IOException {
+        Path file = tempDir.resolve("libby.lock");
+        Files.write(file, ("{\"version\": 1, \"libraries\": {"
+                           + "\"valid\": [{\"groupId\": \"com.example\", \"artifactId\": \"library\", \"version\": \"1.0\", \"sha256\": \"AA==\", \"path\": \"library-1.0.jar\"}]"
+                           + "}}").getBytes(StandardCharsets.UTF_8));
+
+        Lockfile lockfile = new Lockfile(file);
+        lockfile.load();
+        assertNull(lockfile.get("valid"));
+    }
+
+    @Test
+    void rejectsCorruptedLockfiles() throws IOException {
+        Path file = tempDir.resolve("libby.lock");
+        Files.write(file, "{\"version\": ".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IOException.class, () -> new Lockfile(file).load());
+    }
+
+    @Test
+    void fingerprintsDeclarations() {
+        Library library = Library.builder().groupId("com.example").artifactId("library").version("1.0").build();
+        Library relocated = Library.builder().groupId("com.example").artifactId("library").version("1.0").relocate("com.example", "relocated.example").build();
+        List<String> repositories = Collections.singletonList("https://repo.example.com/");
+
+        assertEquals(Lockfile.fingerprint(library, repositories), Lockfile.fingerprint(library, repositories));
+        assertNotEquals(Lockfile.fingerprint(library, repositories), Lockfile.fingerprint(relocated, repositories));
+        assertNotEquals(Lockfile.fingerprint(library, repositories), Lockfile.fingerprint(library, Collections.emptyList()));
+    }
+}
@@ -0,0 +1,190 @@
+package net.byteflux.libby.relocation;
+
+import me.lucko.jarrelocator.JarRelocator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsmRelocatorTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void findsPatternsInConstantPool() {
+        AsmRelocator.RuleTrie trie = trie("com.example.lib", "com.example.other");
+
+        assertTrue(trie.occursInConstantPool(classWithConstant("Lcom/example/lib/Foo;")));
+        assertTrue(trie.occursInConstantPool(classWithConstant("com/example/other")));
+        assertFalse(trie.occursInConstantPool(classWithConstant("com/example/li")));
+        assertFalse(trie.occursInConstantPool(classWithConstant("com/example/Foo")));
+        assertFalse(trie.occursInConstantPool(classWithConstant("")));
+    }
+
+    @Test
+    void findsPatternsInDottedForm() {
+        AsmRelocator.RuleTrie trie = trie("com/example/lib");
+
+        assertTrue(trie.occursInConstantPool(classWithConstant("com.example.lib.Foo")));
+        assertTrue(trie.occursInConstantPool(classWithConstant("load com.example.lib")));
+        assertTrue(trie.occursInConstantPool(classWithConstant("com/example.lib")));
+        assertFalse(trie.occursInConstantPool(classWithConstant("com.example.li")));
+    }
+
+    @Test
+    void findsNonAsciiPatterns() {
+        AsmRelocator.RuleTrie trie = trie("com.ex\u00e4mple");
+
+        assertTrue(trie.occursInConstantPool(classWithConstant("com.ex\u00e4mple.Foo")));
+        assertFalse(trie.occursInConstantPool(classWithConstant("com.example.Foo")));
+    }
+
+    @Test
+    void skipsWideConstants() {
+        AsmRelocator.RuleTrie trie = trie("com.example.lib");
+
+        // Long and double constants take two constant pool entries
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "test/Sample", null, "java/lang/Object", null);
+        classWriter.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "LONG", "J", null, Long.MAX_VALUE).visitEnd();
+        classWriter.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "DOUBLE", "D", null, Math.PI).visitEnd();
+        classWriter.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "NAME", "Ljava/lang/String;", null, "com.example.lib.Foo").visitEnd();
+        classWriter.visitEnd();
+
+        assertTrue(trie.occursInConstantPool(classWriter.toByteArray()));
+    }
+
+    @Test
+    void reportsInvalidClasses() {
+        AsmRelocator.RuleTrie trie = trie("com.example.lib");
+        byte[] bytes = classWithConstant("com/example/Foo");
+
+        assertTrue(trie.occursInConstantPool(Arrays.copyOf(bytes, 20)));
+    }
+
+    @Test
+    void relocatesLikeJarRelocator() throws IOException, URISyntaxException {
+        Path jar = Paths.get(ClassReader.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        Path relocated = tempDir.resolve("relocated.jar");
+        Path expected = tempDir.resolve("expected.jar");
+
+        AsmRelocator relocator = new AsmRelocator(2);
+        try {
+            relocator.relocate(jar, relocated, new String[] {"org.objectweb.asm"}, new String[] {"test.asm"}, new String[][] {{}}, new String[][] {{}});
+        } finally {
+            relocator.close();
+        }
+        new JarRelocator(jar.toFile(), expected.toFile(), Collections.singletonList(new me.lucko.jarrelocator.Relocation("org.objectweb.asm", "test.asm"))).run();
+
+        Map<String, byte[]> relocatedEntries = readEntries(relocated);
+        Map<String, byte[]> expectedEntries = readEntries(expected);
+        assertEquals(expectedEntries.keySet(), relocatedEntries.keySet());
+        assertTrue(relocatedEntries.containsKey("test/asm/ClassReader.class"));
+        for (Map.Entry<String, byte[]> entry : expectedEntries.entrySet()) {
+            assertArrayEquals(entry.getValue(), relocatedEntries.get(entry.getKey()), entry.getKey());
+        }
+    }
+
+    /**
+     * Compiles relocation rules into a trie.
+     *
+     * @param patterns the patterns to relocate
+     * @return compiled rules
+     */
+    private static AsmRelocator.RuleTrie trie(String... patterns) {
+        List<AsmRelocator.Rule> rules = new ArrayList<>();
+        for (String pattern : patterns) {
+            rules.add(new AsmRelocator.Rule(pattern, "relocated", new String[0], new String[0]));
+        }
+        return new AsmRelocator.RuleTrie(rules);
+    }
+
+    /**
+     * Creates a class whose constant pool contains a string constant.
+     *
+     * @param constant the string constant
+     * @return class file
+     */
+    private static byte[] classWithConstant(String constant) {
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "test/Sample", null, "java/lang/Object", null);
+        classWriter.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "CONSTANT", "Ljava/lang/String;", null, constant).visitEnd();
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+
+    /**
+     * Reads the files of a jar, leaving out the manifest and the module
+     * descriptor which both relocators handle differently. Classes are
+     * written again by ASM without their stack map frames, so that classes
+     * relocated by both relocators can be compared byte for byte.
+     *
+     * @param jar the jar
+     * @return contents, by entry name
+     * @throws IOException if the jar couldn't be read
+     */
+    private static Map<String, byte[]> readEntries(Path jar) throws IOException {
+        Map<String, byte[]> entries = new TreeMap<>();
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry entry = zipEntries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory() || name.startsWith("META-INF/") || name.endsWith("module-info.class")) {
+                    continue;
+                }
+
+                byte[] bytes;
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    bytes = readAll(in);
+                }
+                if (name.endsWith(".class")) {
+                    ClassWriter classWriter = new ClassWriter(0);
+                    new ClassReader(bytes).accept(classWriter, ClassReader.SKIP_FRAMES);
+                    bytes = classWriter.toByteArray();
+                }
+                entries.put(name, bytes);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads a stream until its end.
+     *
+     * @param in the stream
+     * @return read bytes
+     * @throws IOException if the stream couldn't be read
+     */
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
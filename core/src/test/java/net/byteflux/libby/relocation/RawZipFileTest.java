@@ -0,0 +1,243 @@
+package net.byteflux.libby.relocation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RawZipFileTest {
+    /**
+     * Number of entries above which zip files need zip64 records
+     */
+    private static final int ZIP64_ENTRIES = 0xFFFF + 10;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void readsDeflatedEntriesWithDataDescriptors() throws IOException {
+        Map<String, byte[]> contents = contents(10);
+        Path zip = tempDir.resolve("deflated.zip");
+
+        // ZipOutputStream writes the sizes and CRC of deflated entries in data descriptors after their data
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+
+        try (RawZipFile zipFile = new RawZipFile(zip)) {
+            assertEquals(new ArrayList<>(contents.keySet()), names(zipFile));
+            for (RawZipFile.Entry entry : zipFile.getEntries()) {
+                byte[] expected = contents.get(entry.name);
+                assertEquals(RawZipFile.DEFLATED, entry.method);
+                assertEquals(expected.length, entry.size);
+                assertEquals(crc(expected), entry.crc);
+                assertArrayEquals(expected, RawZipFile.inflate(entry, zipFile.readRaw(entry)));
+            }
+        }
+
+        assertContents(contents, copy(zip));
+    }
+
+    @Test
+    void readsStoredEntries() throws IOException {
+        Map<String, byte[]> contents = contents(10);
+        Path zip = tempDir.resolve("stored.zip");
+
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            out.setMethod(ZipOutputStream.STORED);
+            ZipEntry directory = new ZipEntry("entries/");
+            directory.setSize(0);
+            directory.setCrc(0);
+            out.putNextEntry(directory);
+            out.closeEntry();
+
+            for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                zipEntry.setSize(entry.getValue().length);
+                zipEntry.setCrc(crc(entry.getValue()));
+                out.putNextEntry(zipEntry);
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+
+        try (RawZipFile zipFile = new RawZipFile(zip)) {
+            List<RawZipFile.Entry> entries = zipFile.getEntries();
+            assertEquals(contents.size() + 1, entries.size());
+            assertTrue(entries.get(0).isDirectory());
+            for (RawZipFile.Entry entry : entries.subList(1, entries.size())) {
+                byte[] expected = contents.get(entry.name);
+                assertEquals(RawZipFile.STORED, entry.method);
+                assertArrayEquals(expected, zipFile.readRaw(entry));
+                assertArrayEquals(expected, RawZipFile.inflate(entry, zipFile.readRaw(entry)));
+            }
+        }
+
+        Path copy = copy(zip);
+        try (ZipFile zipFile = new ZipFile(copy.toFile())) {
+            assertTrue(zipFile.getEntry("entries/").isDirectory());
+            assertEquals(ZipEntry.STORED, zipFile.getEntry("entries/0.txt").getMethod());
+        }
+        assertContents(contents, copy);
+    }
+
+    @Test
+    void readsZip64Files() throws IOException {
+        Map<String, byte[]> contents = contents(ZIP64_ENTRIES);
+        Path zip = tempDir.resolve("zip64.zip");
+
+        // ZipOutputStream writes zip64 end records once there are more than 65535 entries
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+
+        try (RawZipFile zipFile = new RawZipFile(zip)) {
+            assertEquals(new ArrayList<>(contents.keySet()), names(zipFile));
+        }
+    }
+
+    @Test
+    void writesZip64Files() throws IOException {
+        Map<String, byte[]> contents = contents(ZIP64_ENTRIES);
+        Path zip = tempDir.resolve("zip64.zip");
+
+        try (RawZipOutputStream out = new RawZipOutputStream(zip)) {
+            for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+                out.writeEntry(entry.getKey(), RawZipFile.STORED, 0, crc(entry.getValue()), entry.getValue().length, entry.getValue());
+            }
+        }
+
+        // The entry count of the end of central directory record is replaced by the zip64 one
+        byte[] bytes = Files.readAllBytes(zip);
+        ByteBuffer end = ByteBuffer.wrap(bytes, bytes.length - 22, 22).slice().order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(0xFFFF, end.getShort(10) & 0xFFFF);
+
+        try (RawZipFile zipFile = new RawZipFile(zip)) {
+            assertEquals(new ArrayList<>(contents.keySet()), names(zipFile));
+        }
+        assertContents(contents, zip);
+    }
+
+    /**
+     * Copies a zip file entry by entry, without decompressing the entries.
+     *
+     * @param zip the zip file
+     * @return copied zip file
+     * @throws IOException if the zip file couldn't be copied
+     */
+    private Path copy(Path zip) throws IOException {
+        Path copy = tempDir.resolve("copy-" + zip.getFileName());
+        try (RawZipFile in = new RawZipFile(zip); RawZipOutputStream out = new RawZipOutputStream(copy)) {
+            for (RawZipFile.Entry entry : in.getEntries()) {
+                out.writeEntry(entry.name, entry.method, entry.dosTime, entry.crc, entry.size, in.readRaw(entry));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Asserts that the files of a zip file have the expected contents, reading it with {@link ZipFile}.
+     *
+     * @param contents the expected contents, by entry name
+     * @param zip      the zip file
+     * @throws IOException if the zip file couldn't be read
+     */
+    private static void assertContents(Map<String, byte[]> contents, Path zip) throws IOException {
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+                ZipEntry zipEntry = zipFile.getEntry(entry.getKey());
+                try (InputStream in = zipFile.getInputStream(zipEntry)) {
+                    assertArrayEquals(entry.getValue(), readAll(in), entry.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the contents of a zip file, some of which compress well.
+     *
+     * @param count the number of files
+     * @return contents, by entry name
+     */
+    private static Map<String, byte[]> contents(int count) {
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder content = new StringBuilder();
+            for (int j = 0; j < i % 50; j++) {
+                content.append("line ").append(j).append(" of entry ").append(i).append('\n');
+            }
+            contents.put("entries/" + i + ".txt", content.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return contents;
+    }
+
+    /**
+     * Gets the entry names of a zip file.
+     *
+     * @param zipFile the zip file
+     * @return entry names, in central directory order
+     */
+    private static List<String> names(RawZipFile zipFile) {
+        List<String> names = new ArrayList<>();
+        for (RawZipFile.Entry entry : zipFile.getEntries()) {
+            names.add(entry.name);
+        }
+        return names;
+    }
+
+    /**
+     * Computes the CRC-32 of bytes.
+     *
+     * @param bytes the bytes
+     * @return CRC-32 of the bytes
+     */
+    private static long crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    /**
+     * Reads a stream until its end.
+     *
+     * @param in the stream
+     * @return read bytes
+     * @throws IOException if the stream couldn't be read
+     */
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,118 @@
+package net.byteflux.libby.transitive;
+
+import net.byteflux.libby.Library;
+import net.byteflux.libby.LibraryManager;
+import net.byteflux.libby.logging.adapters.JDKLogAdapter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PomDependencyResolverTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void resolvesTransitiveDependencies() throws URISyntaxException {
+        Library a = library("a");
+        Map<Library, Collection<Library>> transitiveLibraries = resolver().findTransitiveLibraries(Collections.singletonList(a));
+
+        assertEquals(Arrays.asList("x:1.0", "y:1.0", "w:1.0"), coordinates(transitiveLibraries.get(a)));
+    }
+
+    @Test
+    void mediatesVersionsOfLibrariesResolvedTogether() throws URISyntaxException {
+        // x 1.0 is found first, through a, so b gets it instead of x 2.0 and the dependencies of x 1.0
+        Library a = library("a");
+        Library b = library("b");
+        Map<Library, Collection<Library>> transitiveLibraries = resolver().findTransitiveLibraries(Arrays.asList(a, b));
+
+        assertEquals(Arrays.asList("x:1.0", "y:1.0", "w:1.0"), coordinates(transitiveLibraries.get(a)));
+        assertEquals(Arrays.asList("x:1.0", "z:1.0", "w:1.0"), coordinates(transitiveLibraries.get(b)));
+    }
+
+    @Test
+    void mediatesVersionsByDepth() throws URISyntaxException {
+        // w 2.0 is declared after x, but is nearer than the w 1.0 dependency of x
+        Library near = library("near");
+        Map<Library, Collection<Library>> transitiveLibraries = resolver().findTransitiveLibraries(Collections.singletonList(near));
+
+        assertEquals(Arrays.asList("x:1.0", "w:2.0"), coordinates(transitiveLibraries.get(near)));
+    }
+
+    @Test
+    void appliesImportedDependencyManagement() throws URISyntaxException {
+        // The imported BOM manages w to 3.0, which applies to the dependencies of x too
+        Library managed = library("managed");
+        Map<Library, Collection<Library>> transitiveLibraries = resolver().findTransitiveLibraries(Collections.singletonList(managed));
+
+        assertEquals(Arrays.asList("x:1.0", "w:3.0"), coordinates(transitiveLibraries.get(managed)));
+    }
+
+    @Test
+    void appliesDeclaredExclusions() throws URISyntaxException {
+        Library excluding = library("excluding");
+        Map<Library, Collection<Library>> transitiveLibraries = resolver().findTransitiveLibraries(Collections.singletonList(excluding));
+
+        assertEquals(Arrays.asList("x:1.0", "y:1.0"), coordinates(transitiveLibraries.get(excluding)));
+    }
+
+    @Test
+    void appliesLibraryExclusions() throws URISyntaxException {
+        Library a = Library.builder().groupId("com.example").artifactId("a").version("1.0").excludeTransitiveDependency("com.example", "w").build();
+        Map<Library, Collection<Library>> transitiveLibraries = resolver().findTransitiveLibraries(Collections.singletonList(a));
+
+        assertEquals(Arrays.asList("x:1.0", "y:1.0"), coordinates(transitiveLibraries.get(a)));
+    }
+
+    /**
+     * Creates a resolver reading the fixture POMs, without any repository to
+     * download missing POMs from.
+     *
+     * @return resolver
+     * @throws URISyntaxException if the fixture directory couldn't be found
+     */
+    private PomDependencyResolver resolver() throws URISyntaxException {
+        LibraryManager libraryManager = new LibraryManager(new JDKLogAdapter(Logger.getLogger("PomDependencyResolverTest")), tempDir, "lib") {
+            @Override
+            protected void addToClasspath(Path file) {
+            }
+        };
+        return new PomDependencyResolver(libraryManager, Paths.get(getClass().getResource("/repository").toURI()));
+    }
+
+    /**
+     * Creates a library of the com.example group.
+     *
+     * @param artifactId Maven artifact ID
+     * @return library
+     */
+    private static Library library(String artifactId) {
+        return Library.builder().groupId("com.example").artifactId(artifactId).version("1.0").build();
+    }
+
+    /**
+     * Gets the artifact IDs and versions of libraries of the com.example group.
+     *
+     * @param libraries the libraries
+     * @return coordinates, as artifactId:version
+     */
+    private static List<String> coordinates(Collection<Library> libraries) {
+        List<String> coordinates = new ArrayList<>();
+        for (Library library : libraries) {
+            coordinates.add(library.getArtifactId() + ':' + library.getVersion());
+        }
+        return coordinates;
+    }
+}
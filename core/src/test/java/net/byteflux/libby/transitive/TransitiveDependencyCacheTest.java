@@ -0,0 +1,124 @@
+package net.byteflux.libby.transitive;
+
+import net.byteflux.libby.Library;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransitiveDependencyCacheTest {
+    /**
+     * Repositories of the library manager
+     */
+    private static final List<String> REPOSITORIES = Collections.singletonList("https://repo.example.com/");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void savesAndLoadsTransitiveLibraries() throws IOException {
+        Path file = tempDir.resolve("transitive.properties");
+        Library first = library("first", "1.0");
+        Library second = library("second", "1.0");
+        Library withoutDependencies = library("leaf", "1.0");
+        List<Library> libraries = Arrays.asList(withoutDependencies, first, second);
+
+        Library shared = library("shared", "2.0");
+        Library classified = Library.builder().groupId("com.example").artifactId("native").version("1.0").classifier("linux").build();
+        Map<Library, Collection<Library>> transitiveLibraries = new LinkedHashMap<>();
+        transitiveLibraries.put(withoutDependencies, Collections.emptyList());
+        transitiveLibraries.put(first, Arrays.asList(shared, classified));
+        transitiveLibraries.put(second, Collections.singletonList(shared));
+
+        new TransitiveDependencyCache(file).put(PomDependencyResolver.class, libraries, REPOSITORIES, transitiveLibraries);
+
+        TransitiveDependencyCache cache = new TransitiveDependencyCache(file);
+        Map<Library, Collection<Library>> cached = cache.get(PomDependencyResolver.class, libraries, REPOSITORIES);
+        assertEquals(Arrays.asList(withoutDependencies, first, second), new ArrayList<>(cached.keySet()));
+        assertTrue(cached.get(withoutDependencies).isEmpty());
+        assertEquals(Arrays.asList("com.example:shared:2.0:null", "com.example:native:1.0:linux"), coordinates(cached.get(first)));
+        assertEquals(Collections.singletonList("com.example:shared:2.0:null"), coordinates(cached.get(second)));
+
+        // Libraries shared by several libraries are the same instance
+        assertSame(cached.get(first).iterator().next(), cached.get(second).iterator().next());
+    }
+
+    @Test
+    void separatesResolversAndRepositories() throws IOException {
+        Path file = tempDir.resolve("transitive.properties");
+        Library library = library("library", "1.0");
+        List<Library> libraries = Collections.singletonList(library);
+
+        TransitiveDependencyCache cache = new TransitiveDependencyCache(file);
+        cache.put(PomDependencyResolver.class, libraries, REPOSITORIES, Collections.singletonMap(library, Collections.singletonList(library("dependency", "1.0"))));
+
+        assertEquals(1, cache.get(PomDependencyResolver.class, libraries, REPOSITORIES).get(library).size());
+        assertNull(cache.get(TransitiveDependencyHelper.class, libraries, REPOSITORIES));
+        assertNull(cache.get(PomDependencyResolver.class, libraries, Collections.emptyList()));
+        assertNull(cache.get(PomDependencyResolver.class, Collections.singletonList(library("library", "2.0")), REPOSITORIES));
+    }
+
+    @Test
+    void doesNotCacheSnapshots() throws IOException {
+        Path file = tempDir.resolve("transitive.properties");
+        Library library = library("library", "1.0-SNAPSHOT");
+        List<Library> libraries = Collections.singletonList(library);
+
+        TransitiveDependencyCache cache = new TransitiveDependencyCache(file);
+        cache.put(PomDependencyResolver.class, libraries, REPOSITORIES, Collections.singletonMap(library, Collections.singletonList(library("dependency", "1.0"))));
+
+        assertNull(cache.get(PomDependencyResolver.class, libraries, REPOSITORIES));
+    }
+
+    @Test
+    void clearsCache() throws IOException {
+        Path file = tempDir.resolve("transitive.properties");
+        Library library = library("library", "1.0");
+        List<Library> libraries = Collections.singletonList(library);
+
+        TransitiveDependencyCache cache = new TransitiveDependencyCache(file);
+        cache.put(PomDependencyResolver.class, libraries, REPOSITORIES, Collections.singletonMap(library, Collections.emptyList()));
+        cache.clear();
+
+        assertNull(cache.get(PomDependencyResolver.class, libraries, REPOSITORIES));
+        assertNull(new TransitiveDependencyCache(file).get(PomDependencyResolver.class, libraries, REPOSITORIES));
+    }
+
+    /**
+     * Creates a library of the com.example group.
+     *
+     * @param artifactId Maven artifact ID
+     * @param version    artifact version
+     * @return library
+     */
+    private static Library library(String artifactId, String version) {
+        return Library.builder().groupId("com.example").artifactId(artifactId).version(version).build();
+    }
+
+    /**
+     * Gets the coordinates of libraries.
+     *
+     * @param libraries the libraries
+     * @return coordinates, as groupId:artifactId:version:classifier
+     */
+    private static List<String> coordinates(Collection<Library> libraries) {
+        List<String> coordinates = new ArrayList<>();
+        for (Library library : libraries) {
+            coordinates.add(library.getGroupId() + ':' + library.getArtifactId() + ':' + library.getVersion() + ':' + library.getClassifier());
+        }
+        return coordinates;
+    }
+}
@@ -0,0 +1,75 @@
+package net.byteflux.libby.logging.adapters;
+
+import net.byteflux.libby.logging.LogLevel;
+import org.apache.maven.plugin.logging.Log;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Logging adapter that logs to a Maven plugin log.
+ */
+public class MavenLogAdapter implements LogAdapter {
+    /**
+     * Maven plugin log
+     */
+    private final Log log;
+
+    /**
+     * Creates a new Maven log adapter that logs to a {@link Log}.
+     *
+     * @param log the plugin log to wrap
+     */
+    public MavenLogAdapter(Log log) {
+        this.log = requireNonNull(log, "log");
+    }
+
+    /**
+     * Logs a message with the provided level to the Maven plugin log.
+     *
+     * @param level   message severity level
+     * @param message the message to log
+     */
+    @Override
+    public void log(LogLevel level, String message) {
+        switch (requireNonNull(level, "level")) {
+            case DEBUG:
+                log.debug(message);
+                break;
+            case INFO:
+                log.info(message);
+                break;
+            case WARN:
+                log.warn(message);
+                break;
+            case ERROR:
+                log.error(message);
+                break;
+        }
+    }
+
+    /**
+     * Logs a message and stack trace with the provided level to the Maven
+     * plugin log.
+     *
+     * @param level     message severity level
+     * @param message   the message to log
+     * @param throwable the throwable to print
+     */
+    @Override
+    public void log(LogLevel level, String message, Throwable throwable) {
+        switch (requireNonNull(level, "level")) {
+            case DEBUG:
+                log.debug(message, throwable);
+                break;
+            case INFO:
+                log.info(message, throwable);
+                break;
+            case WARN:
+                log.warn(message, throwable);
+                break;
+            case ERROR:
+                log.error(message, throwable);
+                break;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package net.byteflux.libby.maven;
+
+import net.byteflux.libby.Library;
+import net.byteflux.libby.LibraryManager;
+import net.byteflux.libby.logging.adapters.LogAdapter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A library manager running at build time, which resolves, downloads and
+ * relocates libraries like at runtime but only records the jars it would
+ * load instead of loading them.
+ */
+class BuildLibraryManager extends LibraryManager {
+    /**
+     * Jars which would be loaded and their libraries, in load order
+     */
+    private final Map<Path, Library> loaded = new LinkedHashMap<>();
+
+    /**
+     * Creates a new build library manager.
+     *
+     * @param logAdapter    the plugin log adapter
+     * @param workDirectory directory in which the jars are saved
+     */
+    BuildLibraryManager(LogAdapter logAdapter, Path workDirectory) {
+        super(logAdapter, workDirectory, "lib");
+    }
+
+    /**
+     * Gets the directory in which the jars are saved.
+     *
+     * @return save directory
+     */
+    Path getSaveDirectory() {
+        return saveDirectory;
+    }
+
+    /**
+     * Gets the jars which would be loaded.
+     *
+     * @return jars and their libraries, in load order
+     */
+    Map<Path, Library> getLoaded() {
+        return Collections.unmodifiableMap(loaded);
+    }
+
+    /**
+     * Gets the SHA-256 checksum of a jar saved by this library manager,
+     * reusing the checksum recorded when it was downloaded or relocated.
+     *
+     * @param file the saved jar
+     * @return binary SHA-256 checksum
+     * @throws IOException if the jar couldn't be read
+     */
+    @Override
+    protected byte[] getChecksum(Path file) throws IOException {
+        return super.getChecksum(file);
+    }
+
+    /**
+     * Records a jar which would be loaded.
+     *
+     * @param library the library to add
+     * @param file    local file path of the relocated library
+     */
+    @Override
+    protected void addLibrary(Library library, Path file) {
+        loaded.putIfAbsent(file, library);
+    }
+
+    /**
+     * Does nothing, since jars are recorded by {@link #addLibrary(Library, Path)}.
+     *
+     * @param file the file to add
+     */
+    @Override
+    protected void addToClasspath(Path file) {
+    }
+}
@@ -0,0 +1,135 @@
+package net.byteflux.libby.maven;
+
+import net.byteflux.libby.Library;
+import net.byteflux.libby.LibraryManifest;
+import net.byteflux.libby.logging.adapters.MavenLogAdapter;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prepares the libraries of a libby.json file when the plugin is built.
+ * <p>
+ * The libraries and their transitive dependencies are resolved, downloaded,
+ * relocated and checksummed like a {@link net.byteflux.libby.LibraryManager}
+ * would at runtime, and the prepared jars are listed in a
+ * {@value LibraryManifest#RESOURCE} file added to the plugin file. The
+ * prepared jars are bundled in the plugin file too, unless disabled, in which
+ * case they must be published to the configured repositories.
+ * <p>
+ * At runtime, {@link net.byteflux.libby.LibraryManager#loadFromManifest()}
+ * loads the prepared jars without resolving nor relocating anything.
+ */
+@Mojo(name = "prepare", defaultPhase = LifecyclePhase.PREPARE_PACKAGE, threadSafe = true)
+public class PrepareLibrariesMojo extends AbstractMojo {
+    /**
+     * The libby.json file declaring the libraries to prepare
+     */
+    @Parameter(property = "libby.configuration", defaultValue = "${project.basedir}/src/main/resources/libby.json", required = true)
+    private File configuration;
+
+    /**
+     * Directory in which libraries are downloaded and relocated
+     */
+    @Parameter(property = "libby.workDirectory", defaultValue = "${project.build.directory}/libby", required = true)
+    private File workDirectory;
+
+    /**
+     * Directory in which the manifest and the bundled jars are written
+     */
+    @Parameter(property = "libby.outputDirectory", defaultValue = "${project.build.outputDirectory}", required = true)
+    private File outputDirectory;
+
+    /**
+     * Whether the prepared jars are bundled in the plugin file
+     */
+    @Parameter(property = "libby.bundle", defaultValue = "true")
+    private boolean bundle;
+
+    /**
+     * URLs of the repositories the prepared jars are published to, from
+     * which they're downloaded at runtime if they aren't bundled
+     */
+    @Parameter
+    private List<String> repositories = new ArrayList<>();
+
+    /**
+     * Whether to skip the preparation of the libraries
+     */
+    @Parameter(property = "libby.skip", defaultValue = "false")
+    private boolean skip;
+
+    /**
+     * Prepares the libraries and writes the manifest.
+     *
+     * @throws MojoExecutionException if the libraries couldn't be prepared
+     */
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip) {
+            getLog().info("Skipping library preparation");
+            return;
+        }
+        if (!bundle && repositories.isEmpty()) {
+            throw new MojoExecutionException("Prepared libraries must be bundled or published to a repository");
+        }
+
+        List<LibraryManifest.Artifact> artifacts = new ArrayList<>();
+        try (BuildLibraryManager libraryManager = new BuildLibraryManager(new MavenLogAdapter(getLog()), workDirectory.toPath())) {
+            try (InputStream in = Files.newInputStream(configuration.toPath())) {
+                libraryManager.configureFromJSON(in);
+            } catch (Exception e) {
+                throw new MojoExecutionException("Cannot prepare the libraries of " + configuration, e);
+            }
+
+            Path saveDirectory = libraryManager.getSaveDirectory();
+            Path output = outputDirectory.toPath();
+            try {
+                for (Map.Entry<Path, Library> entry : libraryManager.getLoaded().entrySet()) {
+                    Path file = entry.getKey();
+                    Library library = entry.getValue();
+
+                    String path = saveDirectory.relativize(file).toString().replace(File.separatorChar, '/');
+                    artifacts.add(new LibraryManifest.Artifact(
+                        library.isIsolatedLoad() ? library.getId() : null,
+                        library.getGroupId(),
+                        library.getArtifactId(),
+                        library.getVersion(),
+                        library.getClassifier(),
+                        library.isIsolatedLoad(),
+                        libraryManager.getChecksum(file),
+                        path
+                    ));
+
+                    if (bundle) {
+                        Path bundled = output.resolve(LibraryManifest.BUNDLE_DIRECTORY + path);
+                        Files.createDirectories(bundled.getParent());
+                        Files.copy(file, bundled, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+
+                Files.createDirectories(output);
+                try (OutputStream out = Files.newOutputStream(output.resolve(LibraryManifest.RESOURCE))) {
+                    new LibraryManifest(repositories, artifacts).write(out);
+                }
+            } catch (IOException e) {
+                throw new MojoExecutionException("Cannot write the prepared libraries", e);
+            }
+        }
+
+        getLog().info("Prepared " + artifacts.size() + " libraries");
+    }
+}
@@ -1,5 +1,8 @@
 package net.byteflux.libby;
 
+import cn.nukkit.event.EventPriority;
+import cn.nukkit.event.Listener;
+import cn.nukkit.event.plugin.PluginDisableEvent;
 import cn.nukkit.plugin.Plugin;
 import net.byteflux.libby.classloader.URLClassLoaderHelper;
 import net.byteflux.libby.logging.adapters.NukkitLogAdapter;
@@ -22,7 +25,8 @@ public class NukkitLibraryManager extends LibraryManager {
     private final Plugin plugin;
 
     /**
-     * Creates a new Nukkit library manager.
+     * Creates a new Nukkit library manager, which is closed when the plugin
+     * is disabled.
      *
      * @param plugin the plugin to manage
      */
@@ -31,7 +35,8 @@ public class NukkitLibraryManager extends LibraryManager {
     }
 
     /**
-     * Creates a new Nukkit library manager.
+     * Creates a new Nukkit library manager, which is closed when the plugin
+     * is disabled.
      *
      * @param plugin the plugin to manage
      * @param directoryName download directory name
@@ -40,6 +45,29 @@ public class NukkitLibraryManager extends LibraryManager {
         super(new NukkitLogAdapter(requireNonNull(plugin, "plugin").getLogger()), plugin.getDataFolder().toPath(), directoryName);
         classLoader = new URLClassLoaderHelper((URLClassLoader) plugin.getClass().getClassLoader(), this);
         this.plugin = plugin;
+
+        if (plugin.isEnabled()) {
+            registerDisableListener();
+        } else {
+            // Only enabled plugins can register listeners, and plugins are enabled before the first tick
+            plugin.getServer().getScheduler().scheduleTask(null, () -> {
+                if (plugin.isEnabled()) {
+                    registerDisableListener();
+                }
+            });
+        }
+    }
+
+    /**
+     * Registers a listener closing this library manager when the plugin is
+     * disabled.
+     */
+    private void registerDisableListener() {
+        plugin.getServer().getPluginManager().registerEvent(PluginDisableEvent.class, new Listener() {}, EventPriority.MONITOR, (listener, event) -> {
+            if (((PluginDisableEvent) event).getPlugin() == plugin) {
+                close();
+            }
+        }, plugin);
     }
 
     /**
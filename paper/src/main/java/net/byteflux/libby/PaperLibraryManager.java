@@ -2,7 +2,11 @@ package net.byteflux.libby;
 
 import net.byteflux.libby.classloader.URLClassLoaderHelper;
 import net.byteflux.libby.logging.adapters.JDKLogAdapter;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
 import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredListener;
 
 import java.io.InputStream;
 import java.lang.reflect.Field;
@@ -24,7 +28,8 @@ public class PaperLibraryManager extends LibraryManager {
     private final Plugin plugin;
 
     /**
-     * Creates a new Paper library manager.
+     * Creates a new Paper library manager, which is closed when the plugin
+     * is disabled.
      *
      * @param plugin the plugin to manage
      */
@@ -33,7 +38,8 @@ public class PaperLibraryManager extends LibraryManager {
     }
 
     /**
-     * Creates a new Paper library manager.
+     * Creates a new Paper library manager, which is closed when the plugin
+     * is disabled.
      *
      * @param plugin the plugin to manage
      * @param directoryName download directory name
@@ -75,6 +81,13 @@ public class PaperLibraryManager extends LibraryManager {
 
         classLoader = new URLClassLoaderHelper(libraryLoader, this);
         this.plugin = plugin;
+
+        // Registered in the handler list directly, since the plugin may not be enabled yet
+        PluginDisableEvent.getHandlerList().register(new RegisteredListener(new Listener() {}, (listener, event) -> {
+            if (((PluginDisableEvent) event).getPlugin() == plugin) {
+                close();
+            }
+        }, EventPriority.MONITOR, plugin, false));
     }
 
     /**
@@ -4,7 +4,12 @@ import com.google.inject.Inject;
 import net.byteflux.libby.classloader.URLClassLoaderHelper;
 import net.byteflux.libby.logging.adapters.SpongeLogAdapter;
 import org.apache.logging.log4j.Logger;
+import org.spongepowered.api.Sponge;
 import org.spongepowered.api.config.ConfigDir;
+import org.spongepowered.api.event.EventListenerRegistration;
+import org.spongepowered.api.event.Order;
+import org.spongepowered.api.event.lifecycle.StoppingEngineEvent;
+import org.spongepowered.plugin.PluginContainer;
 
 import java.net.URLClassLoader;
 import java.nio.file.Path;
@@ -21,7 +26,8 @@ public class SpongeLibraryManager<T> extends LibraryManager {
     private final URLClassLoaderHelper classLoader;
 
     /**
-     * Creates a new Sponge library manager.
+     * Creates a new Sponge library manager, which is closed when the engine
+     * stops.
      *
      * @param logger        the plugin logger
      * @param dataDirectory plugin's data directory
@@ -32,6 +38,13 @@ public class SpongeLibraryManager<T> extends LibraryManager {
     private SpongeLibraryManager(Logger logger, @ConfigDir(sharedRoot = false) Path dataDirectory, T plugin, String directoryName) {
         super(new SpongeLogAdapter(logger), dataDirectory, directoryName);
         classLoader = new URLClassLoaderHelper((URLClassLoader) requireNonNull(plugin, "plugin").getClass().getClassLoader(), this);
+
+        PluginContainer container = Sponge.pluginManager().fromInstance(plugin).orElseThrow(() -> new IllegalArgumentException("plugin isn't a Sponge plugin"));
+        Sponge.eventManager().registerListener(EventListenerRegistration.builder(StoppingEngineEvent.class)
+                                                                        .plugin(container)
+                                                                        .order(Order.POST)
+                                                                        .listener(event -> close())
+                                                                        .build());
     }
 
     /**
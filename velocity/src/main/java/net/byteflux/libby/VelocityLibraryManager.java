@@ -1,5 +1,8 @@
 package net.byteflux.libby;
 
+import com.velocitypowered.api.event.EventManager;
+import com.velocitypowered.api.event.PostOrder;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
 import com.velocitypowered.api.plugin.PluginManager;
 import net.byteflux.libby.logging.adapters.VelocityLogAdapter;
 import org.slf4j.Logger;
@@ -25,7 +28,48 @@ public class VelocityLibraryManager<T> extends LibraryManager {
     private final T plugin;
 
     /**
-     * Creates a new Velocity library manager.
+     * Creates a new Velocity library manager, which is closed when the proxy
+     * shuts down.
+     *
+     * @param logger        the plugin logger
+     * @param dataDirectory plugin's data directory
+     * @param pluginManager Velocity plugin manager
+     * @param eventManager  Velocity event manager
+     * @param plugin        the plugin to manage
+     * @param directoryName download directory name
+     */
+    public VelocityLibraryManager(Logger logger,
+                                  Path dataDirectory,
+                                  PluginManager pluginManager,
+                                  EventManager eventManager,
+                                  T plugin,
+                                  String directoryName) {
+
+        this(logger, dataDirectory, pluginManager, plugin, directoryName);
+        requireNonNull(eventManager, "eventManager").register(plugin, ProxyShutdownEvent.class, PostOrder.LAST, event -> close());
+    }
+
+    /**
+     * Creates a new Velocity library manager, which is closed when the proxy
+     * shuts down.
+     *
+     * @param logger        the plugin logger
+     * @param dataDirectory plugin's data directory
+     * @param pluginManager Velocity plugin manager
+     * @param eventManager  Velocity event manager
+     * @param plugin        the plugin to manage
+     */
+    public VelocityLibraryManager(Logger logger,
+                                  Path dataDirectory,
+                                  PluginManager pluginManager,
+                                  EventManager eventManager,
+                                  T plugin) {
+        this(logger, dataDirectory, pluginManager, eventManager, plugin, "lib");
+    }
+
+    /**
+     * Creates a new Velocity library manager. It isn't closed automatically,
+     * unlike the library managers created with the event manager.
      *
      * @param logger        the plugin logger
      * @param dataDirectory plugin's data directory
@@ -45,7 +89,8 @@ public class VelocityLibraryManager<T> extends LibraryManager {
     }
 
     /**
-     * Creates a new Velocity library manager.
+     * Creates a new Velocity library manager. It isn't closed automatically,
+     * unlike the library managers created with the event manager.
      *
      * @param logger        the plugin logger
      * @param dataDirectory plugin's data directory